@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.LruCache;
+
+import androidx.core.content.ContextCompat;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide LRU cache of avatars rendered at their display size, keyed by an identifier of the
+ * source and the target size.
+ *
+ * <p>Sources are usually much larger than the avatar they are shown in (contact photos, the user
+ * icon). Rendering the centered square once at the target size means rebinding a preference or
+ * resuming an activity reuses those pixels instead of scaling the full source again, and lets
+ * callers drop the source. The cache is bounded by {@link R.integer#config_avatar_cache_size_kb}
+ * and is trimmed when the system asks for memory.
+ *
+ * <p>Callers that know where a source came from pass an identifier that changes whenever its
+ * pixels do (see {@link #getRenderedBitmap(String, Bitmap, int)} and {@link #getUserIconId(int)});
+ * otherwise the source bitmap itself, and its generation id, identify it.
+ */
+public final class AvatarCache implements ComponentCallbacks2 {
+    private static AvatarCache sInstance;
+
+    private final LruCache<Key, Bitmap> mCache;
+    // Identifiers handed out to sources that callers did not identify. Weak keys, so that a
+    // source that was dropped is forgotten; its rendered avatar ages out of mCache.
+    @GuardedBy("this")
+    private final WeakHashMap<Bitmap, String> mSourceIds = new WeakHashMap<>();
+    @GuardedBy("this")
+    private int mNextSourceId;
+    private final AtomicInteger mUserIconVersion = new AtomicInteger();
+
+    /** Returns the process-wide instance, creating it on first use. */
+    public static synchronized AvatarCache getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            sInstance = new AvatarCache(
+                    appContext.getResources().getInteger(R.integer.config_avatar_cache_size_kb)
+                            * 1024);
+            appContext.registerComponentCallbacks(sInstance);
+            ContextCompat.registerReceiver(appContext, new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    sInstance.invalidateUserIcons();
+                }
+            }, new IntentFilter(Intent.ACTION_USER_INFO_CHANGED),
+                    ContextCompat.RECEIVER_NOT_EXPORTED);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    AvatarCache(int maxSizeBytes) {
+        mCache = new LruCache<Key, Bitmap>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns a circular avatar of {@code size} pixels for {@code source}, reusing a previously
+     * rendered one when possible.
+     */
+    public CircleFramedDrawable getDrawable(Bitmap source, int size) {
+        return new CircleFramedDrawable(getRenderedBitmap(source, size), size);
+    }
+
+    /**
+     * Returns {@code source} cropped to its centered square and scaled to {@code size}. The source
+     * is identified by the bitmap instance and its generation id, so holding on to a source and
+     * rendering it again hits the cache, but a bitmap decoded again from the same data does not:
+     * such callers should pass an identifier instead.
+     */
+    public Bitmap getRenderedBitmap(Bitmap source, int size) {
+        return getRenderedBitmap(sourceId(source), source, size);
+    }
+
+    /**
+     * Returns {@code source} cropped to its centered square and scaled to {@code size}, caching
+     * it under {@code id}. The caller must use a different {@code id} whenever the pixels of the
+     * source change.
+     */
+    public Bitmap getRenderedBitmap(String id, Bitmap source, int size) {
+        final Key key = new Key(id, size);
+        Bitmap rendered = mCache.get(key);
+        if (rendered == null) {
+            rendered = render(source, size);
+            mCache.put(key, rendered);
+        }
+        return rendered;
+    }
+
+    /**
+     * Returns the avatar previously rendered at {@code size} for {@code id}, or {@code null}, so
+     * that callers can skip decoding a source that is already cached.
+     */
+    public Bitmap getCachedBitmap(String id, int size) {
+        return mCache.get(new Key(id, size));
+    }
+
+    /**
+     * Returns the identifier to cache the icon of {@code userId} under. It changes whenever the
+     * system reports that user info changed, so check {@link #getCachedBitmap(String, int)} with
+     * it before loading the icon from {@code UserManager}.
+     */
+    public String getUserIconId(int userId) {
+        return "user:" + userId + ":" + mUserIconVersion.get();
+    }
+
+    /** Returns the fraction of lookups that were served from the cache. */
+    public float getHitRate() {
+        final int hits = mCache.hitCount();
+        final int lookups = hits + mCache.missCount();
+        return lookups == 0 ? 0f : (float) hits / lookups;
+    }
+
+    /** Returns the number of lookups that were served from the cache. */
+    public int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    /** Returns the number of lookups that had to render the avatar. */
+    public int getMissCount() {
+        return mCache.missCount();
+    }
+
+    /** Returns the number of bytes currently held by the cache. */
+    public int getSizeBytes() {
+        return mCache.size();
+    }
+
+    /** Prints the cache statistics, for {@code Activity#dump}. */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Avatar cache: " + getSizeBytes() + "/" + mCache.maxSize()
+                + " bytes, " + getHitCount() + " hits, " + getMissCount() + " misses ("
+                + Math.round(getHitRate() * 100) + "% hit rate)");
+    }
+
+    /** Makes {@link #getUserIconId(int)} return new identifiers, after a user icon changed. */
+    public void invalidateUserIcons() {
+        mUserIconVersion.incrementAndGet();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            mCache.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            mCache.trimToSize(mCache.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        mCache.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private static Bitmap render(Bitmap source, int size) {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        if (width == size && height == size) {
+            return source;
+        }
+        final int square = Math.min(width, height);
+        final int left = (width - square) / 2;
+        final int top = (height - square) / 2;
+        final Bitmap rendered = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        new Canvas(rendered).drawBitmap(source,
+                new Rect(left, top, left + square, top + square),
+                new Rect(0, 0, size, size),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        return rendered;
+    }
+
+    private synchronized String sourceId(Bitmap source) {
+        String id = mSourceIds.get(source);
+        if (id == null) {
+            id = "bitmap:" + mNextSourceId++;
+            mSourceIds.put(source, id);
+        }
+        return id + ":" + source.getGenerationId();
+    }
+
+    private static final class Key {
+        private final String mId;
+        private final int mSize;
+
+        Key(String id, int size) {
+            mId = id;
+            mSize = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mSize == other.mSize && mId.equals(other.mId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mId, mSize);
+        }
+    }
+}
@@ -18,21 +18,23 @@ package com.android.emergency;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.ColorFilter;
+import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.PixelFormat;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
-import android.graphics.Rect;
-import android.graphics.RectF;
+import android.graphics.Shader;
 import android.graphics.drawable.Drawable;
 
+import com.android.emergency.util.LatencyLogger;
+
 /**
  * Converts the user avatar icon to a circularly clipped one.
  * TODO: Use CircleFramedDrawable from Settings once it's moved to frameworks.
+ *
+ * <p>The icon is drawn through a {@link BitmapShader} at draw time, so no intermediate bitmap is
+ * allocated and {@link #setAlpha(int)} and {@link #setColorFilter(ColorFilter)} are honored.
  */
 public class CircleFramedDrawable extends Drawable {
 
@@ -41,73 +43,68 @@ public class CircleFramedDrawable extends Drawable {
     private final Paint mPaint;
 
     private float mScale;
-    private Rect mSrcRect;
-    private RectF mDstRect;
 
     public static CircleFramedDrawable getInstance(Context context, Bitmap icon) {
-        Resources res = context.getResources();
-        float iconSize = res.getDimension(R.dimen.circle_avatar_size);
+        final long start = LatencyLogger.start();
+        final CircleFramedDrawable drawable =
+                AvatarCache.getInstance(context).getDrawable(icon, getAvatarSize(context));
+        LatencyLogger.record(LatencyLogger.Operation.CIRCLE_FRAMED_DRAWABLE, start);
+        return drawable;
+    }
 
-        CircleFramedDrawable instance = new CircleFramedDrawable(icon, (int) iconSize);
-        return instance;
+    /** Returns the size in pixels at which avatars are displayed. */
+    public static int getAvatarSize(Context context) {
+        Resources res = context.getResources();
+        return (int) res.getDimension(R.dimen.circle_avatar_size);
     }
 
     public CircleFramedDrawable(Bitmap icon, int size) {
         super();
+        mBitmap = icon;
         mSize = size;
 
-        mBitmap = Bitmap.createBitmap(mSize, mSize, Bitmap.Config.ARGB_8888);
-        final Canvas canvas = new Canvas(mBitmap);
-
         final int width = icon.getWidth();
         final int height = icon.getHeight();
         final int square = Math.min(width, height);
+        final float scale = (float) mSize / square;
 
-        final Rect cropRect = new Rect((width - square) / 2, (height - square) / 2, square, square);
-        final RectF circleRect = new RectF(0f, 0f, mSize, mSize);
+        // Map the centered square of the icon onto the (0, 0, size, size) circle bounds.
+        final Matrix shaderMatrix = new Matrix();
+        shaderMatrix.setTranslate(-(width - square) / 2f, -(height - square) / 2f);
+        shaderMatrix.postScale(scale, scale);
+        final BitmapShader shader =
+                new BitmapShader(icon, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        shader.setLocalMatrix(shaderMatrix);
 
-        final Path fillPath = new Path();
-        fillPath.addArc(circleRect, 0f, 360f);
-
-        canvas.drawColor(0, PorterDuff.Mode.CLEAR);
-
-        // opaque circle matte
-        mPaint = new Paint();
-        mPaint.setAntiAlias(true);
-        mPaint.setColor(Color.BLACK);
-        mPaint.setStyle(Paint.Style.FILL);
-        canvas.drawPath(fillPath, mPaint);
-
-        // mask in the icon where the bitmap is opaque
-        mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
-        canvas.drawBitmap(icon, cropRect, circleRect, mPaint);
-
-        // prepare paint for frame drawing
-        mPaint.setXfermode(null);
+        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        mPaint.setShader(shader);
 
         mScale = 1f;
-
-        mSrcRect = new Rect(0, 0, mSize, mSize);
-        mDstRect = new RectF(0, 0, mSize, mSize);
     }
 
     @Override
     public void draw(Canvas canvas) {
-        final float inside = mScale * mSize;
-        final float pad = (mSize - inside) / 2f;
-
-        mDstRect.set(pad, pad, mSize - pad, mSize - pad);
-        canvas.drawBitmap(mBitmap, mSrcRect, mDstRect, null);
+        final float center = mSize / 2f;
+        final int saveCount = canvas.save();
+        canvas.scale(mScale, mScale, center, center);
+        canvas.drawCircle(center, center, center, mPaint);
+        canvas.restoreToCount(saveCount);
     }
 
     public void setScale(float scale) {
         mScale = scale;
+        invalidateSelf();
     }
 
     public float getScale() {
         return mScale;
     }
 
+    /** Returns the source bitmap this drawable draws from. */
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
     @Override
     public int getOpacity() {
         return PixelFormat.TRANSLUCENT;
@@ -115,12 +112,28 @@ public class CircleFramedDrawable extends Drawable {
 
     @Override
     public void setAlpha(int alpha) {
+        if (mPaint.getAlpha() != alpha) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mPaint.getAlpha();
     }
 
     @Override
     public void setColorFilter(ColorFilter cf) {
+        mPaint.setColorFilter(cf);
+        invalidateSelf();
     }
-    
+
+    @Override
+    public ColorFilter getColorFilter() {
+        return mPaint.getColorFilter();
+    }
+
     @Override
     public int getIntrinsicWidth() {
         return mSize;
@@ -131,4 +144,3 @@ public class CircleFramedDrawable extends Drawable {
         return mSize;
     }
 }
-
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import com.android.emergency.util.TaskScheduler;
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default {@link EmergencyContactSource}, backed by ContactsProvider through
+ * {@link EmergencyContactManager}.
+ *
+ * <p>Recently loaded contacts are kept in memory until ContactsProvider reports a change. Changes
+ * are coalesced before observers are notified, so that a contacts sync only notifies them once.
+ */
+public class ContactsProviderContactSource implements EmergencyContactSource {
+    private static final String TAG = "ContactsProviderContactSource";
+
+    /** Contacts changes closer than this are reported to observers once. */
+    private static final long CHANGE_COALESCING_DELAY_MS = 500;
+    /** Enough for every emergency contact the user realistically has, plus some churn. */
+    @VisibleForTesting
+    static final int MAX_CACHED_CONTACTS = 32;
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final LruCache<Uri, EmergencyContactManager.Contact> mContacts =
+            new LruCache<>(MAX_CACHED_CONTACTS);
+    /**
+     * Incremented whenever the cache is cleared, so that a load that started before the change
+     * doesn't put what it read back into the cache.
+     */
+    @GuardedBy("mLock")
+    private int mGeneration;
+    /** Only accessed on the main thread. */
+    private final ArraySet<Observer> mObservers = new ArraySet<>();
+    private final Runnable mNotifyObservers = this::notifyObservers;
+    private final ContentObserver mContactsObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            synchronized (mLock) {
+                mContacts.evictAll();
+                mGeneration++;
+            }
+            mMainHandler.removeCallbacks(mNotifyObservers);
+            mMainHandler.postDelayed(mNotifyObservers, CHANGE_COALESCING_DELAY_MS);
+        }
+    };
+
+    public ContactsProviderContactSource(Context context) {
+        mContext = context.getApplicationContext();
+        // Watched for the lifetime of the process, so that cached contacts never go stale.
+        mContext.getContentResolver().registerContentObserver(ContactsContract.AUTHORITY_URI,
+                true /* notifyForDescendants */, mContactsObserver);
+    }
+
+    @Override
+    public EmergencyContactManager.Contact getContact(Uri phoneUri) {
+        EmergencyContactManager.Contact contact =
+                EmergencyInfoPrefetcher.getPrefetchedContact(phoneUri);
+        if (contact != null) {
+            return contact;
+        }
+        final int generation;
+        synchronized (mLock) {
+            contact = mContacts.get(phoneUri);
+            generation = mGeneration;
+        }
+        if (contact == null) {
+            contact = EmergencyContactManager.getContact(mContext, phoneUri);
+            synchronized (mLock) {
+                if (generation == mGeneration) {
+                    mContacts.put(phoneUri, contact);
+                }
+            }
+        }
+        return contact;
+    }
+
+    @Override
+    public boolean isValidEmergencyContact(Uri phoneUri) {
+        if (phoneUri == null) {
+            return false;
+        }
+        if (EmergencyInfoPrefetcher.isPrefetchedContact(phoneUri)) {
+            return true;
+        }
+        synchronized (mLock) {
+            if (mContacts.get(phoneUri) != null) {
+                return true;
+            }
+        }
+        return EmergencyContactManager.isValidEmergencyContact(mContext, phoneUri);
+    }
+
+    @Override
+    public void resolveContacts(@Nullable Object owner, List<Uri> phoneUris, Callback callback) {
+        TaskScheduler.getInstance().submit(owner, "resolveContacts",
+                TaskScheduler.Priority.UI_CRITICAL, () -> load(phoneUris),
+                callback::onContactsResolved);
+    }
+
+    @Override
+    public void prefetch(List<Uri> phoneUris) {
+        TaskScheduler.getInstance().execute("prefetchContacts",
+                TaskScheduler.Priority.BACKGROUND, () -> load(phoneUris));
+    }
+
+    @Override
+    public void registerObserver(Observer observer) {
+        mObservers.add(observer);
+    }
+
+    @Override
+    public void unregisterObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    /** Called when ContactsProvider reports a change. */
+    @VisibleForTesting
+    void onContactsProviderChanged() {
+        mContactsObserver.onChange(false /* selfChange */);
+    }
+
+    private Map<Uri, EmergencyContactManager.Contact> load(List<Uri> phoneUris) {
+        final Map<Uri, EmergencyContactManager.Contact> contacts = new ArrayMap<>();
+        for (Uri phoneUri : phoneUris) {
+            if (!isValidEmergencyContact(phoneUri)) {
+                continue;
+            }
+            try {
+                contacts.put(phoneUri, getContact(phoneUri));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unable to load contact", e);
+            }
+        }
+        return contacts;
+    }
+
+    private void notifyObservers() {
+        for (Observer observer : new ArraySet<>(mObservers)) {
+            observer.onContactsChanged();
+        }
+    }
+}
@@ -26,7 +26,9 @@ import android.net.Uri;
 import android.provider.ContactsContract;
 import android.util.Log;
 
-import java.io.ByteArrayInputStream;
+import com.android.emergency.util.EmergencyTrace;
+import com.android.emergency.util.LatencyLogger;
+import com.android.emergency.util.StrictModeAuditor;
 
 /**
  * Provides methods to read name, phone number, photo, etc. from contacts.
@@ -39,10 +41,21 @@ public class EmergencyContactManager {
      * by {@code @phoneUri}.
      */
     public static Contact getContact(Context context, Uri phoneUri) {
+        EmergencyTrace.begin("EmergencyContactManager#getContact");
+        try {
+            return loadContact(context, phoneUri);
+        } finally {
+            EmergencyTrace.end();
+        }
+    }
+
+    private static Contact loadContact(Context context, Uri phoneUri) {
         String phoneNumber = null;
         String phoneType = null;
         String name = null;
         Bitmap photo = null;
+        final long start = LatencyLogger.start();
+        StrictModeAuditor.noteProviderCall("EmergencyContactManager#getContact");
         final Uri contactLookupUri =
                 ContactsContract.Contacts.getLookupUri(context.getContentResolver(),
                         phoneUri);
@@ -68,14 +81,15 @@ public class EmergencyContactManager {
                             photoId);
                     Cursor cursor2 = context.getContentResolver().query(
                             photoUri,
-                            new String[]{ContactsContract.Contacts.Photo.PHOTO},
+                            new String[]{ContactsContract.Data.DATA_VERSION,
+                                    ContactsContract.Contacts.Photo.PHOTO},
                             null, null, null);
                     try {
                         if (cursor2.moveToNext()) {
-                            byte[] data = cursor2.getBlob(0);
-                            if (data != null) {
-                                photo = BitmapFactory.decodeStream(new ByteArrayInputStream(data));
-                            }
+                            final long decodeStart = LatencyLogger.start();
+                            photo = decodeAvatar(context, photoId, cursor2.getInt(0), cursor2);
+                            LatencyLogger.record(LatencyLogger.Operation.PHOTO_DECODE,
+                                    decodeStart);
                         }
                     } finally {
                         if (cursor2 != null) {
@@ -89,9 +103,48 @@ public class EmergencyContactManager {
                 cursor.close();
             }
         }
+        LatencyLogger.record(LatencyLogger.Operation.GET_CONTACT, start);
         return new Contact(contactLookupUri, phoneUri, name, phoneNumber, phoneType, photo);
     }
 
+    /**
+     * Decodes the contact photo in the {@code PHOTO} column of {@code cursor} to the size it is
+     * displayed at. The photo is subsampled while decoding and the full-size source is dropped once
+     * the avatar is rendered, so a contact holds a few kilobytes of pixels whatever the resolution
+     * of its photo. Avatars are cached by photo row and {@code DATA_VERSION}, which changes
+     * whenever the row is updated, so a photo that was already rendered is neither copied out of
+     * the cursor nor decoded again.
+     */
+    private static Bitmap decodeAvatar(Context context, long photoId, int dataVersion,
+            Cursor cursor) {
+        final int size = CircleFramedDrawable.getAvatarSize(context);
+        final AvatarCache cache = AvatarCache.getInstance(context);
+        final String id = "photo:" + photoId + ":" + dataVersion;
+        final Bitmap cached = cache.getCachedBitmap(id, size);
+        if (cached != null) {
+            return cached;
+        }
+        final byte[] data = cursor.getBlob(
+                cursor.getColumnIndex(ContactsContract.Contacts.Photo.PHOTO));
+        if (data == null) {
+            return null;
+        }
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        final int square = Math.min(options.outWidth, options.outHeight);
+        if (square <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (square / (options.inSampleSize * 2) >= size) {
+            options.inSampleSize *= 2;
+        }
+        final Bitmap source = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        return source != null ? cache.getRenderedBitmap(id, source, size) : null;
+    }
+
     /** Returns whether the phone uri is not null and corresponds to an existing phone number. */
     public static boolean isValidEmergencyContact(Context context, Uri phoneUri) {
         return phoneUri != null && phoneExists(context, phoneUri);
@@ -99,6 +152,9 @@ public class EmergencyContactManager {
 
     private static boolean phoneExists(Context context, Uri phoneUri) {
         Cursor cursor = null;
+        final long start = LatencyLogger.start();
+        StrictModeAuditor.noteProviderCall("EmergencyContactManager#phoneExists");
+        EmergencyTrace.begin("EmergencyContactManager#phoneExists");
         try {
             cursor = context.getContentResolver().query(phoneUri, null, null, null, null);
             if (cursor != null && cursor.moveToFirst()) {
@@ -113,6 +169,8 @@ public class EmergencyContactManager {
             if (cursor != null) {
                 cursor.close();
             }
+            LatencyLogger.record(LatencyLogger.Operation.PHONE_EXISTS, start);
+            EmergencyTrace.end();
         }
         MetricsLogger.action(context, MetricsEvent.ACTION_PHONE_EXISTS, 0);
         return false;
@@ -133,7 +191,7 @@ public class EmergencyContactManager {
         private final String mPhoneNumber;
         /** The emergency contact's phone number type (mobile, work, home, etc). */
         private final String mPhoneType;
-        /** The contact's photo. */
+        /** The contact's photo, rendered at avatar size. */
         private final Bitmap mPhoto;
 
         /** Constructs a new contact. */
@@ -180,7 +238,7 @@ public class EmergencyContactManager {
             return mPhoneType;
         }
 
-        /** Returns the photo assigned to this contact. */
+        /** Returns the photo assigned to this contact, rendered at avatar size. */
         public Bitmap getPhoto() {
             return mPhoto;
         }
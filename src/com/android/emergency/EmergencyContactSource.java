@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where emergency contacts are loaded from. The default implementation reads ContactsProvider;
+ * overlays may provide a faster or cached one through
+ * {@link com.android.emergency.edit.EmergencyContactsFeatureProvider}.
+ *
+ * <p>Synchronous methods may block on I/O and must be called accordingly. Callbacks are invoked
+ * on the main thread.
+ */
+public interface EmergencyContactSource {
+
+    /** Receives the result of {@link #resolveContacts}. */
+    interface Callback {
+        /**
+         * Called with the contacts that could be resolved, keyed by phone Uri. Contacts that
+         * don't exist anymore are left out. Called with {@code null} if loading failed, in which
+         * case nothing is known about the contacts.
+         */
+        void onContactsResolved(Map<Uri, EmergencyContactManager.Contact> contacts);
+    }
+
+    /** Notified when contacts may have changed, e.g. because they were edited. */
+    interface Observer {
+        /** Called on the main thread after the source dropped what it knew about contacts. */
+        void onContactsChanged();
+    }
+
+    /**
+     * Returns the contact for {@code phoneUri}. May block.
+     *
+     * @throws IllegalArgumentException if the contact can't be loaded
+     */
+    EmergencyContactManager.Contact getContact(Uri phoneUri);
+
+    /** Returns whether {@code phoneUri} is an existing phone number. May block. */
+    boolean isValidEmergencyContact(Uri phoneUri);
+
+    /**
+     * Loads all {@code phoneUris} in the background, as a single batch, and passes them to
+     * {@code callback} unless {@code owner} cancelled its tasks through
+     * {@link com.android.emergency.util.TaskScheduler#cancelAll} in the meantime.
+     */
+    void resolveContacts(@Nullable Object owner, List<Uri> phoneUris, Callback callback);
+
+    /** Loads {@code phoneUris} in the background so that later calls don't block. */
+    void prefetch(List<Uri> phoneUris);
+
+    /** Starts notifying {@code observer} of changes. */
+    void registerObserver(Observer observer);
+
+    /** Stops notifying {@code observer} of changes. */
+    void unregisterObserver(Observer observer);
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.preference.PreferenceManager;
+
+import com.android.emergency.preferences.EmergencyContactsPreference;
+import com.android.emergency.util.PreferenceUtils;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.logging.MetricsLogger;
+import com.android.internal.util.UserIcons;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the data shown by {@link com.android.emergency.view.ViewInfoActivity} ahead of time, so
+ * that a launch right after the emergency dialer or keyguard pinged {@link PrefetchReceiver}
+ * finds everything in memory.
+ *
+ * <p>Prefetched data is only trusted for {@link #MAX_SNAPSHOT_AGE_MS}; after that the regular
+ * (synchronous) loading paths are used again.
+ */
+public final class EmergencyInfoPrefetcher {
+    private static final String TAG = "EmergencyInfoPrefetcher";
+
+    /** How long a prefetched snapshot is considered fresh enough to be displayed. */
+    @VisibleForTesting
+    static final long MAX_SNAPSHOT_AGE_MS = 30 * 1000;
+
+    private static final Object sLock = new Object();
+    private static Snapshot sSnapshot;
+
+    private static final AtomicInteger sWarmLaunchCount = new AtomicInteger();
+    private static final AtomicInteger sColdLaunchCount = new AtomicInteger();
+
+    /**
+     * Reads the emergency info, the user name and avatar and the emergency contacts, and keeps
+     * them in memory. Must not be called on the main thread.
+     */
+    public static void prefetch(Context context) {
+        final long startTime = SystemClock.elapsedRealtime();
+
+        // Loads the shared preferences file into the process-wide cache.
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final boolean hasInfo = PreferenceUtils.hasAtLeastOnePreferenceSet(context);
+
+        String contactsString = "";
+        try {
+            contactsString = prefs.getString(PreferenceKeys.KEY_EMERGENCY_CONTACTS, "");
+        } catch (ClassCastException e) {
+            // Protect against b/28194605, see PreferenceUtils#hasAtLeastOneEmergencyContact.
+        }
+        final List<Uri> phoneUris = EmergencyContactsPreference.deserializeAndFilter(
+                PreferenceKeys.KEY_EMERGENCY_CONTACTS, context, contactsString);
+        final Map<Uri, EmergencyContactManager.Contact> contacts = new ArrayMap<>();
+        for (Uri phoneUri : phoneUris) {
+            try {
+                contacts.put(phoneUri, EmergencyContactManager.getContact(context, phoneUri));
+            } catch (IllegalArgumentException e) {
+                // The contact disappeared in the meantime; the regular path will deal with it.
+                Log.w(TAG, "Unable to prefetch contact", e);
+            }
+        }
+
+        final UserManager userManager = context.getSystemService(UserManager.class);
+        final String userName = userManager.getUserName();
+        Bitmap userIcon = userManager.getUserIcon(UserHandle.myUserId());
+        if (userIcon == null) {
+            final Drawable defaultUserIcon = UserIcons.getDefaultUserIcon(
+                    context.getResources(), UserHandle.myUserId(), false /* light icon */);
+            userIcon = UserIcons.convertToBitmap(defaultUserIcon);
+        }
+
+        final Snapshot snapshot = new Snapshot(SystemClock.elapsedRealtime(), hasInfo,
+                userName, userIcon, Collections.unmodifiableMap(contacts));
+        synchronized (sLock) {
+            sSnapshot = snapshot;
+        }
+        Log.i(TAG, "Prefetched " + contacts.size() + " contacts in "
+                + (SystemClock.elapsedRealtime() - startTime) + "ms");
+    }
+
+    /**
+     * Called once per {@link com.android.emergency.view.ViewInfoActivity} launch. Returns the
+     * prefetched snapshot if it is still fresh, and records whether the launch hit warm data.
+     */
+    @Nullable
+    public static Snapshot onViewInfoLaunched(Context context) {
+        final Snapshot snapshot = getFreshSnapshot();
+        if (snapshot != null) {
+            sWarmLaunchCount.incrementAndGet();
+            MetricsLogger.count(context, "emergency_info_prefetch_hit", 1);
+        } else {
+            sColdLaunchCount.incrementAndGet();
+            MetricsLogger.count(context, "emergency_info_prefetch_miss", 1);
+        }
+        return snapshot;
+    }
+
+    /** Returns the prefetched contact for {@code phoneUri}, or null if there is none. */
+    @Nullable
+    public static EmergencyContactManager.Contact getPrefetchedContact(Uri phoneUri) {
+        final Snapshot snapshot = getFreshSnapshot();
+        return snapshot == null ? null : snapshot.mContacts.get(phoneUri);
+    }
+
+    /** Returns whether {@code phoneUri} was validated as an existing contact by the prefetch. */
+    public static boolean isPrefetchedContact(Uri phoneUri) {
+        return getPrefetchedContact(phoneUri) != null;
+    }
+
+    /** Drops the prefetched data, e.g. because the user changed their emergency info. */
+    public static void clear() {
+        synchronized (sLock) {
+            sSnapshot = null;
+        }
+    }
+
+    /** Returns how many launches found fresh prefetched data. */
+    public static int getWarmLaunchCount() {
+        return sWarmLaunchCount.get();
+    }
+
+    /** Returns how many launches had to load all their data themselves. */
+    public static int getColdLaunchCount() {
+        return sColdLaunchCount.get();
+    }
+
+    @VisibleForTesting
+    static void resetForTesting() {
+        clear();
+        sWarmLaunchCount.set(0);
+        sColdLaunchCount.set(0);
+    }
+
+    @Nullable
+    private static Snapshot getFreshSnapshot() {
+        synchronized (sLock) {
+            if (sSnapshot != null && SystemClock.elapsedRealtime() - sSnapshot.mTimestamp
+                    > MAX_SNAPSHOT_AGE_MS) {
+                sSnapshot = null;
+            }
+            return sSnapshot;
+        }
+    }
+
+    /** Immutable view of the data prefetched for the emergency info screen. */
+    public static final class Snapshot {
+        private final long mTimestamp;
+        private final boolean mHasInfo;
+        private final String mUserName;
+        private final Bitmap mUserIcon;
+        private final Map<Uri, EmergencyContactManager.Contact> mContacts;
+
+        private Snapshot(long timestamp, boolean hasInfo, String userName, Bitmap userIcon,
+                Map<Uri, EmergencyContactManager.Contact> contacts) {
+            mTimestamp = timestamp;
+            mHasInfo = hasInfo;
+            mUserName = userName;
+            mUserIcon = userIcon;
+            mContacts = contacts;
+        }
+
+        /** Returns whether at least one medical info preference is set. */
+        public boolean hasInfo() {
+            return mHasInfo;
+        }
+
+        /** Returns whether at least one valid emergency contact exists. */
+        public boolean hasContacts() {
+            return !mContacts.isEmpty();
+        }
+
+        /** Returns the user name, as returned by {@link UserManager#getUserName()}. */
+        public String getUserName() {
+            return mUserName;
+        }
+
+        /** Returns the user icon, or the default user icon if the user has none. */
+        public Bitmap getUserIcon() {
+            return mUserIcon;
+        }
+    }
+
+    private EmergencyInfoPrefetcher() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
@@ -16,24 +16,56 @@
 
 package com.android.emergency;
 
+import android.content.Context;
+import android.content.Intent;
 import android.database.Cursor;
 import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.provider.ContactsContract;
+import android.provider.SearchIndexablesContract.NonIndexableKey;
+import android.provider.SearchIndexablesContract.RawData;
 import android.provider.SearchIndexablesContract.XmlResource;
 import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesProvider;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
 
 import com.android.emergency.edit.EditInfoActivity;
 import com.android.emergency.edit.EditMedicalInfoActivity;
+import com.android.emergency.util.ContactListCodec;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
 
 import static android.provider.SearchIndexablesContract.INDEXABLES_RAW_COLUMNS;
 import static android.provider.SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS;
 import static android.provider.SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS;
 
+/**
+ * Exposes the emergency info screens to Settings search.
+ *
+ * <p>The XML resources are static. On top of them, the keys of rows that don't currently apply
+ * are reported as non-indexable, and each emergency contact is reported as a raw data row. These
+ * are computed from the current state whenever Settings queries them.
+ */
 public class EmergencySearchIndexablesProvider extends SearchIndexablesProvider {
     private static final String TAG = "EmergencySearchIndexablesProvider";
     private static final int IGNORED_RANK = 2112;
     private static final int NO_ICON_ID = 0;
 
+    private static final String AUTHORITY = "com.android.emergency";
+    private static final String TARGET_PACKAGE = "com.android.emergency";
+    private static final String INTENT_ACTION_MAIN = "android.intent.action.MAIN";
+
+    /** The footer is static explanatory text, not a setting. */
+    private static final String KEY_FOOTER = "footer_preference";
+    /** Prefix of the keys of the raw data rows of emergency contacts. */
+    private static final String KEY_PREFIX_EMERGENCY_CONTACT = "emergency_contact:";
+
     private static SearchIndexableResource[] INDEXABLE_RES = new SearchIndexableResource[] {
             new SearchIndexableResource(IGNORED_RANK, R.xml.edit_emergency_info,
                     EditInfoActivity.class.getName(),
@@ -61,8 +93,8 @@ public class EmergencySearchIndexablesProvider extends SearchIndexablesProvider
                     .add(XmlResource.COLUMN_XML_RESID, INDEXABLE_RES[i].xmlResId)
                     .add(XmlResource.COLUMN_CLASS_NAME, null)
                     .add(XmlResource.COLUMN_ICON_RESID, INDEXABLE_RES[i].iconResId)
-                    .add(XmlResource.COLUMN_INTENT_ACTION, "android.intent.action.MAIN")
-                    .add(XmlResource.COLUMN_INTENT_TARGET_PACKAGE, "com.android.emergency")
+                    .add(XmlResource.COLUMN_INTENT_ACTION, INTENT_ACTION_MAIN)
+                    .add(XmlResource.COLUMN_INTENT_TARGET_PACKAGE, TARGET_PACKAGE)
                     .add(XmlResource.COLUMN_INTENT_TARGET_CLASS, INDEXABLE_RES[i].className);
         }
         return cursor;
@@ -70,11 +102,103 @@ public class EmergencySearchIndexablesProvider extends SearchIndexablesProvider
 
     @Override
     public Cursor queryRawData(String[] projection) {
-        return null;
+        MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
+        final Context context = getContext();
+        if (context.getResources().getBoolean(R.bool.config_search_index_disabled)) {
+            return cursor;
+        }
+        final String screenTitle = context.getString(R.string.emergency_contacts_title);
+        for (ContactRow row : getContactRows(context)) {
+            cursor.newRow()
+                    .add(RawData.COLUMN_RANK, IGNORED_RANK)
+                    .add(RawData.COLUMN_TITLE, row.mName)
+                    .add(RawData.COLUMN_SCREEN_TITLE, screenTitle)
+                    .add(RawData.COLUMN_ICON_RESID, NO_ICON_ID)
+                    .add(RawData.COLUMN_INTENT_ACTION, INTENT_ACTION_MAIN)
+                    .add(RawData.COLUMN_INTENT_TARGET_PACKAGE, TARGET_PACKAGE)
+                    .add(RawData.COLUMN_INTENT_TARGET_CLASS, EditInfoActivity.class.getName())
+                    .add(RawData.COLUMN_KEY, row.mKey)
+                    .add(RawData.COLUMN_USER_ID, UserHandle.myUserId());
+        }
+        return cursor;
     }
 
     @Override
     public Cursor queryNonIndexableKeys(String[] projection) {
-        return null;
+        MatrixCursor cursor = new MatrixCursor(NON_INDEXABLES_KEYS_COLUMNS);
+        if (getContext().getResources().getBoolean(R.bool.config_search_index_disabled)) {
+            return cursor;
+        }
+        for (String key : getNonIndexableKeys(getContext())) {
+            cursor.newRow().add(NonIndexableKey.COLUMN_KEY_VALUE, key);
+        }
+        return cursor;
+    }
+
+    /** Returns the keys of the rows that don't currently apply, sorted. */
+    @VisibleForTesting
+    static TreeSet<String> getNonIndexableKeys(Context context) {
+        final TreeSet<String> keys = new TreeSet<>();
+        keys.add(KEY_FOOTER);
+        final Intent contactPickerIntent = new Intent(Intent.ACTION_PICK,
+                ContactsContract.CommonDataKinds.Phone.CONTENT_URI);
+        if (context.getPackageManager().queryIntentActivities(contactPickerIntent, 0)
+                .isEmpty()) {
+            // Without a contact picker, the add contact row only shows an error.
+            keys.add(PreferenceKeys.KEY_ADD_EMERGENCY_CONTACT);
+        }
+        if (getContactRows(context).isEmpty()) {
+            // Without emergency contacts, there is nobody to alert from the lock screen.
+            keys.add(PreferenceKeys.KEY_ALERT_FROM_LOCK_SCREEN);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns a row for each stored emergency contact that still exists. Only the display name is
+     * read, with one query per contact, which also tells whether the contact still exists.
+     */
+    private static List<ContactRow> getContactRows(Context context) {
+        String contactsString = "";
+        try {
+            contactsString = PreferenceManager.getDefaultSharedPreferences(context)
+                    .getString(PreferenceKeys.KEY_EMERGENCY_CONTACTS, "");
+        } catch (ClassCastException e) {
+            // Protect against b/28194605, see PreferenceUtils#hasAtLeastOneEmergencyContact.
+        }
+        final List<ContactRow> rows = new ArrayList<>();
+        for (String phoneUriString : ContactListCodec.decode(contactsString)) {
+            if (phoneUriString.isEmpty()) {
+                continue;
+            }
+            final Uri phoneUri = Uri.parse(phoneUriString);
+            final String name = queryDisplayName(context, phoneUri);
+            if (name != null) {
+                rows.add(new ContactRow(KEY_PREFIX_EMERGENCY_CONTACT + phoneUri, name));
+            }
+        }
+        return rows;
+    }
+
+    /** Returns the display name of the contact {@code phoneUri} belongs to, or null. */
+    private static String queryDisplayName(Context context, Uri phoneUri) {
+        try (Cursor cursor = context.getContentResolver().query(phoneUri,
+                new String[]{ContactsContract.Contacts.DISPLAY_NAME}, null, null, null)) {
+            return cursor != null && cursor.moveToFirst() ? cursor.getString(0) : null;
+        } catch (IllegalArgumentException | SecurityException e) {
+            Log.w(TAG, "Contact removed or unreadable while indexing", e);
+            return null;
+        }
+    }
+
+    /** A raw data row for one emergency contact. */
+    private static final class ContactRow {
+        private final String mKey;
+        private final String mName;
+
+        ContactRow(String key, String name) {
+            mKey = key;
+            mName = name;
+        }
     }
 }
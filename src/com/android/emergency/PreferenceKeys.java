@@ -32,6 +32,12 @@ public interface PreferenceKeys {
     /** Key for the add emergency contact preference */
     public static final String KEY_ADD_EMERGENCY_CONTACT = "add_emergency_contact";
 
+    /**
+     * Key for whether the emergency contacts may be notified from the lock screen, without
+     * unlocking the phone. Off by default.
+     */
+    public static final String KEY_ALERT_FROM_LOCK_SCREEN = "alert_from_lock_screen";
+
     /** Key for emergency name preference */
     public static final String KEY_NAME = "name";
 
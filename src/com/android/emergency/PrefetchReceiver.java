@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.android.emergency.util.TaskScheduler;
+
+/**
+ * Receives {@link #ACTION_PREFETCH_EMERGENCY_INFO}, which the emergency dialer or keyguard may
+ * send (targeted at this package) when it opens. Starting the process and loading the data at
+ * that point makes a subsequent {@code EMERGENCY_ASSISTANCE} launch start warm.
+ *
+ * <p>The receiver is disabled unless {@link R.bool#config_prefetch_enabled} is overlaid to true.
+ */
+public class PrefetchReceiver extends BroadcastReceiver {
+    /** Action to request the emergency info to be loaded ahead of time. */
+    public static final String ACTION_PREFETCH_EMERGENCY_INFO =
+            "com.android.emergency.action.PREFETCH_EMERGENCY_INFO";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!ACTION_PREFETCH_EMERGENCY_INFO.equals(intent.getAction())) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        // The user is likely about to open the emergency info screen.
+        TaskScheduler.getInstance().execute("prefetchEmergencyInfo",
+                TaskScheduler.Priority.UI_CRITICAL, () -> {
+                    try {
+                        EmergencyInfoPrefetcher.prefetch(appContext);
+                    } finally {
+                        result.finish();
+                    }
+                });
+    }
+}
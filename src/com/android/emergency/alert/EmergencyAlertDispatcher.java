@@ -0,0 +1,505 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.alert;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.android.emergency.R;
+import com.android.emergency.preferences.PhoneNumberIndex;
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.logging.MetricsLogger;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Sends an emergency alert, as a text message, to a list of phone numbers.
+ *
+ * <p>Up to {@link #MAX_CONCURRENT_SENDS} messages are in flight at once, so that one slow
+ * recipient doesn't hold up the others, but never faster than the configured rate limits allow:
+ * carriers, and {@code SmsUsageMonitor}, reject or hold back apps that send too many parts in a
+ * short time. Each recipient's delivery state is tracked, and failed sends are retried with
+ * exponential backoff, up to {@link #MAX_ATTEMPTS} times.
+ *
+ * <p>All the work happens on the thread of the dispatcher's handler; the alert keeps going after
+ * the screen that started it is gone, in {@link EmergencyAlertService}. Numbers are compared in
+ * E.164 format, so that one person isn't texted twice. The recipients and their states are saved
+ * after every change, and an alert cut short by the process dying is resumed from there.
+ */
+public class EmergencyAlertDispatcher {
+    private static final String TAG = "EmergencyAlertDispatcher";
+
+    /** Where the alert is at for a single recipient. */
+    public enum State {
+        /** Waiting for a free slot, or for the rate limits to allow another message. */
+        QUEUED,
+        /** Handed to the sender; waiting for the result. */
+        SENDING,
+        /** The last attempt failed; waiting for the backoff delay to pass. */
+        WAITING_TO_RETRY,
+        /** Sent successfully. */
+        SENT,
+        /** Failed, and won't be retried. */
+        FAILED
+    }
+
+    /** Notified when an alert is done. */
+    public interface Listener {
+        /**
+         * Called on the main thread once every recipient was either sent to or given up on, or
+         * with a {@code recipientCount} of 0 if {@link #resume()} found nothing to send.
+         */
+        void onAlertFinished(int sentCount, int recipientCount);
+    }
+
+    @VisibleForTesting
+    static final int MAX_CONCURRENT_SENDS = 3;
+    @VisibleForTesting
+    static final int MAX_ATTEMPTS = 4;
+    @VisibleForTesting
+    static final long INITIAL_BACKOFF_MILLIS = 5_000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private static final String PREFS_NAME = "emergency_alert";
+    private static final String KEY_ALERT = "alert";
+    private static final String KEY_RATE_LIMITS = "rate_limits";
+    private static final String JSON_MESSAGE = "message";
+    private static final String JSON_RECIPIENTS = "recipients";
+    private static final String JSON_NUMBER = "number";
+    private static final String JSON_STATE = "state";
+    private static final String JSON_ATTEMPTS = "attempts";
+    private static final String JSON_BOOT_COUNT = "boot_count";
+    private static final String JSON_SEND_TIMES = "send_times";
+
+    private static EmergencyAlertDispatcher sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mSavedState;
+    private final PhoneNumberIndex mPhoneNumberIndex;
+    private final SmsSender mSender;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<RateLimiter> mRateLimiters;
+    private final Runnable mSendNext = () -> {
+        sendNext();
+        saveState();
+    };
+
+    /** The recipients of the current (or last) alert, keyed by phone number in E.164 format. */
+    @GuardedBy("mRecipients")
+    private final Map<String, Recipient> mRecipients = new LinkedHashMap<>();
+    private final ArrayDeque<Recipient> mQueue = new ArrayDeque<>();
+    /** The message of the current (or last) alert. */
+    @Nullable private String mMessage;
+    private int mSendsInFlight;
+    /** Whether the saved state was read, which happens once, before the first alert. */
+    private boolean mRestored;
+    @Nullable private volatile Listener mListener;
+
+    /** Returns the process-wide instance, creating it on first use. */
+    public static synchronized EmergencyAlertDispatcher getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            final HandlerThread thread =
+                    new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            final Handler handler = new Handler(thread.getLooper());
+            final Resources res = appContext.getResources();
+            sInstance = new EmergencyAlertDispatcher(appContext,
+                    new SmsManagerSender(appContext, handler), handler, Arrays.asList(
+                            new RateLimiter(
+                                    res.getInteger(R.integer.config_alert_sms_burst_parts),
+                                    res.getInteger(R.integer.config_alert_sms_burst_window_ms)),
+                            new RateLimiter(
+                                    res.getInteger(R.integer.config_alert_sms_max_parts),
+                                    res.getInteger(R.integer.config_alert_sms_window_ms))));
+        }
+        return sInstance;
+    }
+
+    /** Returns the process-wide instance, or null if it wasn't created yet. */
+    @Nullable
+    public static synchronized EmergencyAlertDispatcher peekInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    EmergencyAlertDispatcher(Context context, SmsSender sender, Handler handler,
+            List<RateLimiter> rateLimiters) {
+        mContext = context;
+        mSavedState = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPhoneNumberIndex = PhoneNumberIndex.create(context);
+        mSender = sender;
+        mHandler = handler;
+        mRateLimiters = rateLimiters;
+    }
+
+    /** Sets the listener to notify when an alert is done, or null to stop notifying. */
+    public void setListener(@Nullable Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Sends {@code message} to each of {@code phoneNumbers}. If an alert is already in progress,
+     * the numbers it doesn't cover yet are added to it. May be called on any thread.
+     */
+    public void send(List<String> phoneNumbers, String message) {
+        final List<String> numbers = new ArrayList<>(phoneNumbers);
+        mHandler.post(() -> startAlert(numbers, message));
+    }
+
+    /**
+     * Resumes the alert that was in progress when the process died, if any. The listener is
+     * notified once it is done, right away if there is nothing to resume.
+     */
+    public void resume() {
+        mHandler.post(() -> {
+            restoreSavedAlert();
+            if (isInProgress()) {
+                sendNext();
+                saveState();
+            } else {
+                notifyFinished(0 /* sentCount */, 0 /* recipientCount */);
+            }
+        });
+    }
+
+    /** Returns the state of each recipient of the current or last alert, keyed by number. */
+    @VisibleForTesting
+    Map<String, State> getStates() {
+        final Map<String, State> states = new LinkedHashMap<>();
+        synchronized (mRecipients) {
+            for (Recipient recipient : mRecipients.values()) {
+                states.put(recipient.mNumber, recipient.mState);
+            }
+        }
+        return states;
+    }
+
+    /** Prints the state of the current or last alert, for {@code Activity#dump}. */
+    public void dump(String prefix, PrintWriter writer) {
+        synchronized (mRecipients) {
+            writer.println(prefix + "Emergency alert: " + mRecipients.size() + " recipients, "
+                    + mRateLimiters);
+            int index = 0;
+            for (Recipient recipient : mRecipients.values()) {
+                // Leave the numbers out of bug reports.
+                writer.println(prefix + "  #" + index++ + " " + recipient.mState + " after "
+                        + recipient.mAttempts + " attempts, last result "
+                        + recipient.mLastResultCode);
+            }
+        }
+    }
+
+    private void startAlert(List<String> phoneNumbers, String message) {
+        restoreSavedAlert();
+        synchronized (mRecipients) {
+            if (!isInProgress()) {
+                mRecipients.clear();
+                mMessage = message;
+            }
+            ArrayList<String> parts = null;
+            for (String phoneNumber : phoneNumbers) {
+                final String number = mPhoneNumberIndex.normalize(phoneNumber);
+                if (number == null || mRecipients.containsKey(number)) {
+                    continue;
+                }
+                if (parts == null) {
+                    parts = mSender.divideMessage(mMessage);
+                }
+                final Recipient recipient = new Recipient(number, parts);
+                mRecipients.put(number, recipient);
+                mQueue.addLast(recipient);
+            }
+        }
+        sendNext();
+        saveState();
+    }
+
+    /**
+     * Reads the alert saved by a previous process, once. Recipients it was still sending to are
+     * queued again: whether their message went out is unknown, and a duplicate alert is better
+     * than a missing one.
+     */
+    private void restoreSavedAlert() {
+        if (mRestored) {
+            return;
+        }
+        mRestored = true;
+        restoreRateLimits();
+        final String saved = mSavedState.getString(KEY_ALERT, null);
+        if (saved == null) {
+            return;
+        }
+        try {
+            final JSONObject alert = new JSONObject(saved);
+            final JSONArray recipients = alert.getJSONArray(JSON_RECIPIENTS);
+            final String message = alert.getString(JSON_MESSAGE);
+            final ArrayList<String> parts = mSender.divideMessage(message);
+            synchronized (mRecipients) {
+                mMessage = message;
+                for (int i = 0; i < recipients.length(); i++) {
+                    final JSONObject savedRecipient = recipients.getJSONObject(i);
+                    final Recipient recipient =
+                            new Recipient(savedRecipient.getString(JSON_NUMBER), parts);
+                    recipient.mState = State.valueOf(savedRecipient.getString(JSON_STATE));
+                    recipient.mAttempts = savedRecipient.getInt(JSON_ATTEMPTS);
+                    if (recipient.mState != State.SENT && recipient.mState != State.FAILED) {
+                        recipient.mState = State.QUEUED;
+                        mQueue.addLast(recipient);
+                    }
+                    mRecipients.put(recipient.mNumber, recipient);
+                }
+            }
+            Log.i(TAG, "Restored an emergency alert to " + recipients.length() + " recipients");
+        } catch (JSONException | IllegalArgumentException e) {
+            Log.w(TAG, "Dropping unreadable saved emergency alert", e);
+            mSavedState.edit().remove(KEY_ALERT).commit();
+        }
+    }
+
+    /**
+     * Restores when the last parts were sent, so that an alert resumed in a new process stays
+     * within the rate limits. Send times are elapsed realtime, so they are only kept since boot.
+     */
+    private void restoreRateLimits() {
+        final String saved = mSavedState.getString(KEY_RATE_LIMITS, null);
+        if (saved == null) {
+            return;
+        }
+        try {
+            final JSONObject rateLimits = new JSONObject(saved);
+            final JSONArray limiters = rateLimits.getJSONArray(JSON_SEND_TIMES);
+            if (rateLimits.getInt(JSON_BOOT_COUNT) != getBootCount()
+                    || limiters.length() != mRateLimiters.size()) {
+                return;
+            }
+            final long now = SystemClock.elapsedRealtime();
+            for (int i = 0; i < limiters.length(); i++) {
+                final JSONArray savedTimes = limiters.getJSONArray(i);
+                final long[] sendTimes = new long[savedTimes.length()];
+                for (int j = 0; j < sendTimes.length; j++) {
+                    sendTimes[j] = savedTimes.getLong(j);
+                }
+                mRateLimiters.get(i).restoreSendTimes(now, sendTimes);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping unreadable saved rate limits", e);
+        }
+    }
+
+    /**
+     * Saves the rate limit history, and the recipients and their states, or clears those once the
+     * alert is done.
+     */
+    private void saveState() {
+        final SharedPreferences.Editor editor = mSavedState.edit();
+        try {
+            editor.putString(KEY_RATE_LIMITS, encodeRateLimits());
+            if (isInProgress()) {
+                editor.putString(KEY_ALERT, encodeAlert());
+            } else {
+                editor.remove(KEY_ALERT);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Couldn't save the emergency alert", e);
+        }
+        // Committed right away: this is the dispatcher's thread, and the process may die.
+        editor.commit();
+    }
+
+    private String encodeAlert() throws JSONException {
+        final JSONArray recipients = new JSONArray();
+        synchronized (mRecipients) {
+            for (Recipient recipient : mRecipients.values()) {
+                recipients.put(new JSONObject()
+                        .put(JSON_NUMBER, recipient.mNumber)
+                        .put(JSON_STATE, recipient.mState.name())
+                        .put(JSON_ATTEMPTS, recipient.mAttempts));
+            }
+        }
+        return new JSONObject()
+                .put(JSON_MESSAGE, mMessage)
+                .put(JSON_RECIPIENTS, recipients)
+                .toString();
+    }
+
+    /** Encodes when the parts in the current rate limit windows were sent. */
+    private String encodeRateLimits() throws JSONException {
+        final long now = SystemClock.elapsedRealtime();
+        final JSONArray limiters = new JSONArray();
+        for (RateLimiter rateLimiter : mRateLimiters) {
+            final JSONArray sendTimes = new JSONArray();
+            for (long sendTime : rateLimiter.getSendTimes(now)) {
+                sendTimes.put(sendTime);
+            }
+            limiters.put(sendTimes);
+        }
+        return new JSONObject()
+                .put(JSON_BOOT_COUNT, getBootCount())
+                .put(JSON_SEND_TIMES, limiters)
+                .toString();
+    }
+
+    private int getBootCount() {
+        return Settings.Global.getInt(mContext.getContentResolver(), Settings.Global.BOOT_COUNT,
+                -1 /* def */);
+    }
+
+    /** Sends to queued recipients while there are free slots and the rate limits allow it. */
+    private void sendNext() {
+        mHandler.removeCallbacks(mSendNext);
+        while (mSendsInFlight < MAX_CONCURRENT_SENDS && !mQueue.isEmpty()) {
+            final Recipient recipient = mQueue.peekFirst();
+            final int parts = recipient.mParts.size();
+            // Rate limits are in wall time, which goes on while the device sleeps.
+            final long now = SystemClock.elapsedRealtime();
+            long delay = 0;
+            for (RateLimiter rateLimiter : mRateLimiters) {
+                delay = Math.max(delay, rateLimiter.getDelayMillis(now, parts));
+            }
+            if (delay > 0) {
+                mHandler.postDelayed(mSendNext, delay);
+                return;
+            }
+            for (RateLimiter rateLimiter : mRateLimiters) {
+                rateLimiter.onSent(now, parts);
+            }
+            mQueue.removeFirst();
+            mSendsInFlight++;
+            recipient.mAttempts++;
+            recipient.mState = State.SENDING;
+            mSender.sendMultipartTextMessage(recipient.mNumber, recipient.mParts,
+                    resultCode -> mHandler.post(() -> onSent(recipient, resultCode)));
+        }
+    }
+
+    private void onSent(Recipient recipient, int resultCode) {
+        mSendsInFlight--;
+        recipient.mLastResultCode = resultCode;
+        if (resultCode == Activity.RESULT_OK) {
+            recipient.mState = State.SENT;
+        } else if (recipient.mAttempts < MAX_ATTEMPTS && isRetryable(resultCode)) {
+            recipient.mState = State.WAITING_TO_RETRY;
+            mHandler.postDelayed(() -> {
+                recipient.mState = State.QUEUED;
+                mQueue.addLast(recipient);
+                sendNext();
+                saveState();
+            }, getBackoffMillis(recipient.mAttempts));
+        } else {
+            Log.w(TAG, "Giving up on a recipient after " + recipient.mAttempts
+                    + " attempts, result " + resultCode);
+            recipient.mState = State.FAILED;
+        }
+        if (!isInProgress()) {
+            onAlertFinished();
+        } else {
+            sendNext();
+        }
+        saveState();
+    }
+
+    private void onAlertFinished() {
+        int sent = 0;
+        final int total;
+        synchronized (mRecipients) {
+            for (Recipient recipient : mRecipients.values()) {
+                if (recipient.mState == State.SENT) {
+                    sent++;
+                }
+            }
+            total = mRecipients.size();
+        }
+        Log.i(TAG, "Emergency alert sent to " + sent + " of " + total + " recipients");
+        MetricsLogger.histogram(mContext, "emergency_alert_sms_sent", sent);
+        MetricsLogger.histogram(mContext, "emergency_alert_sms_failed", total - sent);
+        notifyFinished(sent, total);
+    }
+
+    private void notifyFinished(int sentCount, int recipientCount) {
+        mMainHandler.post(() -> {
+            final Listener listener = mListener;
+            if (listener != null) {
+                listener.onAlertFinished(sentCount, recipientCount);
+            }
+        });
+    }
+
+    private boolean isInProgress() {
+        synchronized (mRecipients) {
+            for (Recipient recipient : mRecipients.values()) {
+                if (recipient.mState != State.SENT && recipient.mState != State.FAILED) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @VisibleForTesting
+    static long getBackoffMillis(int attempts) {
+        return Math.min(INITIAL_BACKOFF_MILLIS << (attempts - 1), MAX_BACKOFF_MILLIS);
+    }
+
+    /** Whether sending may succeed later, e.g. once the phone is back in coverage. */
+    private static boolean isRetryable(int resultCode) {
+        switch (resultCode) {
+            case SmsManager.RESULT_ERROR_GENERIC_FAILURE:
+            case SmsManager.RESULT_ERROR_NO_SERVICE:
+            case SmsManager.RESULT_ERROR_RADIO_OFF:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static final class Recipient {
+        private final String mNumber;
+        private final ArrayList<String> mParts;
+        private volatile State mState = State.QUEUED;
+        private volatile int mAttempts;
+        private volatile int mLastResultCode = Activity.RESULT_OK;
+
+        Recipient(String number, ArrayList<String> parts) {
+            mNumber = number;
+            mParts = parts;
+        }
+    }
+}
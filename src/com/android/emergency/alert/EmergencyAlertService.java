@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.alert;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.widget.Toast;
+
+import com.android.emergency.R;
+
+import java.util.ArrayList;
+
+/**
+ * Foreground service that keeps the process, and the device, awake while
+ * {@link EmergencyAlertDispatcher} sends an alert, which may take a while under the rate limits.
+ * If the process dies anyway, the system restarts the service, which resumes the saved alert.
+ */
+public class EmergencyAlertService extends Service {
+    private static final String TAG = "EmergencyAlertService";
+
+    private static final String EXTRA_PHONE_NUMBERS = "phone_numbers";
+    private static final String EXTRA_MESSAGE = "message";
+    private static final String CHANNEL_ID = "emergency_alert";
+    private static final int NOTIFICATION_ID = 1;
+    /** Upper bound on how long an alert keeps the device awake. */
+    private static final long WAKE_LOCK_TIMEOUT_MILLIS = 60 * 60 * 1000;
+
+    private PowerManager.WakeLock mWakeLock;
+    /** The latest start handled, the only one that may stop the service. */
+    private int mLastStartId;
+
+    /** Starts sending {@code message} to each of {@code phoneNumbers}. */
+    public static void start(Context context, ArrayList<String> phoneNumbers, String message) {
+        context.startForegroundService(new Intent(context, EmergencyAlertService.class)
+                .putStringArrayListExtra(EXTRA_PHONE_NUMBERS, phoneNumbers)
+                .putExtra(EXTRA_MESSAGE, message));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        final Context appContext = getApplicationContext();
+        EmergencyAlertDispatcher.getInstance(this).setListener((sentCount, recipientCount) -> {
+            if (recipientCount > 0) {
+                Toast.makeText(appContext, appContext.getString(R.string.emergency_alert_sent,
+                        sentCount, recipientCount), Toast.LENGTH_LONG).show();
+            }
+            // Keeps running if there is a newer start that wasn't handled yet.
+            stopSelfResult(mLastStartId);
+        });
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        mLastStartId = startId;
+        startForeground(NOTIFICATION_ID, createNotification());
+        if (mWakeLock == null) {
+            mWakeLock = getSystemService(PowerManager.class)
+                    .newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+            mWakeLock.acquire(WAKE_LOCK_TIMEOUT_MILLIS);
+        }
+
+        final EmergencyAlertDispatcher dispatcher = EmergencyAlertDispatcher.getInstance(this);
+        if (intent != null && intent.hasExtra(EXTRA_PHONE_NUMBERS)) {
+            dispatcher.send(intent.getStringArrayListExtra(EXTRA_PHONE_NUMBERS),
+                    intent.getStringExtra(EXTRA_MESSAGE));
+        } else {
+            // Restarted after the process died.
+            dispatcher.resume();
+        }
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        EmergencyAlertDispatcher.getInstance(this).setListener(null);
+        if (mWakeLock != null && mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
+        mWakeLock = null;
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private Notification createNotification() {
+        final NotificationManager notificationManager =
+                getSystemService(NotificationManager.class);
+        notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                getString(R.string.emergency_alert_channel), NotificationManager.IMPORTANCE_LOW));
+        return new Notification.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_local_hospital_24dp)
+                .setContentTitle(getString(R.string.emergency_alert_notification_title))
+                .setOngoing(true)
+                .build();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.alert;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Sliding-window limit on how many message parts may be sent within a period of time, such as the
+ * carrier's or {@code SmsUsageMonitor}'s limits. Not thread safe.
+ */
+final class RateLimiter {
+    private final int mMaxParts;
+    private final long mWindowMillis;
+    /** When each part in the current window was sent, oldest first. */
+    private final ArrayDeque<Long> mSendTimes = new ArrayDeque<>();
+
+    RateLimiter(int maxParts, long windowMillis) {
+        if (maxParts <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid rate limit: " + maxParts + " parts per " + windowMillis + "ms");
+        }
+        mMaxParts = maxParts;
+        mWindowMillis = windowMillis;
+    }
+
+    /** Returns how long to wait from {@code now} before {@code parts} more parts may be sent. */
+    long getDelayMillis(long now, int parts) {
+        expire(now);
+        // A message longer than the whole budget can still go out, on its own, in an empty window.
+        final int excess = mSendTimes.size() + Math.min(parts, mMaxParts) - mMaxParts;
+        if (excess <= 0) {
+            return 0;
+        }
+        final Iterator<Long> sendTimes = mSendTimes.iterator();
+        long sendTime = 0;
+        for (int i = 0; i < excess; i++) {
+            sendTime = sendTimes.next();
+        }
+        return sendTime + mWindowMillis - now;
+    }
+
+    /** Records that {@code parts} parts were sent at {@code now}. */
+    void onSent(long now, int parts) {
+        for (int i = 0; i < parts; i++) {
+            mSendTimes.addLast(now);
+        }
+    }
+
+    /** Returns when each part in the current window was sent, oldest first, so it can be saved. */
+    long[] getSendTimes(long now) {
+        expire(now);
+        final long[] sendTimes = new long[mSendTimes.size()];
+        int i = 0;
+        for (long sendTime : mSendTimes) {
+            sendTimes[i++] = sendTime;
+        }
+        return sendTimes;
+    }
+
+    /**
+     * Replaces the send history with {@code sendTimes}, as returned by {@link #getSendTimes} in
+     * an earlier process since boot. Times after {@code now} can't be right and are dropped.
+     */
+    void restoreSendTimes(long now, long[] sendTimes) {
+        mSendTimes.clear();
+        for (long sendTime : sendTimes) {
+            if (sendTime <= now) {
+                mSendTimes.addLast(sendTime);
+            }
+        }
+        expire(now);
+    }
+
+    @Override
+    public String toString() {
+        return mMaxParts + " parts per " + mWindowMillis + "ms";
+    }
+
+    private void expire(long now) {
+        while (!mSendTimes.isEmpty() && mSendTimes.peekFirst() + mWindowMillis <= now) {
+            mSendTimes.removeFirst();
+        }
+    }
+}
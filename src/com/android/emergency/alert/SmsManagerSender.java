@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.alert;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.Handler;
+import android.telephony.SmsManager;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * {@link SmsSender} backed by the default {@link SmsManager}. All methods, and the callbacks, run
+ * on the thread of the handler given at construction.
+ */
+final class SmsManagerSender implements SmsSender {
+    private static final String TAG = "SmsManagerSender";
+
+    private static final String ACTION_SMS_SENT = "com.android.emergency.alert.SMS_SENT";
+    private static final String EXTRA_SEND_ID = "send_id";
+    /**
+     * Scheme of the data of the sent intents, {@code sms-sent:<session>/<send id>/<part>}, which
+     * makes each of them a distinct PendingIntent.
+     */
+    private static final String SCHEME_SMS_SENT = "sms-sent";
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final SparseArray<PendingSend> mPendingSends = new SparseArray<>();
+    /**
+     * Tells this sender's intents apart from those of a previous process, whose send ids started
+     * at 0 as well and may still be pending.
+     */
+    private final String mSession = UUID.randomUUID().toString();
+    private int mNextSendId;
+    private boolean mReceiverRegistered;
+
+    SmsManagerSender(Context context, Handler handler) {
+        mContext = context.getApplicationContext();
+        mHandler = handler;
+    }
+
+    @Override
+    public ArrayList<String> divideMessage(String text) {
+        return SmsManager.getDefault().divideMessage(text);
+    }
+
+    @Override
+    public void sendMultipartTextMessage(String destination, ArrayList<String> parts,
+            Callback callback) {
+        maybeRegisterReceiver();
+        final int sendId = mNextSendId++;
+        final ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            final Intent intent = new Intent(ACTION_SMS_SENT)
+                    .setData(Uri.fromParts(SCHEME_SMS_SENT, mSession + "/" + sendId + "/" + i,
+                            null /* fragment */))
+                    .setPackage(mContext.getPackageName())
+                    .putExtra(EXTRA_SEND_ID, sendId);
+            sentIntents.add(PendingIntent.getBroadcast(mContext, 0 /* requestCode */, intent,
+                    PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE));
+        }
+        mPendingSends.put(sendId, new PendingSend(parts.size(), callback));
+        try {
+            SmsManager.getDefault().sendMultipartTextMessage(destination,
+                    null /* scAddress */, parts, sentIntents, null /* deliveryIntents */);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Couldn't send message", e);
+            mPendingSends.remove(sendId);
+            callback.onSent(SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+        }
+    }
+
+    private void maybeRegisterReceiver() {
+        if (mReceiverRegistered) {
+            return;
+        }
+        final IntentFilter filter = new IntentFilter(ACTION_SMS_SENT);
+        filter.addDataScheme(SCHEME_SMS_SENT);
+        // Not exported: the results come through our own PendingIntents.
+        ContextCompat.registerReceiver(mContext, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final Uri data = intent.getData();
+                if (data == null
+                        || !data.getSchemeSpecificPart().startsWith(mSession + "/")) {
+                    // Sent by a previous process.
+                    return;
+                }
+                onPartSent(intent.getIntExtra(EXTRA_SEND_ID, -1), getResultCode());
+            }
+        }, filter, null /* broadcastPermission */, mHandler, ContextCompat.RECEIVER_NOT_EXPORTED);
+        mReceiverRegistered = true;
+    }
+
+    private void onPartSent(int sendId, int resultCode) {
+        final PendingSend send = mPendingSends.get(sendId);
+        if (send == null) {
+            return;
+        }
+        if (resultCode != Activity.RESULT_OK && send.mResultCode == Activity.RESULT_OK) {
+            send.mResultCode = resultCode;
+            // Report the failure right away; the parts still in flight can't change the outcome.
+            send.mCallback.onSent(resultCode);
+        }
+        if (--send.mRemainingParts == 0) {
+            mPendingSends.remove(sendId);
+            if (send.mResultCode == Activity.RESULT_OK) {
+                send.mCallback.onSent(Activity.RESULT_OK);
+            }
+        }
+    }
+
+    private static final class PendingSend {
+        private final Callback mCallback;
+        private int mRemainingParts;
+        private int mResultCode = Activity.RESULT_OK;
+
+        PendingSend(int parts, Callback callback) {
+            mRemainingParts = parts;
+            mCallback = callback;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.alert;
+
+import java.util.ArrayList;
+
+/**
+ * Sends text messages. Stands between {@link EmergencyAlertDispatcher} and
+ * {@link android.telephony.SmsManager} so that the dispatcher can be tested without a radio.
+ */
+public interface SmsSender {
+
+    /** Receives the outcome of {@link #sendMultipartTextMessage}. */
+    interface Callback {
+        /**
+         * Called once, on any thread, when all parts were sent or as soon as one of them failed.
+         *
+         * @param resultCode {@link android.app.Activity#RESULT_OK}, or one of the
+         *         {@code SmsManager.RESULT_ERROR_*} codes
+         */
+        void onSent(int resultCode);
+    }
+
+    /** Splits {@code text} into parts that each fit in a single message. */
+    ArrayList<String> divideMessage(String text);
+
+    /** Sends {@code parts} to {@code destination} as one multipart message. Doesn't block. */
+    void sendMultipartTextMessage(String destination, ArrayList<String> parts, Callback callback);
+}
@@ -34,15 +34,23 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
+import com.android.emergency.AvatarCache;
+import com.android.emergency.EmergencyInfoPrefetcher;
 import com.android.emergency.PreferenceKeys;
 import com.android.emergency.R;
 import com.android.emergency.overlay.FeatureFactory;
+import com.android.emergency.util.DisplayPhotoSize;
+import com.android.emergency.util.LatencyLogger;
 import com.android.emergency.util.PreferenceUtils;
+import com.android.emergency.util.StrictModeAuditor;
+import com.android.emergency.util.TaskScheduler;
 import com.android.emergency.view.ViewInfoActivity;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.logging.MetricsLogger;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 
 /**
@@ -55,7 +63,12 @@ public class EditInfoActivity extends Activity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StrictModeAuditor.maybeInstall();
         super.onCreate(savedInstanceState);
+        // Fetched ahead of time for the name dialog, which crops the user photo to this size.
+        DisplayPhotoSize.prefetch(this);
+        // Anything prefetched for the emergency info screen may become stale while editing.
+        EmergencyInfoPrefetcher.clear();
         // Protect against b/28401242 by enabling ViewInfoActivity.
         // We used to have code that disabled/enabled it and it could have been left in disabled
         // state.
@@ -105,6 +118,21 @@ public class EditInfoActivity extends Activity {
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        LatencyLogger.flushAsync();
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        StrictModeAuditor.dump(prefix, writer);
+        TaskScheduler.getInstance().dump(prefix, writer);
+        LatencyLogger.dump(prefix, writer);
+        AvatarCache.getInstance(this).dump(prefix, writer);
+    }
+
     /** @return The single fragment managed by this activity. */
     @VisibleForTesting
     public PreferenceFragment getFragment() {
@@ -127,6 +155,7 @@ public class EditInfoActivity extends Activity {
             sharedPreferences.edit().remove(key).commit();
         }
         sharedPreferences.edit().remove(PreferenceKeys.KEY_EMERGENCY_CONTACTS).commit();
+        sharedPreferences.edit().remove(PreferenceKeys.KEY_ALERT_FROM_LOCK_SCREEN).commit();
         // Show the settings suggestion again, since no emergency info is set.
         PreferenceUtils.enableSettingsSuggestion(this);
 
@@ -27,6 +27,7 @@ import androidx.preference.Preference.OnPreferenceChangeListener;
 import androidx.preference.PreferenceFragment;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceGroup;
+import androidx.preference.TwoStatePreference;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -35,6 +36,7 @@ import com.android.emergency.R;
 import com.android.emergency.ReloadablePreferenceInterface;
 import com.android.emergency.preferences.EmergencyContactsPreference;
 import com.android.emergency.preferences.EmergencyNamePreference;
+import com.android.emergency.util.EmergencyTrace;
 import com.android.emergency.util.PreferenceUtils;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.settingslib.CustomDialogPreference;
@@ -62,6 +64,15 @@ public class EditInfoFragment extends PreferenceFragment {
 
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
+        EmergencyTrace.begin("EditInfoFragment#onCreatePreferences");
+        try {
+            createPreferences(rootKey);
+        } finally {
+            EmergencyTrace.end();
+        }
+    }
+
+    private void createPreferences(String rootKey) {
         setPreferencesFromResource(R.xml.edit_emergency_info, rootKey);
 
         for (String preferenceKey : PreferenceKeys.KEYS_EDIT_EMERGENCY_INFO) {
@@ -108,9 +119,14 @@ public class EditInfoFragment extends PreferenceFragment {
 
     @Override
     public void onResume() {
-        super.onResume();
-        reloadFromPreference();
-        mEmergencyNamePreference.reloadFromUserManager();
+        EmergencyTrace.begin("EditInfoFragment#onResume");
+        try {
+            super.onResume();
+            reloadFromPreference();
+            mEmergencyNamePreference.reloadFromUserManager();
+        } finally {
+            EmergencyTrace.end();
+        }
     }
 
     /** Reloads the contacts by reading the value from the shared preferences. */
@@ -127,6 +143,11 @@ public class EditInfoFragment extends PreferenceFragment {
             }
         }
         mEmergencyContactsPreferenceCategory.reloadFromPreference();
+        // Cleared along with everything else by "Clear all".
+        final TwoStatePreference alertFromLockScreen = (TwoStatePreference) findPreference(
+                PreferenceKeys.KEY_ALERT_FROM_LOCK_SCREEN);
+        alertFromLockScreen.setChecked(alertFromLockScreen.getSharedPreferences()
+                .getBoolean(PreferenceKeys.KEY_ALERT_FROM_LOCK_SCREEN, false));
     }
 
     @Override
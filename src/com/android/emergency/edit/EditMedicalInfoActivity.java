@@ -19,14 +19,21 @@ import android.app.Activity;
 import android.app.Fragment;
 import android.os.Bundle;
 
+import com.android.emergency.util.LatencyLogger;
+import com.android.emergency.util.StrictModeAuditor;
+import com.android.emergency.util.TaskScheduler;
 import com.android.internal.annotations.VisibleForTesting;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /** Activity for editing medical information. */
 public class EditMedicalInfoActivity extends Activity {
     private EditMedicalInfoFragment mEditInfoFragment;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StrictModeAuditor.maybeInstall();
         super.onCreate(savedInstanceState);
         // We only add a new EditInfoFragment if no fragment is restored.
         Fragment fragment = getFragmentManager().findFragmentById(android.R.id.content);
@@ -40,6 +47,20 @@ public class EditMedicalInfoActivity extends Activity {
         }
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        LatencyLogger.flushAsync();
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        StrictModeAuditor.dump(prefix, writer);
+        TaskScheduler.getInstance().dump(prefix, writer);
+        LatencyLogger.dump(prefix, writer);
+    }
+
     @VisibleForTesting
     public EditMedicalInfoFragment getFragment() {
         return mEditInfoFragment;
@@ -26,6 +26,7 @@ import com.android.emergency.PreferenceKeys;
 import com.android.emergency.R;
 import com.android.emergency.ReloadablePreferenceInterface;
 import com.android.emergency.preferences.EmergencyNamePreference;
+import com.android.emergency.util.EmergencyTrace;
 import com.android.emergency.util.PreferenceUtils;
 import com.android.internal.logging.MetricsLogger;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
@@ -45,6 +46,15 @@ public class EditMedicalInfoFragment extends PreferenceFragment {
 
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
+        EmergencyTrace.begin("EditMedicalInfoFragment#onCreatePreferences");
+        try {
+            createPreferences(rootKey);
+        } finally {
+            EmergencyTrace.end();
+        }
+    }
+
+    private void createPreferences(String rootKey) {
         setPreferencesFromResource(R.xml.edit_medical_info, rootKey);
 
         for (int i = 0; i < PreferenceKeys.KEYS_EDIT_EMERGENCY_INFO.length; i++) {
@@ -82,9 +92,14 @@ public class EditMedicalInfoFragment extends PreferenceFragment {
 
     @Override
     public void onResume() {
-        super.onResume();
-        reloadFromPreference();
-        mEmergencyNamePreference.reloadFromUserManager();
+        EmergencyTrace.begin("EditMedicalInfoFragment#onResume");
+        try {
+            super.onResume();
+            reloadFromPreference();
+            mEmergencyNamePreference.reloadFromUserManager();
+        } finally {
+            EmergencyTrace.end();
+        }
     }
 
     @Override
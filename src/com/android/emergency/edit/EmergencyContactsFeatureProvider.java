@@ -16,7 +16,13 @@
 package com.android.emergency.edit;
 
 import android.app.Fragment;
+import android.content.Context;
+
+import com.android.emergency.EmergencyContactSource;
 
 /** Feature provider for Emergency Contacts. */
 public interface EmergencyContactsFeatureProvider {
+
+    /** Returns the source emergency contacts are loaded from. */
+    EmergencyContactSource getContactSource(Context context);
 }
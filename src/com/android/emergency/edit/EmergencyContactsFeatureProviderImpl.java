@@ -16,7 +16,20 @@
 package com.android.emergency.edit;
 
 import android.app.Fragment;
+import android.content.Context;
+
+import com.android.emergency.ContactsProviderContactSource;
+import com.android.emergency.EmergencyContactSource;
 
 /** AOSP implementation of Emergency Contacts data source. */
 public class EmergencyContactsFeatureProviderImpl implements EmergencyContactsFeatureProvider {
+    private EmergencyContactSource mContactSource;
+
+    @Override
+    public synchronized EmergencyContactSource getContactSource(Context context) {
+        if (mContactSource == null) {
+            mContactSource = new ContactsProviderContactSource(context);
+        }
+        return mContactSource;
+    }
 }
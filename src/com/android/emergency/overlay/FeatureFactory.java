@@ -16,43 +16,91 @@
 package com.android.emergency.overlay;
 
 import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.emergency.edit.EmergencyContactsFeatureProvider;
 import com.android.emergency.R;
+import com.android.internal.logging.MetricsLogger;
 
 /**
  * Abstract class for creating feature controllers. Allows OEM implementations to define their own
  * factories with their own controllers containing whatever code is needed to implement the
  * features. To provide a factory implementation, implementers should override
  * {@link R.string#config_featureFactory} in their override.
+ *
+ * <p>The factory is created once per process, under a lock, so concurrent first calls get the
+ * same instance. The default implementation is instantiated directly; only overlaid factories are
+ * loaded through reflection, once. How long the creation took, and on which thread, is logged
+ * and reported through {@link MetricsLogger}.
  */
 public abstract class FeatureFactory {
     private static final String LOG_TAG = "FeatureFactory";
     private static final boolean DEBUG = false;
 
-    protected static FeatureFactory sFactory;
+    private static final Object sLock = new Object();
+
+    protected static volatile FeatureFactory sFactory;
+
+    private static long sCreationCostMicros = -1;
 
     /** @return a singleton factory instance. */
     public static FeatureFactory getFactory(Context context) {
-        if (sFactory != null) {
+        final FeatureFactory factory = sFactory;
+        if (factory != null) {
+            return factory;
+        }
+        synchronized (sLock) {
+            if (sFactory == null) {
+                sFactory = createFactory(context);
+            }
             return sFactory;
         }
+    }
+
+    /**
+     * Returns how long creating the factory took, in microseconds, or -1 if it wasn't created
+     * (or was injected) yet.
+     */
+    public static long getCreationCostMicros() {
+        synchronized (sLock) {
+            return sCreationCostMicros;
+        }
+    }
 
+    private static FeatureFactory createFactory(Context context) {
         if (DEBUG) Log.d(LOG_TAG, "getFactory");
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
         final String clsName = context.getString(R.string.config_featureFactory);
         if (TextUtils.isEmpty(clsName)) {
             throw new UnsupportedOperationException("No feature factory configured");
         }
-        try {
-            sFactory = (FeatureFactory) context.getClassLoader().loadClass(clsName).newInstance();
-        } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
-            throw new FactoryNotFoundException(e);
+        final FeatureFactory factory;
+        if (FeatureFactoryImpl.class.getName().equals(clsName)) {
+            // Not overlaid: no need for reflection.
+            factory = new FeatureFactoryImpl();
+        } else {
+            try {
+                factory = context.getClassLoader().loadClass(clsName)
+                        .asSubclass(FeatureFactory.class)
+                        .getDeclaredConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new FactoryNotFoundException(e);
+            }
         }
 
-        if (DEBUG) Log.d(LOG_TAG, "started " + sFactory.getClass().getSimpleName());
-        return sFactory;
+        sCreationCostMicros = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000;
+        final boolean onMainThread = Looper.getMainLooper().isCurrentThread();
+        Log.i(LOG_TAG, "Created " + factory.getClass().getSimpleName() + " in "
+                + sCreationCostMicros + "us" + (onMainThread ? " on the main thread" : ""));
+        MetricsLogger.histogram(context, onMainThread
+                        ? "emergency_feature_factory_init_main_us"
+                        : "emergency_feature_factory_init_background_us",
+                (int) sCreationCostMicros);
+        return factory;
     }
 
     public abstract EmergencyContactsFeatureProvider getEmergencyContactsFeatureProvider();
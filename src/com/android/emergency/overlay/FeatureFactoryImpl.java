@@ -15,7 +15,7 @@ public class FeatureFactoryImpl extends FeatureFactory {
     protected EmergencyContactsFeatureProvider mEmergencyContactsFeatureProvider;
 
     @Override
-    public EmergencyContactsFeatureProvider getEmergencyContactsFeatureProvider() {
+    public synchronized EmergencyContactsFeatureProvider getEmergencyContactsFeatureProvider() {
         if (mEmergencyContactsFeatureProvider == null) {
             mEmergencyContactsFeatureProvider = new EmergencyContactsFeatureProviderImpl();
         }
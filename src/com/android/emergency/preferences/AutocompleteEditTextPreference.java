@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.MultiAutoCompleteTextView;
+import android.widget.TextView;
+
+import androidx.annotation.RawRes;
+
+import com.android.emergency.R;
+import com.android.emergency.util.EmergencyTrace;
+import com.android.emergency.util.PrefixIndex;
+import com.android.emergency.util.TaskScheduler;
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link EmergencyEditTextPreference} whose dialog suggests items from a bundled list, such as
+ * medication names, as the user types. Items are separated by commas or line breaks, and each is
+ * completed on its own.
+ *
+ * <p>The list is loaded into a {@link PrefixIndex} the first time a dialog that uses it opens,
+ * in the background, and kept for the life of the process. Suggestions are looked up on the
+ * filter's worker thread.
+ */
+public class AutocompleteEditTextPreference extends EmergencyEditTextPreference {
+    private static final String TAG = "AutocompleteEditText";
+
+    @VisibleForTesting
+    static final int MAX_SUGGESTIONS = 8;
+    /** Bounds on what is loaded from a list, so that an overlaid list can't use up the heap. */
+    private static final int MAX_TERMS = 10_000;
+    private static final int MAX_CHARS = 256 * 1024;
+
+    /** Loaded suggestion lists, keyed by raw resource id. */
+    @GuardedBy("sIndexes")
+    private static final SparseArray<PrefixIndex> sIndexes = new SparseArray<>();
+
+    @RawRes
+    private final int mSuggestionsResId;
+    private final CharSequence mHint;
+
+    public AutocompleteEditTextPreference(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        TypedArray a = context.obtainStyledAttributes(
+                attrs, R.styleable.AutocompleteEditTextPreference, 0, 0);
+        mSuggestionsResId = a.getResourceId(
+                R.styleable.AutocompleteEditTextPreference_suggestions, 0 /* defValue */);
+        mHint = a.getText(R.styleable.AutocompleteEditTextPreference_android_hint);
+        a.recycle();
+        setDialogLayoutResource(R.layout.preference_dialog_autocomplete_edittext);
+    }
+
+    @Override
+    protected void onBindDialogView(View view) {
+        super.onBindDialogView(view);
+        final MultiAutoCompleteTextView editText = view.findViewById(android.R.id.edit);
+        editText.setHint(mHint);
+        if (mSuggestionsResId == 0) {
+            return;
+        }
+        editText.setTokenizer(new ListTokenizer());
+        editText.setAdapter(new SuggestionAdapter(getContext(), mSuggestionsResId));
+        // Have the list ready by the time the user typed the first letter.
+        final Context appContext = getContext().getApplicationContext();
+        final int resId = mSuggestionsResId;
+        TaskScheduler.getInstance().execute("loadSuggestions", TaskScheduler.Priority.BACKGROUND,
+                () -> getIndex(appContext, resId));
+    }
+
+    /** Returns the index of the list {@code resId}, loading it if needed. May block. */
+    @VisibleForTesting
+    static PrefixIndex getIndex(Context context, @RawRes int resId) {
+        synchronized (sIndexes) {
+            PrefixIndex index = sIndexes.get(resId);
+            if (index == null) {
+                index = loadIndex(context, resId);
+                sIndexes.put(resId, index);
+            }
+            return index;
+        }
+    }
+
+    private static PrefixIndex loadIndex(Context context, @RawRes int resId) {
+        EmergencyTrace.begin("AutocompleteEditTextPreference#loadIndex");
+        try (Reader reader = new InputStreamReader(
+                context.getResources().openRawResource(resId), StandardCharsets.UTF_8)) {
+            final PrefixIndex index = PrefixIndex.read(reader, MAX_TERMS, MAX_CHARS);
+            if (index.isTruncated()) {
+                Log.w(TAG, "Suggestion list truncated to " + index.size() + " items");
+            }
+            return index;
+        } catch (IOException | Resources.NotFoundException e) {
+            Log.w(TAG, "Couldn't load suggestions", e);
+            return PrefixIndex.build(Collections.emptyList());
+        } finally {
+            EmergencyTrace.end();
+        }
+    }
+
+    /** Splits the text into items at commas, semicolons and line breaks. */
+    @VisibleForTesting
+    static final class ListTokenizer implements MultiAutoCompleteTextView.Tokenizer {
+
+        @Override
+        public int findTokenStart(CharSequence text, int cursor) {
+            int start = cursor;
+            while (start > 0 && !isSeparator(text.charAt(start - 1))) {
+                start--;
+            }
+            while (start < cursor && text.charAt(start) == ' ') {
+                start++;
+            }
+            return start;
+        }
+
+        @Override
+        public int findTokenEnd(CharSequence text, int cursor) {
+            for (int end = cursor; end < text.length(); end++) {
+                if (isSeparator(text.charAt(end))) {
+                    return end;
+                }
+            }
+            return text.length();
+        }
+
+        @Override
+        public CharSequence terminateToken(CharSequence text) {
+            int end = text.length();
+            while (end > 0 && text.charAt(end - 1) == ' ') {
+                end--;
+            }
+            if (end > 0 && isSeparator(text.charAt(end - 1))) {
+                return text;
+            }
+            if (text instanceof Spanned) {
+                final SpannableString terminated = new SpannableString(text + ", ");
+                TextUtils.copySpansFrom((Spanned) text, 0, text.length(), Object.class,
+                        terminated, 0);
+                return terminated;
+            }
+            return text + ", ";
+        }
+
+        private static boolean isSeparator(char c) {
+            return c == ',' || c == ';' || c == '\n';
+        }
+    }
+
+    /** Suggests the items of a list that start with what the user typed. */
+    private static final class SuggestionAdapter extends BaseAdapter implements Filterable {
+        private final Context mContext;
+        private final LayoutInflater mInflater;
+        @RawRes
+        private final int mResId;
+        private List<String> mSuggestions = Collections.emptyList();
+        private Filter mFilter;
+
+        SuggestionAdapter(Context context, @RawRes int resId) {
+            mContext = context.getApplicationContext();
+            mInflater = LayoutInflater.from(context);
+            mResId = resId;
+        }
+
+        @Override
+        public int getCount() {
+            return mSuggestions.size();
+        }
+
+        @Override
+        public String getItem(int position) {
+            return mSuggestions.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            final TextView view = convertView != null ? (TextView) convertView
+                    : (TextView) mInflater.inflate(
+                            android.R.layout.simple_dropdown_item_1line, parent, false);
+            view.setText(getItem(position));
+            return view;
+        }
+
+        @Override
+        public Filter getFilter() {
+            if (mFilter == null) {
+                mFilter = createFilter();
+            }
+            return mFilter;
+        }
+
+        private Filter createFilter() {
+            return new Filter() {
+                @Override
+                protected FilterResults performFiltering(CharSequence constraint) {
+                    // Runs on the filter's worker thread.
+                    final List<String> suggestions = TextUtils.isEmpty(constraint)
+                            ? Collections.emptyList()
+                            : getIndex(mContext, mResId).query(constraint, MAX_SUGGESTIONS);
+                    final FilterResults results = new FilterResults();
+                    results.values = suggestions;
+                    results.count = suggestions.size();
+                    return results;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                protected void publishResults(CharSequence constraint, FilterResults results) {
+                    mSuggestions = (List<String>) results.values;
+                    if (results.count > 0) {
+                        notifyDataSetChanged();
+                    } else {
+                        notifyDataSetInvalidated();
+                    }
+                }
+            };
+        }
+    }
+}
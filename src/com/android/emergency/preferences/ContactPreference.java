@@ -28,13 +28,17 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceViewHolder;
+import android.telecom.PhoneAccount;
 import android.telecom.TelecomManager;
+import android.telephony.PhoneNumberUtils;
 import android.text.BidiFormatter;
 import android.text.TextDirectionHeuristics;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
@@ -44,6 +48,8 @@ import android.widget.Toast;
 import com.android.emergency.CircleFramedDrawable;
 import com.android.emergency.EmergencyContactManager;
 import com.android.emergency.R;
+import com.android.emergency.util.EmergencyTrace;
+import com.android.emergency.util.LatencyLogger;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.logging.MetricsLogger;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
@@ -61,12 +67,17 @@ public class ContactPreference extends Preference {
     static final ContactFactory DEFAULT_CONTACT_FACTORY = new ContactFactory() {
         @Override
         public EmergencyContactManager.Contact getContact(Context context, Uri phoneUri) {
-            return EmergencyContactManager.getContact(context, phoneUri);
+            return EmergencyContactsPreference.getContactSource(context).getContact(phoneUri);
         }
     };
 
     private final ContactFactory mContactFactory;
     private EmergencyContactManager.Contact mContact;
+    /** Resolved at bind time, so that calling doesn't look up the TelecomManager on tap. */
+    @Nullable private CallPlacer mCallPlacer;
+    /** The {@code tel:} Uri of the contact's number, or null if it is not dialable. */
+    @Nullable private Uri mCallUri;
+    private long mLastCallLatencyNanos;
     @Nullable private RemoveContactPreferenceListener mRemoveContactPreferenceListener;
     @Nullable private AlertDialog mRemoveContactDialog;
 
@@ -94,6 +105,14 @@ public class ContactPreference extends Preference {
         EmergencyContactManager.Contact getContact(Context context, Uri phoneUri);
     }
 
+    /**
+     * Interface for placing a call. Tests replace the TelecomManager one so that they don't dial.
+     */
+    public interface CallPlacer {
+        /** Places a call to the {@code tel:} Uri {@code callUri}. */
+        void placeCall(Uri callUri);
+    }
+
     public ContactPreference(Context context, AttributeSet attributes) {
         super(context, attributes);
         mContactFactory = DEFAULT_CONTACT_FACTORY;
@@ -121,11 +140,16 @@ public class ContactPreference extends Preference {
     }
 
     public void setPhoneUri(@NonNull Uri phoneUri) {
-        if (mContact != null && !phoneUri.equals(mContact.getPhoneUri()) &&
+        setContact(mContactFactory.getContact(getContext(), phoneUri));
+    }
+
+    /** Shows {@code contact}, which was already loaded, e.g. in the background. */
+    void setContact(@NonNull EmergencyContactManager.Contact contact) {
+        if (mContact != null && !contact.getPhoneUri().equals(mContact.getPhoneUri()) &&
                 mRemoveContactDialog != null) {
             mRemoveContactDialog.dismiss();
         }
-        mContact = mContactFactory.getContact(getContext(), phoneUri);
+        mContact = contact;
 
         setTitle(mContact.getName());
         setKey(mContact.getPhoneUri().toString());
@@ -137,6 +161,7 @@ public class ContactPreference extends Preference {
                         BidiFormatter.getInstance().unicodeWrap(mContact.getPhoneNumber(),
                                 TextDirectionHeuristics.LTR));
         setSummary(summary);
+        prepareCallTarget();
 
         // Update the message to show the correct name.
         if (mRemoveContactDialog != null) {
@@ -148,8 +173,7 @@ public class ContactPreference extends Preference {
         //TODO: Consider doing the following in a non-UI thread.
         Drawable icon;
         if (mContact.getPhoto() != null) {
-            icon = new CircleFramedDrawable(mContact.getPhoto(),
-                    (int) getContext().getResources().getDimension(R.dimen.circle_avatar_size));
+            icon = CircleFramedDrawable.getInstance(getContext(), mContact.getPhoto());
         } else {
             icon = getContext().getDrawable(R.drawable.ic_account_circle_filled_24dp);
         }
@@ -162,12 +186,11 @@ public class ContactPreference extends Preference {
         mRemoveContactPreferenceListener = removeContactListener;
         if (mRemoveContactPreferenceListener == null) {
             mRemoveContactDialog = null;
-            return;
         }
-        if (mRemoveContactDialog != null) {
-            return;
-        }
-        // Create the remove contact dialog
+        // The remove contact dialog is created on first use: most contacts are never removed.
+    }
+
+    private AlertDialog createRemoveContactDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
         builder.setNegativeButton(getContext().getString(R.string.cancel), null);
         builder.setPositiveButton(getContext().getString(R.string.remove),
@@ -183,7 +206,7 @@ public class ContactPreference extends Preference {
                 });
         builder.setMessage(String.format(getContext().getString(R.string.remove_contact),
                 mContact.getName()));
-        mRemoveContactDialog = builder.create();
+        return builder.create();
     }
 
     @Override
@@ -207,6 +230,11 @@ public class ContactPreference extends Preference {
         return mContact.getPhoneUri();
     }
 
+    /** Returns the phone number of the contact, as stored in the contacts provider. */
+    public String getPhoneNumber() {
+        return mContact.getPhoneNumber();
+    }
+
     @VisibleForTesting
     EmergencyContactManager.Contact getContact() {
         return mContact;
@@ -221,13 +249,74 @@ public class ContactPreference extends Preference {
      * Calls the contact.
      */
     public void callContact() {
+        final long start = SystemClock.elapsedRealtimeNanos();
+        if (mCallUri == null) {
+            Toast.makeText(getContext(),
+                           getContext().getString(R.string.fail_call_contact),
+                           Toast.LENGTH_LONG).show();
+            Log.w(TAG, "Emergency contact has no dialable number");
+            return;
+        }
         // Use TelecomManager to place the call; this APK has CALL_PRIVILEGED permission so it will
         // be able to call emergency numbers.
-        TelecomManager tm = (TelecomManager) getContext().getSystemService(Context.TELECOM_SERVICE);
-        tm.placeCall(Uri.parse("tel:" + mContact.getPhoneNumber()), null);
+        EmergencyTrace.begin("ContactPreference#callContact");
+        try {
+            mCallPlacer.placeCall(mCallUri);
+        } finally {
+            EmergencyTrace.end();
+        }
+        // Everything else waits until the call is on its way.
+        mLastCallLatencyNanos = SystemClock.elapsedRealtimeNanos() - start;
+        LatencyLogger.record(LatencyLogger.Operation.CALL_CONTACT, start);
         MetricsLogger.action(getContext(), MetricsEvent.ACTION_CALL_EMERGENCY_CONTACT);
     }
 
+    /** Returns the Uri {@link #callContact()} places the call to, or null if there is none. */
+    @VisibleForTesting
+    @Nullable
+    Uri getCallUri() {
+        return mCallUri;
+    }
+
+    /** Returns how long the last {@link #callContact()} took until the call was placed. */
+    @VisibleForTesting
+    public long getLastCallLatencyNanos() {
+        return mLastCallLatencyNanos;
+    }
+
+    @VisibleForTesting
+    public void setCallPlacer(CallPlacer callPlacer) {
+        mCallPlacer = callPlacer;
+    }
+
+    /**
+     * Prepares everything {@link #callContact()} needs, so that a tap only places the call: the
+     * TelecomManager, and the {@code tel:} Uri of the contact's number stripped of formatting.
+     */
+    private void prepareCallTarget() {
+        if (mCallPlacer == null) {
+            final TelecomManager telecomManager =
+                    getContext().getSystemService(TelecomManager.class);
+            mCallPlacer = callUri -> telecomManager.placeCall(callUri, null /* extras */);
+        }
+        final String number = mContact.getPhoneNumber() != null
+                ? PhoneNumberUtils.stripSeparators(mContact.getPhoneNumber()) : null;
+        mCallUri = isDialable(number)
+                ? Uri.fromParts(PhoneAccount.SCHEME_TEL, number, null /* fragment */) : null;
+    }
+
+    private static boolean isDialable(@Nullable String number) {
+        if (TextUtils.isEmpty(number)) {
+            return false;
+        }
+        for (int i = 0; i < number.length(); i++) {
+            if (Character.isDigit(number.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Displays a contact card for the contact.
      */
@@ -247,10 +336,14 @@ public class ContactPreference extends Preference {
     }
 
     /** Shows the dialog to remove the contact, restoring it from {@code state} if it's not null. */
-    private void showRemoveContactDialog(Bundle state) {
-        if (mRemoveContactDialog == null) {
+    @VisibleForTesting
+    void showRemoveContactDialog(Bundle state) {
+        if (mRemoveContactPreferenceListener == null) {
             return;
         }
+        if (mRemoveContactDialog == null) {
+            mRemoveContactDialog = createRemoveContactDialog();
+        }
         if (state != null) {
             mRemoveContactDialog.onRestoreInstanceState(state);
         }
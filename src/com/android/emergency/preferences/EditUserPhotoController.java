@@ -25,19 +25,15 @@ import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Paint;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.AsyncTask;
-import android.os.UserHandle;
-import android.os.UserManager;
-import android.provider.ContactsContract.DisplayPhoto;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.util.Log;
 import android.view.Gravity;
@@ -49,21 +45,27 @@ import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.ListPopupWindow;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.core.content.FileProvider;
 
 import com.android.emergency.CircleFramedDrawable;
 import com.android.emergency.R;
+import com.android.emergency.util.DisplayPhotoSize;
+import com.android.emergency.util.EmergencyTrace;
+import com.android.emergency.util.LatencyLogger;
+import com.android.emergency.util.TaskScheduler;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.settingslib.RestrictedLockUtilsInternal;
 
-import libcore.io.Streams;
-
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -79,13 +81,17 @@ public class EditUserPhotoController {
     private static final String PRE_CROP_PICTURE_FILE_NAME = "PreCropEditUserPhoto.jpg";
     private static final String CROP_PICTURE_FILE_NAME = "CropEditUserPhoto.jpg";
     private static final String TAKE_PICTURE_FILE_NAME = "TakeEditUserPhoto2.jpg";
-    private static final String NEW_USER_PHOTO_FILE_NAME = "NewUserPhoto.png";
-    private static final String ACTION_CROP = "com.android.camera.action.CROP";
+    private static final String NEW_USER_PHOTO_FILE_NAME = "NewUserPhoto.raw";
+    static final String ACTION_CROP = "com.android.camera.action.CROP";
     private static final String FILE_PATH = "com.android.emergency.files";
+    /** Width and height, as ints, in front of the pixels of the temp photo file. */
+    private static final int RAW_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
     private final int mPhotoSize;
 
     private final Context mContext;
+    private final PhotoCapabilities mCapabilities;
     private final Fragment mFragment;
     private final ImageView mImageView;
 
@@ -104,7 +110,10 @@ public class EditUserPhotoController {
         mPreCropPictureUri = createTempImageUri(mContext, PRE_CROP_PICTURE_FILE_NAME, !waiting);
         mCropPictureUri = createTempImageUri(mContext, CROP_PICTURE_FILE_NAME, !waiting);
         mTakePictureUri = createTempImageUri(mContext, TAKE_PICTURE_FILE_NAME, !waiting);
-        mPhotoSize = getPhotoSize(mContext);
+        mPhotoSize = DisplayPhotoSize.get(mContext);
+        mCapabilities = PhotoCapabilities.getInstance(mContext);
+        // Resolved in the background now, so that the popup shows up right away when tapped.
+        mCapabilities.prefetch();
         mImageView.setOnClickListener(new OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -115,6 +124,19 @@ public class EditUserPhotoController {
         mNewUserPhotoDrawable = drawable;
     }
 
+    /**
+     * Shows {@code bitmap} as the new photo, unless another one was picked in the meantime. Used
+     * when the photo picked before the process died has been read back from disk.
+     */
+    void restoreNewUserPhotoBitmap(Bitmap bitmap) {
+        if (mNewUserPhotoBitmap != null) {
+            return;
+        }
+        mNewUserPhotoBitmap = bitmap;
+        mNewUserPhotoDrawable = CircleFramedDrawable.getInstance(mContext, bitmap);
+        mImageView.setImageDrawable(mNewUserPhotoDrawable);
+    }
+
     public boolean onActivityResult(int requestCode, int resultCode, Intent data) {
         if (resultCode != Activity.RESULT_OK) {
             return false;
@@ -146,17 +168,16 @@ public class EditUserPhotoController {
     }
 
     private void showUpdatePhotoPopup() {
-        final boolean canTakePhoto = canTakePhoto();
-        final boolean canChoosePhoto = canChoosePhoto();
+        final PhotoCapabilities.Snapshot capabilities = mCapabilities.get();
 
-        if (!canTakePhoto && !canChoosePhoto) {
+        if (!capabilities.canTakePhoto() && !capabilities.canChoosePhoto()) {
             return;
         }
 
         final Context context = mImageView.getContext();
         final List<EditUserPhotoController.RestrictedMenuItem> items = new ArrayList<>();
 
-        if (canTakePhoto) {
+        if (capabilities.canTakePhoto()) {
             final String title = context.getString(R.string.user_image_take_photo);
             final Runnable action = new Runnable() {
                 @Override
@@ -164,11 +185,10 @@ public class EditUserPhotoController {
                     takePhoto();
                 }
             };
-            items.add(new RestrictedMenuItem(context, title, UserManager.DISALLOW_SET_USER_ICON,
-                    action));
+            items.add(new RestrictedMenuItem(context, title, capabilities, action));
         }
 
-        if (canChoosePhoto) {
+        if (capabilities.canChoosePhoto()) {
             final String title = context.getString(R.string.user_image_choose_photo);
             final Runnable action = new Runnable() {
                 @Override
@@ -176,8 +196,7 @@ public class EditUserPhotoController {
                     choosePhoto();
                 }
             };
-            items.add(new RestrictedMenuItem(context, title, UserManager.DISALLOW_SET_USER_ICON,
-                    action));
+            items.add(new RestrictedMenuItem(context, title, capabilities, action));
         }
 
         final ListPopupWindow listPopupWindow = new ListPopupWindow(context);
@@ -205,19 +224,6 @@ public class EditUserPhotoController {
         listPopupWindow.show();
     }
 
-    private boolean canTakePhoto() {
-        return mImageView.getContext().getPackageManager().queryIntentActivities(
-                new Intent(MediaStore.ACTION_IMAGE_CAPTURE),
-                PackageManager.MATCH_DEFAULT_ONLY).size() > 0;
-    }
-
-    private boolean canChoosePhoto() {
-        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
-        intent.setType("image/*");
-        return mImageView.getContext().getPackageManager().queryIntentActivities(
-                intent, 0).size() > 0;
-    }
-
     private void takePhoto() {
         Intent intent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
         appendOutputExtra(intent, mTakePictureUri);
@@ -232,50 +238,145 @@ public class EditUserPhotoController {
     }
 
     private void copyAndCropPhoto(final Uri pictureUri) {
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... params) {
-                final ContentResolver cr = mContext.getContentResolver();
-                try (InputStream in = cr.openInputStream(pictureUri);
-                        OutputStream out = cr.openOutputStream(mPreCropPictureUri)) {
-                    Streams.copy(in, out);
-                } catch (IOException e) {
-                    Log.w(TAG, "Failed to copy photo", e);
-                }
-                return null;
+        if (FILE_PATH.equals(pictureUri.getAuthority())) {
+            // Already one of our cache files, which the crop activity can be granted access to.
+            cropPhoto(pictureUri);
+            return;
+        }
+        TaskScheduler.getInstance().submit(mFragment, "copyAndCropPhoto",
+                TaskScheduler.Priority.UI_CRITICAL, () -> {
+                    if (findCropPackage(pictureUri) == null) {
+                        // The photo is cropped in-process, straight from the picked image.
+                        return StageResult.NOT_NEEDED;
+                    }
+                    EmergencyTrace.begin("EditUserPhotoController#copyAndCropPhoto:stage");
+                    try {
+                        final File preCropFile =
+                                new File(mContext.getCacheDir(), PRE_CROP_PICTURE_FILE_NAME);
+                        return stagePhoto(mContext, pictureUri, preCropFile)
+                                ? StageResult.STAGED : StageResult.FAILED;
+                    } finally {
+                        EmergencyTrace.end();
+                    }
+                }, result -> {
+                    // A null result means staging threw.
+                    switch (result != null ? result : StageResult.FAILED) {
+                        case STAGED:
+                            cropPhoto(mPreCropPictureUri);
+                            break;
+                        case NOT_NEEDED:
+                            cropPhoto(pictureUri);
+                            break;
+                        default:
+                            // Never hand the crop activity a missing or partially copied file.
+                            Toast.makeText(mContext, R.string.fail_load_photo,
+                                    Toast.LENGTH_LONG).show();
+                            break;
+                    }
+                });
+    }
+
+    /**
+     * Copies the picked image into {@code destination}, which the crop activity can be granted
+     * access to, and returns whether the whole image was copied. When the picked image is a
+     * regular file, bytes are moved between the two file channels by the kernel instead of through
+     * heap buffers. The copy goes through a temp file, so {@code destination} is either complete or
+     * absent.
+     */
+    @VisibleForTesting
+    static boolean stagePhoto(Context context, Uri pictureUri, File destination) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final File tempFile = new File(destination.getPath() + ".tmp");
+        destination.delete();
+        try (ParcelFileDescriptor in =
+                        context.getContentResolver().openFileDescriptor(pictureUri, "r");
+                FileOutputStream out = new FileOutputStream(tempFile)) {
+            if (in == null) {
+                Log.w(TAG, "Failed to open photo " + pictureUri);
+                tempFile.delete();
+                return false;
             }
+            final long bytes = copy(in, out.getChannel());
+            final long elapsedMillis = Math.max(1, SystemClock.elapsedRealtime() - startTime);
+            Log.i(TAG, "Staged " + bytes + " bytes in " + elapsedMillis + "ms ("
+                    + (bytes * 1000 / 1024 / elapsedMillis) + " KB/s)");
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Failed to copy photo", e);
+            tempFile.delete();
+            return false;
+        }
+        if (!tempFile.renameTo(destination)) {
+            Log.w(TAG, "Cannot rename staged photo");
+            tempFile.delete();
+            return false;
+        }
+        return true;
+    }
 
-            @Override
-            protected void onPostExecute(Void result) {
-                if (!mFragment.isAdded()) return;
-                cropPhoto(mPreCropPictureUri);
+    /** Copies all of {@code source} to {@code out} and returns the number of bytes copied. */
+    private static long copy(ParcelFileDescriptor source, FileChannel out) throws IOException {
+        final FileChannel in = new FileInputStream(source.getFileDescriptor()).getChannel();
+        final long size = source.getStatSize();
+        long total = 0;
+        if (size >= 0) {
+            while (total < size) {
+                final long transferred = in.transferTo(total, size - total, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                total += transferred;
             }
-        }.execute();
+        } else {
+            // Providers may return a pipe, which has no size and can only be read sequentially.
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    total += out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        return total;
     }
 
     private void cropPhoto(final Uri pictureUri) {
-        Intent intent = new Intent(ACTION_CROP);
-        intent.setDataAndType(pictureUri, "image/*");
+        Intent intent = createCropIntent(pictureUri);
         appendOutputExtra(intent, mCropPictureUri);
         appendCropExtras(intent);
-        if (startSystemActivityForResult(intent, REQUEST_CODE_CROP_PHOTO)) {
+        if (startSystemActivityForResult(intent, findCropPackage(pictureUri),
+                REQUEST_CODE_CROP_PHOTO)) {
             return;
         }
-        onPhotoCropped(mTakePictureUri, false);
+        onPhotoCropped(pictureUri, false);
     }
 
-    private boolean startSystemActivityForResult(Intent intent, int code) {
-        List<ResolveInfo> resolveInfos = mContext.getPackageManager()
-                .queryIntentActivities(intent, PackageManager.MATCH_SYSTEM_ONLY);
-        if (resolveInfos.isEmpty()) {
+    private Intent createCropIntent(Uri pictureUri) {
+        Intent intent = new Intent(ACTION_CROP);
+        intent.setDataAndType(pictureUri, "image/*");
+        return intent;
+    }
+
+    private boolean startSystemActivityForResult(Intent intent, String packageName, int code) {
+        if (packageName == null) {
             Log.w(TAG, "No system package activity could be found for code " + code);
             return false;
         }
-        intent.setPackage(resolveInfos.get(0).activityInfo.packageName);
+        intent.setPackage(packageName);
         mFragment.startActivityForResult(intent, code);
         return true;
     }
 
+    /** Returns the system package that crops {@code pictureUri}, or null if there is none. */
+    private String findCropPackage(Uri pictureUri) {
+        if (ContentResolver.SCHEME_CONTENT.equals(pictureUri.getScheme())) {
+            return mCapabilities.get().getCropPackage();
+        }
+        List<ResolveInfo> resolveInfos = mContext.getPackageManager().queryIntentActivities(
+                createCropIntent(pictureUri), PackageManager.MATCH_SYSTEM_ONLY);
+        return resolveInfos.isEmpty() ? null : resolveInfos.get(0).activityInfo.packageName;
+    }
+
     private void appendOutputExtra(Intent intent, Uri pictureUri) {
         intent.putExtra(MediaStore.EXTRA_OUTPUT, pictureUri);
         intent.addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION
@@ -294,83 +395,139 @@ public class EditUserPhotoController {
     }
 
     private void onPhotoCropped(final Uri data, final boolean cropped) {
-        new AsyncTask<Void, Void, Bitmap>() {
-            @Override
-            protected Bitmap doInBackground(Void... params) {
-                if (cropped) {
-                    InputStream imageStream = null;
+        TaskScheduler.getInstance().submit(mFragment, "onPhotoCropped",
+                TaskScheduler.Priority.UI_CRITICAL, () -> {
+                    final long start = LatencyLogger.start();
+                    EmergencyTrace.begin("EditUserPhotoController#onPhotoCropped:decode");
+                    final Bitmap bitmap;
                     try {
-                        imageStream = mContext.getContentResolver()
-                                .openInputStream(data);
-                        return imageStream != null ? BitmapFactory.decodeStream(imageStream) : null;
-                    } catch (FileNotFoundException fe) {
-                        Log.w(TAG, "Cannot find image file", fe);
-                        return null;
-                    } finally {
-                        if (imageStream != null) {
-                            try {
-                                imageStream.close();
-                            } catch (IOException ioe) {
-                                Log.w(TAG, "Cannot close image stream", ioe);
-                            }
+                        if (cropped) {
+                            bitmap = decodeCroppedPhoto(data);
+                        } else {
+                            // Scale and crop to a square aspect ratio
+                            bitmap = decodeCenterSquare(data);
                         }
+                    } finally {
+                        EmergencyTrace.end();
                     }
-                } else {
-                    // Scale and crop to a square aspect ratio
-                    Bitmap fullImage = null;
-                    try {
-                        InputStream imageStream = mContext.getContentResolver()
-                                .openInputStream(data);
-                        fullImage = imageStream != null ? BitmapFactory.decodeStream(imageStream)
-                                : null;
-                    } catch (FileNotFoundException fe) {
-                        Log.w(TAG, "Cannot find image file", fe);
-                        return null;
-                    }
-                    if (fullImage != null) {
-                        Bitmap croppedImage = Bitmap.createBitmap(mPhotoSize, mPhotoSize,
-                                Config.ARGB_8888);
-                        Canvas canvas = new Canvas(croppedImage);
-                        final int squareSize = Math.min(fullImage.getWidth(),
-                                fullImage.getHeight());
-                        final int left = (fullImage.getWidth() - squareSize) / 2;
-                        final int top = (fullImage.getHeight() - squareSize) / 2;
-                        Rect rectSource = new Rect(left, top,
-                                left + squareSize, top + squareSize);
-                        Rect rectDest = new Rect(0, 0, mPhotoSize, mPhotoSize);
-                        Paint paint = new Paint();
-                        canvas.drawBitmap(fullImage, rectSource, rectDest, paint);
-                        return croppedImage;
-                    } else {
-                        return null;
+                    LatencyLogger.record(LatencyLogger.Operation.PHOTO_DECODE, start);
+                    new File(mContext.getCacheDir(), TAKE_PICTURE_FILE_NAME).delete();
+                    new File(mContext.getCacheDir(), CROP_PICTURE_FILE_NAME).delete();
+                    return bitmap;
+                }, bitmap -> {
+                    if (bitmap == null) {
+                        Toast.makeText(mContext, R.string.fail_load_photo,
+                                Toast.LENGTH_LONG).show();
+                        return;
                     }
-                }
-            }
-
-            @Override
-            protected void onPostExecute(Bitmap bitmap) {
-                if (bitmap != null) {
                     mNewUserPhotoBitmap = bitmap;
                     mNewUserPhotoDrawable = CircleFramedDrawable
                             .getInstance(mImageView.getContext(), mNewUserPhotoBitmap);
                     mImageView.setImageDrawable(mNewUserPhotoDrawable);
+                });
+    }
+
+    private Bitmap decodeCroppedPhoto(Uri data) {
+        try (InputStream imageStream = mContext.getContentResolver().openInputStream(data)) {
+            return imageStream != null ? BitmapFactory.decodeStream(imageStream) : null;
+        } catch (FileNotFoundException fe) {
+            Log.w(TAG, "Cannot find image file", fe);
+            return null;
+        } catch (IOException ioe) {
+            Log.w(TAG, "Cannot close image stream", ioe);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the centered square of the image at {@code data} and scales it to
+     * {@code mPhotoSize}. Only the square region is decoded, subsampled as much as possible
+     * without going below {@code mPhotoSize}, so peak memory stays within a few times the output
+     * size whatever the resolution of the picked image.
+     */
+    private Bitmap decodeCenterSquare(Uri data) {
+        final ContentResolver cr = mContext.getContentResolver();
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream imageStream = cr.openInputStream(data)) {
+            if (imageStream == null) {
+                return null;
+            }
+            BitmapFactory.decodeStream(imageStream, null, options);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read image bounds", e);
+            return null;
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(TAG, "Cannot decode image bounds");
+            return null;
+        }
+
+        final int squareSize = Math.min(options.outWidth, options.outHeight);
+        final int left = (options.outWidth - squareSize) / 2;
+        final int top = (options.outHeight - squareSize) / 2;
+        final Rect region = new Rect(left, top, left + squareSize, top + squareSize);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(squareSize, mPhotoSize);
+        options.inPreferredConfig = Config.ARGB_8888;
+
+        Bitmap squareImage = null;
+        try (InputStream imageStream = cr.openInputStream(data)) {
+            final BitmapRegionDecoder decoder = imageStream != null
+                    ? BitmapRegionDecoder.newInstance(imageStream, false /* isShareable */)
+                    : null;
+            if (decoder != null) {
+                try {
+                    squareImage = decoder.decodeRegion(region, options);
+                } finally {
+                    decoder.recycle();
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // Not every format supports region decoding; fall back to a subsampled full decode.
+            Log.w(TAG, "Cannot decode image region", e);
+        }
+        if (squareImage == null) {
+            try (InputStream imageStream = cr.openInputStream(data)) {
+                final Bitmap sampledImage = imageStream != null
+                        ? BitmapFactory.decodeStream(imageStream, null, options) : null;
+                if (sampledImage == null) {
+                    return null;
+                }
+                final int sampledSquare =
+                        Math.min(sampledImage.getWidth(), sampledImage.getHeight());
+                squareImage = Bitmap.createBitmap(sampledImage,
+                        (sampledImage.getWidth() - sampledSquare) / 2,
+                        (sampledImage.getHeight() - sampledSquare) / 2,
+                        sampledSquare, sampledSquare);
+                if (squareImage != sampledImage) {
+                    sampledImage.recycle();
                 }
-                new File(mContext.getCacheDir(), TAKE_PICTURE_FILE_NAME).delete();
-                new File(mContext.getCacheDir(), CROP_PICTURE_FILE_NAME).delete();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot decode image file", e);
+                return null;
             }
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
+        }
+
+        final Bitmap croppedImage =
+                Bitmap.createScaledBitmap(squareImage, mPhotoSize, mPhotoSize, true /* filter */);
+        if (croppedImage != squareImage) {
+            squareImage.recycle();
+        }
+        return croppedImage;
     }
 
-    private static int getPhotoSize(Context context) {
-        Cursor cursor = context.getContentResolver().query(
-                DisplayPhoto.CONTENT_MAX_DIMENSIONS_URI,
-                new String[]{DisplayPhoto.DISPLAY_MAX_DIM}, null, null, null);
-        try {
-            cursor.moveToFirst();
-            return cursor.getInt(0);
-        } finally {
-            cursor.close();
+    /**
+     * Returns the largest power of two by which an image of {@code sourceSize} can be subsampled
+     * while staying at least {@code targetSize}.
+     */
+    @VisibleForTesting
+    static int calculateInSampleSize(int sourceSize, int targetSize) {
+        int sampleSize = 1;
+        while (targetSize > 0 && sourceSize / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
         }
+        return sampleSize;
     }
 
     private Uri createTempImageUri(Context context, String fileName, boolean purge) {
@@ -383,31 +540,95 @@ public class EditUserPhotoController {
         return FileProvider.getUriForFile(context, FILE_PATH, fullPath);
     }
 
-    File saveNewUserPhotoBitmap() {
-        if (mNewUserPhotoBitmap == null) {
+    /**
+     * Writes the new photo to a temp file on a background thread, so that it survives the process
+     * being killed. Returns the file the photo will be written to, or null if there is no photo.
+     *
+     * <p>The pixels are written uncompressed: this is lossless and much cheaper than encoding a
+     * PNG, and the file only lives until the dialog is closed.
+     */
+    File spillNewUserPhotoBitmap() {
+        final Bitmap bitmap = mNewUserPhotoBitmap;
+        if (bitmap == null) {
             return null;
         }
-        try {
-            File file = new File(mContext.getCacheDir(), NEW_USER_PHOTO_FILE_NAME);
-            OutputStream os = new FileOutputStream(file);
-            mNewUserPhotoBitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
-            os.flush();
-            os.close();
-            return file;
-        } catch (IOException e) {
-            Log.e(TAG, "Cannot create temp file", e);
-        }
-        return null;
+        final File file = new File(mContext.getCacheDir(), NEW_USER_PHOTO_FILE_NAME);
+        TaskScheduler.getInstance().execute("spillNewUserPhotoBitmap",
+                TaskScheduler.Priority.BACKGROUND, () -> {
+                    EmergencyTrace.begin("EditUserPhotoController#spillNewUserPhotoBitmap:write");
+                    try {
+                        writeRawBitmap(bitmap, file);
+                    } finally {
+                        EmergencyTrace.end();
+                    }
+                });
+        return file;
     }
 
     static Bitmap loadNewUserPhotoBitmap(File file) {
-        return BitmapFactory.decodeFile(file.getAbsolutePath());
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            final ByteBuffer header = ByteBuffer.allocate(RAW_HEADER_SIZE);
+            if (channel.read(header) != RAW_HEADER_SIZE) {
+                return null;
+            }
+            header.flip();
+            final int width = header.getInt();
+            final int height = header.getInt();
+            final Bitmap bitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+            final ByteBuffer pixels = ByteBuffer.allocateDirect(bitmap.getByteCount());
+            while (pixels.hasRemaining() && channel.read(pixels) > 0) {
+                // Keep reading until the buffer is full.
+            }
+            if (pixels.hasRemaining()) {
+                Log.w(TAG, "Truncated temp photo file");
+                return null;
+            }
+            pixels.flip();
+            bitmap.copyPixelsFromBuffer(pixels);
+            return bitmap;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Cannot read temp photo file", e);
+            return null;
+        }
+    }
+
+    private static void writeRawBitmap(Bitmap bitmap, File file) {
+        final Bitmap argbBitmap = bitmap.getConfig() == Config.ARGB_8888
+                ? bitmap : bitmap.copy(Config.ARGB_8888, false /* isMutable */);
+        final ByteBuffer buffer =
+                ByteBuffer.allocateDirect(RAW_HEADER_SIZE + argbBitmap.getByteCount());
+        buffer.putInt(argbBitmap.getWidth()).putInt(argbBitmap.getHeight());
+        argbBitmap.copyPixelsToBuffer(buffer);
+        buffer.flip();
+        // Write to a temp file and rename it, so a reader never sees a partially written photo.
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = new FileOutputStream(tempFile).getChannel()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot create temp file", e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Cannot rename temp file");
+            tempFile.delete();
+        }
     }
 
     void removeNewUserPhotoBitmapFile() {
         new File(mContext.getCacheDir(), NEW_USER_PHOTO_FILE_NAME).delete();
     }
 
+    /** Outcome of copying a picked image to where the crop activity can read it. */
+    private enum StageResult {
+        /** The image is cropped in-process, so it was not copied. */
+        NOT_NEEDED,
+        STAGED,
+        FAILED,
+    }
+
     private static final class RestrictedMenuItem {
         private final Context mContext;
         private final String mTitle;
@@ -419,22 +640,18 @@ public class EditUserPhotoController {
         /**
          * The menu item, used for popup menu. Any element of such a menu can be disabled by admin.
          *
-         * @param context     A context.
-         * @param title       The title of the menu item.
-         * @param restriction The restriction, that if is set, blocks the menu item.
-         * @param action      The action on menu item click.
+         * @param context      A context.
+         * @param title        The title of the menu item.
+         * @param capabilities The cached state of the restriction that blocks the menu item.
+         * @param action       The action on menu item click.
          */
-        public RestrictedMenuItem(Context context, String title, String restriction,
-                Runnable action) {
+        public RestrictedMenuItem(Context context, String title,
+                PhotoCapabilities.Snapshot capabilities, Runnable action) {
             mContext = context;
             mTitle = title;
             mAction = action;
-
-            final int myUserId = UserHandle.myUserId();
-            mAdmin = RestrictedLockUtilsInternal.checkIfRestrictionEnforced(context,
-                    restriction, myUserId);
-            mIsRestrictedByBase = RestrictedLockUtilsInternal.hasBaseUserRestriction(mContext,
-                    restriction, myUserId);
+            mAdmin = capabilities.getAdmin();
+            mIsRestrictedByBase = capabilities.isRestrictedByBase();
         }
 
         @Override
@@ -20,6 +20,7 @@ import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.net.Uri;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceCategory;
 import androidx.preference.PreferenceManager;
@@ -28,18 +29,27 @@ import android.util.Log;
 import android.widget.Toast;
 
 import com.android.emergency.EmergencyContactManager;
+import com.android.emergency.EmergencyContactSource;
 import com.android.emergency.R;
 import com.android.emergency.ReloadablePreferenceInterface;
+import com.android.emergency.overlay.FeatureFactory;
+import com.android.emergency.util.ContactListCodec;
+import com.android.emergency.util.EmergencyTrace;
+import com.android.emergency.util.LatencyLogger;
+import com.android.emergency.util.ListDiff;
 import com.android.emergency.util.PreferenceUtils;
+import com.android.emergency.util.TaskScheduler;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.logging.MetricsLogger;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Custom {@link PreferenceCategory} that deals with contacts being deleted from the contacts app.
@@ -52,20 +62,37 @@ public class EmergencyContactsPreference extends PreferenceCategory
 
     private static final String TAG = "EmergencyContactsPreference";
 
-    private static final String CONTACT_SEPARATOR = "|";
-    private static final String QUOTE_CONTACT_SEPARATOR = Pattern.quote(CONTACT_SEPARATOR);
     private static final ContactValidator DEFAULT_CONTACT_VALIDATOR = new ContactValidator() {
         @Override
         public boolean isValidEmergencyContact(Context context, Uri phoneUri) {
-            return EmergencyContactManager.isValidEmergencyContact(context, phoneUri);
+            return getContactSource(context).isValidEmergencyContact(phoneUri);
         }
     };
 
     private final ContactValidator mContactValidator;
     private final ContactPreference.ContactFactory mContactFactory;
-    /** Stores the emergency contact's ContactsContract.CommonDataKinds.Phone.CONTENT_URI */
-    private List<Uri> mEmergencyContacts = new ArrayList<Uri>();
+    /**
+     * Stores the emergency contact's ContactsContract.CommonDataKinds.Phone.CONTENT_URI, in display
+     * order. A set, so that checking whether a contact was already added doesn't scan the list.
+     */
+    private LinkedHashSet<Uri> mEmergencyContacts = new LinkedHashSet<>();
     private boolean mEmergencyContactsSet = false;
+    /** {@link #mEmergencyContacts} as last persisted, so that adding one doesn't serialize all. */
+    private String mEncodedEmergencyContacts = "";
+    /** Indexes {@link #mEmergencyContacts} by phone number. Created on first use. */
+    private PhoneNumberIndex mPhoneNumberIndex;
+    /**
+     * Rebinds the contacts once the source loaded their new values in the background. If that
+     * failed, the contacts shown are kept.
+     */
+    private final EmergencyContactSource.Observer mContactsObserver = () -> {
+        final List<Uri> phoneUris = new ArrayList<>(mEmergencyContacts);
+        getContactSource(getContext()).resolveContacts(this, phoneUris, contacts -> {
+            if (contacts != null) {
+                bindResolvedContacts(new HashSet<>(phoneUris), contacts);
+            }
+        });
+    };
 
     /**
      * Interface for getting a contact for a phone number Uri.
@@ -94,6 +121,19 @@ public class EmergencyContactsPreference extends PreferenceCategory
         mContactFactory = contactFactory;
     }
 
+    @Override
+    public void onAttached() {
+        super.onAttached();
+        getContactSource(getContext()).registerObserver(mContactsObserver);
+    }
+
+    @Override
+    public void onDetached() {
+        getContactSource(getContext()).unregisterObserver(mContactsObserver);
+        TaskScheduler.getInstance().cancelAll(this);
+        super.onDetached();
+    }
+
     @Override
     protected void onSetInitialValue(boolean restorePersistedValue, Object defaultValue) {
         setEmergencyContacts(restorePersistedValue ?
@@ -111,7 +151,13 @@ public class EmergencyContactsPreference extends PreferenceCategory
 
     @Override
     public void reloadFromPreference() {
-        setEmergencyContacts(getPersistedEmergencyContacts());
+        EmergencyTrace.begin("EmergencyContactsPreference#reloadFromPreference");
+        try {
+            // The contacts themselves may have changed even if their Uris didn't: rebind them all.
+            setEmergencyContacts(getPersistedEmergencyContacts(), true /* rebindAll */);
+        } finally {
+            EmergencyTrace.end();
+        }
     }
 
     @Override
@@ -123,11 +169,19 @@ public class EmergencyContactsPreference extends PreferenceCategory
     public void onRemoveContactPreference(ContactPreference contactPreference) {
         Uri phoneUriToRemove = contactPreference.getPhoneUri();
         if (mEmergencyContacts.contains(phoneUriToRemove)) {
-            List<Uri> updatedContacts = new ArrayList<Uri>(mEmergencyContacts);
-            if (updatedContacts.remove(phoneUriToRemove) && callChangeListener(updatedContacts)) {
-                MetricsLogger.action(getContext(), MetricsEvent.ACTION_DELETE_EMERGENCY_CONTACT);
-                setEmergencyContacts(updatedContacts);
+            if (getOnPreferenceChangeListener() != null) {
+                List<Uri> updatedContacts = new ArrayList<Uri>(mEmergencyContacts.size() - 1);
+                for (Uri phoneUri : mEmergencyContacts) {
+                    if (!phoneUri.equals(phoneUriToRemove)) {
+                        updatedContacts.add(phoneUri);
+                    }
+                }
+                if (!callChangeListener(updatedContacts)) {
+                    return;
+                }
             }
+            MetricsLogger.action(getContext(), MetricsEvent.ACTION_DELETE_EMERGENCY_CONTACT);
+            removeEmergencyContact(contactPreference);
         }
     }
 
@@ -145,75 +199,233 @@ public class EmergencyContactsPreference extends PreferenceCategory
                 Toast.LENGTH_LONG).show();
             return;
         }
-        List<Uri> updatedContacts = new ArrayList<Uri>(mEmergencyContacts);
-        if (updatedContacts.add(phoneUri) && callChangeListener(updatedContacts)) {
-            MetricsLogger.action(getContext(), MetricsEvent.ACTION_ADD_EMERGENCY_CONTACT);
-            setEmergencyContacts(updatedContacts);
+        final ContactPreference contactPreference;
+        try {
+            contactPreference = new ContactPreference(getContext(), phoneUri, mContactFactory);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Caught IllegalArgumentException for phoneUri:" + phoneUri, e);
+            MetricsLogger.action(getContext(), MetricsEvent.ACTION_GET_CONTACT, 1);
+            return;
+        }
+        if (getPhoneNumberIndex().isDuplicate(phoneUri, contactPreference.getPhoneNumber())) {
+            Toast.makeText(getContext(),
+                getContext().getString(R.string.fail_add_duplicate_contact),
+                Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (getOnPreferenceChangeListener() != null) {
+            List<Uri> updatedContacts = new ArrayList<Uri>(mEmergencyContacts.size() + 1);
+            updatedContacts.addAll(mEmergencyContacts);
+            updatedContacts.add(phoneUri);
+            if (!callChangeListener(updatedContacts)) {
+                return;
+            }
         }
+        MetricsLogger.action(getContext(), MetricsEvent.ACTION_ADD_EMERGENCY_CONTACT);
+        appendEmergencyContact(contactPreference);
+    }
+
+    /**
+     * Returns the emergency contact with {@code number}, e.g. an incoming number, or null if there
+     * is none. Numbers are compared in E.164 format.
+     */
+    @Nullable
+    public Uri findEmergencyContactByNumber(String number) {
+        return getPhoneNumberIndex().findContact(number);
     }
 
     @VisibleForTesting
     public List<Uri> getEmergencyContacts() {
-        return mEmergencyContacts;
+        return Collections.unmodifiableList(new ArrayList<>(mEmergencyContacts));
     }
 
     public void setEmergencyContacts(List<Uri> emergencyContacts) {
-        final boolean changed = !mEmergencyContacts.equals(emergencyContacts);
-        if (changed || !mEmergencyContactsSet) {
-            mEmergencyContacts = emergencyContacts;
-            mEmergencyContactsSet = true;
-            persistEmergencyContacts(emergencyContacts);
-            if (changed) {
-                notifyChanged();
-            }
-        }
+        setEmergencyContacts(emergencyContacts, false /* rebindAll */);
+    }
 
-        while (getPreferenceCount() - emergencyContacts.size() > 0) {
-            removePreference(getPreference(0));
+    /**
+     * Shows {@code emergencyContacts}, in order and without duplicates, and persists them. Contacts
+     * that fail to load are dropped; contacts that share a number with another one are kept, as
+     * duplicates are only rejected when adding a contact. Unless {@code rebindAll} is
+     * set, only the positions that now hold a different contact are rebound, and extra preferences
+     * are removed from the end, so adding or removing the last of N contacts doesn't reload the
+     * N - 1 others.
+     */
+    private void setEmergencyContacts(List<Uri> emergencyContacts, boolean rebindAll) {
+        final long start = LatencyLogger.start();
+        final LinkedHashSet<Uri> boundContacts = new LinkedHashSet<>(emergencyContacts.size());
+        final PhoneNumberIndex phoneNumberIndex = getPhoneNumberIndex();
+        if (rebindAll) {
+            // Numbers may have been edited.
+            phoneNumberIndex.clear();
+        } else {
+            final HashSet<Uri> keptContacts = new HashSet<>(emergencyContacts);
+            for (Uri phoneUri : mEmergencyContacts) {
+                if (!keptContacts.contains(phoneUri)) {
+                    phoneNumberIndex.remove(phoneUri);
+                }
+            }
         }
-
-        // Reload the preferences or add new ones if necessary
-        Iterator<Uri> it = emergencyContacts.iterator();
-        int i = 0;
-        Uri phoneUri = null;
-        List<Uri> updatedEmergencyContacts = null;
-        while (it.hasNext()) {
-            ContactPreference contactPreference = null;
-            phoneUri = it.next();
+        int position = 0;
+        for (Uri phoneUri : emergencyContacts) {
+            if (!boundContacts.add(phoneUri)) {
+                continue;
+            }
             // setPhoneUri may throw an IllegalArgumentException (also called in the constructor
             // of ContactPreference)
             try {
-                if (i < getPreferenceCount()) {
-                    contactPreference = (ContactPreference) getPreference(i);
-                    contactPreference.setPhoneUri(phoneUri);
+                if (position < getPreferenceCount()) {
+                    final ContactPreference contactPreference =
+                            (ContactPreference) getPreference(position);
+                    if (rebindAll || !phoneUri.equals(contactPreference.getPhoneUri())) {
+                        contactPreference.setPhoneUri(phoneUri);
+                    }
+                    indexPhoneNumber(phoneNumberIndex, contactPreference);
                 } else {
-                    contactPreference =
+                    final ContactPreference contactPreference =
                             new ContactPreference(getContext(), phoneUri, mContactFactory);
+                    indexPhoneNumber(phoneNumberIndex, contactPreference);
                     onBindContactView(contactPreference);
                     addPreference(contactPreference);
                 }
-                i++;
+                position++;
                 MetricsLogger.action(getContext(), MetricsEvent.ACTION_GET_CONTACT, 0);
             } catch (IllegalArgumentException e) {
-                Log.w(TAG, "Caught IllegalArgumentException for phoneUri:"
-                    + phoneUri == null ? "" : phoneUri.toString(), e);
+                // Something went wrong when retrieving information about the stored phone Uri:
+                // drop the contact, and bind the next one at the same position.
+                Log.w(TAG, "Caught IllegalArgumentException for phoneUri:" + phoneUri, e);
                 MetricsLogger.action(getContext(), MetricsEvent.ACTION_GET_CONTACT, 1);
-                if (updatedEmergencyContacts == null) {
-                    updatedEmergencyContacts = new ArrayList<>(emergencyContacts);
+                boundContacts.remove(phoneUri);
+            }
+        }
+        while (getPreferenceCount() > position) {
+            removePreference(getPreference(getPreferenceCount() - 1));
+        }
+
+        final boolean changed = !ListDiff.compute(mEmergencyContacts, boundContacts).isEmpty();
+        if (changed || !mEmergencyContactsSet) {
+            mEmergencyContacts = boundContacts;
+            mEmergencyContactsSet = true;
+            persistEmergencyContacts(new ArrayList<>(boundContacts));
+            if (changed) {
+                notifyChanged();
+            }
+        }
+        onEmergencyContactsSet(start);
+    }
+
+    /**
+     * Rebinds the shown contacts among {@code resolvedUris} from {@code contacts}, which were
+     * resolved in the background, and drops those that don't exist anymore. Nothing is queried on
+     * the main thread. Contacts added while resolving are left as they are.
+     */
+    private void bindResolvedContacts(Set<Uri> resolvedUris,
+            Map<Uri, EmergencyContactManager.Contact> contacts) {
+        final long start = LatencyLogger.start();
+        EmergencyTrace.begin("EmergencyContactsPreference#bindResolvedContacts");
+        try {
+            boolean removed = false;
+            for (int i = getPreferenceCount() - 1; i >= 0; i--) {
+                final ContactPreference contactPreference = (ContactPreference) getPreference(i);
+                final Uri phoneUri = contactPreference.getPhoneUri();
+                if (!resolvedUris.contains(phoneUri)) {
+                    continue;
                 }
-                updatedEmergencyContacts.remove(phoneUri);
+                final EmergencyContactManager.Contact contact = contacts.get(phoneUri);
+                if (contact != null) {
+                    contactPreference.setContact(contact);
+                } else {
+                    mEmergencyContacts.remove(phoneUri);
+                    removePreference(contactPreference);
+                    removed = true;
+                }
+            }
+            // Numbers may have been edited.
+            final PhoneNumberIndex phoneNumberIndex = getPhoneNumberIndex();
+            phoneNumberIndex.clear();
+            for (int i = 0; i < getPreferenceCount(); i++) {
+                indexPhoneNumber(phoneNumberIndex, (ContactPreference) getPreference(i));
             }
+            if (removed) {
+                persistEmergencyContacts(new ArrayList<>(mEmergencyContacts));
+                notifyChanged();
+                onEmergencyContactsSet(start);
+            }
+        } finally {
+            EmergencyTrace.end();
         }
-        if (updatedEmergencyContacts != null) {
-            // Set the contacts again: something went wrong when retrieving information about the
-            // stored phone Uris.
-            setEmergencyContacts(updatedEmergencyContacts);
+    }
+
+    /**
+     * Adds the contact of {@code contactPreference}, which isn't shown yet, at the end. Only that
+     * contact is bound, indexed and appended to the persisted string.
+     */
+    private void appendEmergencyContact(ContactPreference contactPreference) {
+        final Uri phoneUri = contactPreference.getPhoneUri();
+        if (!mEmergencyContactsSet) {
+            // Nothing was loaded yet, so there is no persisted string to append to.
+            final List<Uri> updatedContacts = new ArrayList<>(mEmergencyContacts);
+            updatedContacts.add(phoneUri);
+            setEmergencyContacts(updatedContacts);
+            return;
+        }
+        final long start = LatencyLogger.start();
+        mEmergencyContacts.add(phoneUri);
+        getPhoneNumberIndex().add(phoneUri, contactPreference.getPhoneNumber());
+        onBindContactView(contactPreference);
+        addPreference(contactPreference);
+        MetricsLogger.action(getContext(), MetricsEvent.ACTION_GET_CONTACT, 0);
+        persistEncodedEmergencyContacts(
+                ContactListCodec.append(mEncodedEmergencyContacts, phoneUri.toString()));
+        notifyChanged();
+        onEmergencyContactsSet(start);
+    }
+
+    /**
+     * Removes the contact of {@code contactPreference}. The other contacts are neither rebound nor
+     * serialized again.
+     */
+    private void removeEmergencyContact(ContactPreference contactPreference) {
+        final Uri phoneUri = contactPreference.getPhoneUri();
+        if (!mEmergencyContactsSet) {
+            final List<Uri> updatedContacts = new ArrayList<>(mEmergencyContacts);
+            updatedContacts.remove(phoneUri);
+            setEmergencyContacts(updatedContacts);
+            return;
         }
+        final long start = LatencyLogger.start();
+        mEmergencyContacts.remove(phoneUri);
+        getPhoneNumberIndex().remove(phoneUri);
+        removePreference(contactPreference);
+        persistEncodedEmergencyContacts(
+                ContactListCodec.remove(mEncodedEmergencyContacts, phoneUri.toString()));
+        notifyChanged();
+        onEmergencyContactsSet(start);
+    }
+
+    private void onEmergencyContactsSet(long start) {
         // Enable or disable the settings suggestion, as appropriate.
         PreferenceUtils.updateSettingsSuggestionState(getContext());
         MetricsLogger.histogram(getContext(),
                                 "num_emergency_contacts",
-                                Math.min(3, emergencyContacts.size()));
+                                Math.min(3, mEmergencyContacts.size()));
+        LatencyLogger.record(LatencyLogger.Operation.SET_EMERGENCY_CONTACTS, start);
+    }
+
+    /** Indexes the number of {@code contactPreference} unless it is already indexed. */
+    private static void indexPhoneNumber(PhoneNumberIndex phoneNumberIndex,
+            ContactPreference contactPreference) {
+        final Uri phoneUri = contactPreference.getPhoneUri();
+        if (!phoneNumberIndex.contains(phoneUri)) {
+            phoneNumberIndex.add(phoneUri, contactPreference.getPhoneNumber());
+        }
+    }
+
+    private PhoneNumberIndex getPhoneNumberIndex() {
+        if (mPhoneNumberIndex == null) {
+            mPhoneNumberIndex = PhoneNumberIndex.create(getContext());
+        }
+        return mPhoneNumberIndex;
     }
 
     /**
@@ -264,31 +476,38 @@ public class EmergencyContactsPreference extends PreferenceCategory
                 DEFAULT_CONTACT_VALIDATOR);
     }
 
+    /** Returns the source emergency contacts are loaded from. */
+    static EmergencyContactSource getContactSource(Context context) {
+        return FeatureFactory.getFactory(context).getEmergencyContactsFeatureProvider()
+                .getContactSource(context);
+    }
+
     /** Converts the Uris to a string representation. */
     public static String serialize(List<Uri> emergencyContacts) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < emergencyContacts.size(); i++) {
-            sb.append(emergencyContacts.get(i).toString());
-            sb.append(CONTACT_SEPARATOR);
-        }
-
-        if (sb.length() > 0) {
-            sb.setLength(sb.length() - 1);
-        }
-        return sb.toString();
+        return ContactListCodec.encode(emergencyContacts);
     }
 
     @VisibleForTesting
     void persistEmergencyContacts(List<Uri> emergencyContacts) {
-        persistString(serialize(emergencyContacts));
+        persistEncodedEmergencyContacts(serialize(emergencyContacts));
+    }
+
+    private void persistEncodedEmergencyContacts(String encodedContacts) {
+        EmergencyTrace.begin("EmergencyContactsPreference#persistEmergencyContacts");
+        try {
+            mEncodedEmergencyContacts = encodedContacts;
+            persistString(encodedContacts);
+        } finally {
+            EmergencyTrace.end();
+        }
     }
 
     private static List<Uri> deserializeAndFilter(String key, Context context,
                                                   String emergencyContactString,
                                                   ContactValidator contactValidator) {
-        String[] emergencyContactsArray =
-                emergencyContactString.split(QUOTE_CONTACT_SEPARATOR);
-        List<Uri> filteredEmergencyContacts = new ArrayList<Uri>(emergencyContactsArray.length);
+        final long start = LatencyLogger.start();
+        List<String> emergencyContactsArray = ContactListCodec.decode(emergencyContactString);
+        List<Uri> filteredEmergencyContacts = new ArrayList<Uri>(emergencyContactsArray.size());
         for (String emergencyContact : emergencyContactsArray) {
             Uri phoneUri = Uri.parse(emergencyContact);
             if (contactValidator.isValidEmergencyContact(context, phoneUri)) {
@@ -298,12 +517,18 @@ public class EmergencyContactsPreference extends PreferenceCategory
         // If not all contacts were added, then we need to overwrite the emergency contacts stored
         // in shared preferences. This deals with emergency contacts being deleted from contacts:
         // currently we have no way to being notified when this happens.
-        if (filteredEmergencyContacts.size() != emergencyContactsArray.length) {
+        if (filteredEmergencyContacts.size() != emergencyContactsArray.size()) {
             String emergencyContactStrings = serialize(filteredEmergencyContacts);
             SharedPreferences sharedPreferences =
                     PreferenceManager.getDefaultSharedPreferences(context);
-            sharedPreferences.edit().putString(key, emergencyContactStrings).commit();
+            EmergencyTrace.begin("EmergencyContactsPreference#deserializeAndFilter:persist");
+            try {
+                sharedPreferences.edit().putString(key, emergencyContactStrings).commit();
+            } finally {
+                EmergencyTrace.end();
+            }
         }
+        LatencyLogger.record(LatencyLogger.Operation.DESERIALIZE_AND_FILTER, start);
         return filteredEmergencyContacts;
     }
 }
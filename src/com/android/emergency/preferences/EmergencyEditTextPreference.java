@@ -52,6 +52,14 @@ public class EmergencyEditTextPreference extends CustomEditTextPreference
         setText(getPersistedString(""));
     }
 
+    @Override
+    public void setText(String text) {
+        super.setText(text);
+        if (PrecomputedSummaryCache.isSupported() && getKey() != null) {
+            PrecomputedSummaryCache.onTextChanged(getKey(), text, () -> onSummaryPrecomputed(text));
+        }
+    }
+
     @Override
     public boolean isNotSet() {
         return TextUtils.isEmpty(getText());
@@ -69,6 +77,19 @@ public class EmergencyEditTextPreference extends CustomEditTextPreference
         final TextView summaryView = (TextView) holder.findViewById(
                 com.android.internal.R.id.summary);
         summaryView.setMaxLines(MAX_LINES);
+        final String text = getText();
+        if (PrecomputedSummaryCache.isSupported() && getKey() != null
+                && !TextUtils.isEmpty(text)) {
+            // Long summaries are laid out in the background, then bound again.
+            PrecomputedSummaryCache.bind(getKey(), summaryView, text,
+                    () -> onSummaryPrecomputed(text));
+        }
+    }
+
+    private void onSummaryPrecomputed(String text) {
+        if (TextUtils.equals(text, getText())) {
+            notifyChanged();
+        }
     }
 
     @Override
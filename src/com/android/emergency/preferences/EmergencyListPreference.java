@@ -27,27 +27,58 @@ import android.util.AttributeSet;
 
 import com.android.emergency.R;
 import com.android.emergency.ReloadablePreferenceInterface;
+import com.android.emergency.util.AccessibleEntries;
 import com.android.internal.annotations.VisibleForTesting;
 
+import java.util.Locale;
+
 /**
  * Custom {@link ListPreference} that allows us to refresh and update the summary.
  */
 public class EmergencyListPreference extends ListPreference
         implements ReloadablePreferenceInterface {
+    /**
+     * Accessible entries of every list in the process. The same lists are inflated in the edit,
+     * edit medical and view screens, each time they are opened.
+     */
+    private static final AccessibleEntries.Cache sAccessibleEntriesCache =
+            new AccessibleEntries.Cache();
+
     @Nullable
     private CharSequence[] mContentDescriptions;
 
     public EmergencyListPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.EmergencyListPreference);
-        mContentDescriptions =
-                a.getTextArray(R.styleable.EmergencyListPreference_entryContentDescriptions);
-        a.recycle();
+        final int entriesResId = a.getResourceId(
+                R.styleable.EmergencyListPreference_android_entries, 0 /* defValue */);
+        final int contentDescriptionsResId = a.getResourceId(
+                R.styleable.EmergencyListPreference_entryContentDescriptions, 0 /* defValue */);
+        if (entriesResId == 0 || contentDescriptionsResId == 0) {
+            // Not both from resources: can't be cached.
+            mContentDescriptions =
+                    a.getTextArray(R.styleable.EmergencyListPreference_entryContentDescriptions);
+            a.recycle();
+            if (mContentDescriptions != null) {
+                // Override entries with accessible entries.
+                setEntries(createAccessibleEntries(getEntries(), mContentDescriptions));
+            }
+            return;
+        }
 
-        if (mContentDescriptions != null) {
-            // Override entries with accessible entries.
-            setEntries(createAccessibleEntries(getEntries(), mContentDescriptions));
+        final Locale locale = context.getResources().getConfiguration().getLocales().get(0);
+        AccessibleEntries.Entry entry =
+                sAccessibleEntriesCache.get(entriesResId, contentDescriptionsResId, locale);
+        if (entry == null) {
+            entry = sAccessibleEntriesCache.put(entriesResId, contentDescriptionsResId, locale,
+                    getEntries(),
+                    a.getTextArray(R.styleable.EmergencyListPreference_entryContentDescriptions),
+                    EmergencyListPreference::createAccessibleSequence);
         }
+        a.recycle();
+        mContentDescriptions = entry.getContentDescriptions();
+        // Override entries with accessible entries.
+        setEntries(entry.getEntries());
     }
 
     @Override
@@ -79,11 +110,8 @@ public class EmergencyListPreference extends ListPreference
 
     private static CharSequence[] createAccessibleEntries(CharSequence entries[],
                                                           CharSequence[] contentDescriptions) {
-        CharSequence[] accessibleEntries = new CharSequence[entries.length];
-        for (int i = 0; i < entries.length; i++) {
-            accessibleEntries[i] = createAccessibleSequence(entries[i], contentDescriptions[i]);
-        }
-        return accessibleEntries;
+        return AccessibleEntries.build(entries, contentDescriptions,
+                EmergencyListPreference::createAccessibleSequence);
     }
 
     private static SpannableString createAccessibleSequence(CharSequence displayText,
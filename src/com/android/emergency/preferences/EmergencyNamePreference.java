@@ -15,6 +15,7 @@
  */
 package com.android.emergency.preferences;
 
+import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Fragment;
 import android.content.Context;
@@ -22,7 +23,6 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.UserHandle;
 import android.os.UserManager;
@@ -33,8 +33,10 @@ import android.widget.EditText;
 import android.widget.ImageView;
 import androidx.annotation.VisibleForTesting;
 import androidx.preference.DialogPreference;
+import com.android.emergency.AvatarCache;
 import com.android.emergency.CircleFramedDrawable;
 import com.android.emergency.R;
+import com.android.emergency.util.TaskScheduler;
 import com.android.internal.util.UserIcons;
 import com.android.settingslib.CustomDialogPreference;
 
@@ -47,6 +49,7 @@ public class EmergencyNamePreference extends CustomDialogPreference {
 
     private static final String KEY_AWAITING_RESULT = "awaiting_result";
     private static final String KEY_SAVED_PHOTO = "pending_photo";
+    private static final String TAG_PENDING_PHOTO = "emergency_name_pending_photo";
 
     private UserManager mUserManager = getContext().getSystemService(UserManager.class);
     private EditUserPhotoController mEditUserPhotoController;
@@ -95,24 +98,49 @@ public class EmergencyNamePreference extends CustomDialogPreference {
      * Restore user photo when EditUserPhotoController had pending photo.
      */
     public void onRestoreInstanceState(Bundle icicle) {
+        final PendingPhotoFragment holder = getPendingPhotoFragment();
+        mSavedPhoto = holder != null ? holder.takePhoto() : null;
         String pendingPhoto = icicle.getString(KEY_SAVED_PHOTO);
-        if (pendingPhoto != null) {
-            mSavedPhoto = EditUserPhotoController.loadNewUserPhotoBitmap(new File(pendingPhoto));
+        if (mSavedPhoto == null && pendingPhoto != null) {
+            // The process was killed in the meantime; fall back to the copy on disk. The current
+            // user photo shows until it is read.
+            TaskScheduler.getInstance().submit(mFragment, "loadNewUserPhotoBitmap",
+                    TaskScheduler.Priority.UI_CRITICAL,
+                    () -> EditUserPhotoController.loadNewUserPhotoBitmap(new File(pendingPhoto)),
+                    this::onSavedPhotoLoaded);
         }
         mWaitingForActivityResult = icicle.getBoolean(KEY_AWAITING_RESULT, false);
     }
 
+    private void onSavedPhotoLoaded(Bitmap photo) {
+        if (photo == null) {
+            return;
+        }
+        mSavedPhoto = photo;
+        if (mEditUserPhotoController != null) {
+            mEditUserPhotoController.restoreNewUserPhotoBitmap(photo);
+        }
+    }
+
     /**
      * Save a temp user photo when layout need to recreating but Dialog is showing.
      */
     public void onSaveInstanceState(Bundle outState) {
         if (getDialog() != null && getDialog().isShowing()
                 && mEditUserPhotoController != null) {
-            // Bitmap cannot be stored into bundle because it may exceed parcel limit
-            // Store it in a temporary file instead
-            File file = mEditUserPhotoController.saveNewUserPhotoBitmap();
-            if (file != null) {
-                outState.putString(KEY_SAVED_PHOTO, file.getPath());
+            // Bitmap cannot be stored into bundle because it may exceed parcel limit.
+            // Keep it in memory, which is enough for configuration changes.
+            final PendingPhotoFragment holder = getPendingPhotoFragment();
+            if (holder != null) {
+                holder.setPhoto(mEditUserPhotoController.getNewUserPhotoBitmap());
+            }
+            if (!isChangingConfigurations()) {
+                // The process may be killed while in the background: also spill the photo to a
+                // temporary file, asynchronously.
+                File file = mEditUserPhotoController.spillNewUserPhotoBitmap();
+                if (file != null) {
+                    outState.putString(KEY_SAVED_PHOTO, file.getPath());
+                }
             }
         }
         if (mWaitingForActivityResult) {
@@ -188,14 +216,15 @@ public class EmergencyNamePreference extends CustomDialogPreference {
             Bitmap bitmap = mEditUserPhotoController.getNewUserPhotoBitmap();
             if (drawable != null && bitmap != null
                     && !drawable.equals(getCircularUserIcon())) {
-                new AsyncTask<Void, Void, Void>() {
-                    @Override
-                    protected Void doInBackground(Void... params) {
-                        mUserManager.setUserIcon(UserHandle.myUserId(),
-                                mEditUserPhotoController.getNewUserPhotoBitmap());
-                        return null;
-                    }
-                }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
+                // Not owned by the fragment: the user confirmed the change, so it must be saved
+                // even if the dialog goes away right after.
+                final AvatarCache avatarCache = AvatarCache.getInstance(getContext());
+                TaskScheduler.getInstance().execute("setUserIcon",
+                        TaskScheduler.Priority.BACKGROUND,
+                        () -> {
+                            mUserManager.setUserIcon(UserHandle.myUserId(), bitmap);
+                            avatarCache.invalidateUserIcons();
+                        });
                 setIcon(drawable);
             }
             if (mFragment != null) {
@@ -208,21 +237,39 @@ public class EmergencyNamePreference extends CustomDialogPreference {
     private void clear() {
         mEditUserPhotoController.removeNewUserPhotoBitmapFile();
         mSavedPhoto = null;
+        final PendingPhotoFragment holder = getPendingPhotoFragment();
+        if (holder != null) {
+            holder.takePhoto();
+        }
     }
 
-    private Drawable getCircularUserIcon() {
-        Bitmap bitmapUserIcon = mUserManager.getUserIcon(UserHandle.myUserId());
+    private PendingPhotoFragment getPendingPhotoFragment() {
+        return mFragment != null && mFragment.getActivity() != null
+                ? PendingPhotoFragment.find(mFragment.getActivity()) : null;
+    }
 
-        if (bitmapUserIcon == null) {
-            // get default user icon.
-            final Drawable defaultUserIcon = UserIcons.getDefaultUserIcon(
-                    getContext().getResources(), UserHandle.myUserId(), false);
-            bitmapUserIcon = UserIcons.convertToBitmap(defaultUserIcon);
-        }
-        Drawable drawableUserIcon = new CircleFramedDrawable(bitmapUserIcon,
-                (int) getContext().getResources().getDimension(R.dimen.circle_avatar_size));
+    private boolean isChangingConfigurations() {
+        return mFragment != null && mFragment.getActivity() != null
+                && mFragment.getActivity().isChangingConfigurations();
+    }
 
-        return drawableUserIcon;
+    private Drawable getCircularUserIcon() {
+        final AvatarCache avatarCache = AvatarCache.getInstance(getContext());
+        final String userIconId = avatarCache.getUserIconId(UserHandle.myUserId());
+        final int size = CircleFramedDrawable.getAvatarSize(getContext());
+        Bitmap renderedUserIcon = avatarCache.getCachedBitmap(userIconId, size);
+        if (renderedUserIcon == null) {
+            Bitmap bitmapUserIcon = mUserManager.getUserIcon(UserHandle.myUserId());
+
+            if (bitmapUserIcon == null) {
+                // get default user icon.
+                final Drawable defaultUserIcon = UserIcons.getDefaultUserIcon(
+                        getContext().getResources(), UserHandle.myUserId(), false);
+                bitmapUserIcon = UserIcons.convertToBitmap(defaultUserIcon);
+            }
+            renderedUserIcon = avatarCache.getRenderedBitmap(userIconId, bitmapUserIcon, size);
+        }
+        return new CircleFramedDrawable(renderedUserIcon, size);
     }
 
     @VisibleForTesting
@@ -253,6 +300,11 @@ public class EmergencyNamePreference extends CustomDialogPreference {
         public void onCreate(Bundle icicle) {
             super.onCreate(icicle);
             getEmergencyNamePreference().setFragment(this);
+            if (PendingPhotoFragment.find(getActivity()) == null) {
+                getActivity().getFragmentManager().beginTransaction()
+                        .add(new PendingPhotoFragment(), TAG_PENDING_PHOTO)
+                        .commit();
+            }
             if (icicle != null) {
                 getEmergencyNamePreference().onRestoreInstanceState(icicle);
             }
@@ -264,6 +316,20 @@ public class EmergencyNamePreference extends CustomDialogPreference {
             getEmergencyNamePreference().onSaveInstanceState(outState);
         }
 
+        @Override
+        public void onDestroy() {
+            super.onDestroy();
+            // Photo decoding and copying started by this dialog would update views that are gone.
+            TaskScheduler.getInstance().cancelAll(this);
+            final PendingPhotoFragment holder = PendingPhotoFragment.find(getActivity());
+            if (holder != null && !getActivity().isChangingConfigurations()) {
+                // The dialog is gone for good: so is the photo it was holding on to.
+                getActivity().getFragmentManager().beginTransaction()
+                        .remove(holder)
+                        .commitAllowingStateLoss();
+            }
+        }
+
         @Override
         public void onActivityResult(int requestCode, int resultCode, Intent data) {
             getEmergencyNamePreference().onActivityResult(requestCode, resultCode, data);
@@ -275,4 +341,33 @@ public class EmergencyNamePreference extends CustomDialogPreference {
             super.startActivityForResult(intent, requestCode);
         }
     }
+
+    /**
+     * Retained, view-less fragment of the host activity that holds the photo picked but not yet
+     * saved while the dialog is recreated for a configuration change, so that rotating the screen
+     * doesn't touch the disk. The dialog removes it when it goes away for good.
+     */
+    public static class PendingPhotoFragment extends Fragment {
+        private Bitmap mPhoto;
+
+        public PendingPhotoFragment() {
+            setRetainInstance(true);
+        }
+
+        static PendingPhotoFragment find(Activity activity) {
+            return (PendingPhotoFragment) activity.getFragmentManager()
+                    .findFragmentByTag(TAG_PENDING_PHOTO);
+        }
+
+        void setPhoto(Bitmap photo) {
+            mPhoto = photo;
+        }
+
+        /** Returns the held photo, if any, and stops holding it. */
+        Bitmap takePhoto() {
+            final Bitmap photo = mPhoto;
+            mPhoto = null;
+            return photo;
+        }
+    }
 }
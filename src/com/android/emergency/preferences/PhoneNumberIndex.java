@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import android.content.Context;
+import android.net.Uri;
+import android.telephony.PhoneNumberUtils;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Index of emergency contacts by phone number, normalized to E.164 when possible, so that the same
+ * number reached through different contacts or raw contacts is recognized as one.
+ *
+ * <p>Numbers are normalized once when a contact is added; lookups are a normalization and a hash
+ * lookup. Contacts that share a number are all indexed, and lookups return the one added first,
+ * so that contacts stored before duplicates were rejected keep working.
+ */
+public final class PhoneNumberIndex {
+    private final String mCountryIso;
+    /** Contacts with each number, in the order they were added. */
+    private final HashMap<String, ArrayList<Uri>> mContactsByNumber = new HashMap<>();
+    private final HashMap<Uri, String> mNumbersByContact = new HashMap<>();
+
+    /** Creates an index that resolves local numbers against the current country. */
+    public static PhoneNumberIndex create(Context context) {
+        return new PhoneNumberIndex(getCountryIso(context));
+    }
+
+    @VisibleForTesting
+    PhoneNumberIndex(String countryIso) {
+        mCountryIso = countryIso;
+    }
+
+    /**
+     * Indexes {@code phoneUri} under {@code number}. Returns false if another contact already has
+     * the same number, in which case both stay indexed. Contacts without a number are not indexed.
+     */
+    public boolean add(Uri phoneUri, @Nullable String number) {
+        final String normalized = normalize(number);
+        remove(phoneUri);
+        if (normalized == null) {
+            return true;
+        }
+        ArrayList<Uri> contacts = mContactsByNumber.get(normalized);
+        if (contacts == null) {
+            contacts = new ArrayList<>(1);
+            mContactsByNumber.put(normalized, contacts);
+        }
+        contacts.add(phoneUri);
+        mNumbersByContact.put(phoneUri, normalized);
+        return contacts.size() == 1;
+    }
+
+    /** Removes {@code phoneUri} from the index. */
+    public void remove(Uri phoneUri) {
+        final String normalized = mNumbersByContact.remove(phoneUri);
+        if (normalized == null) {
+            return;
+        }
+        final ArrayList<Uri> contacts = mContactsByNumber.get(normalized);
+        contacts.remove(phoneUri);
+        if (contacts.isEmpty()) {
+            mContactsByNumber.remove(normalized);
+        }
+    }
+
+    /** Removes all contacts from the index. */
+    public void clear() {
+        mContactsByNumber.clear();
+        mNumbersByContact.clear();
+    }
+
+    /**
+     * Returns the emergency contact with {@code number}, e.g. an incoming number, or null if there
+     * is none.
+     */
+    @Nullable
+    public Uri findContact(@Nullable String number) {
+        final String normalized = normalize(number);
+        final ArrayList<Uri> contacts =
+                normalized != null ? mContactsByNumber.get(normalized) : null;
+        return contacts != null ? contacts.get(0) : null;
+    }
+
+    /** Returns whether a contact other than {@code phoneUri} has {@code number}. */
+    public boolean isDuplicate(Uri phoneUri, @Nullable String number) {
+        final String normalized = normalize(number);
+        final ArrayList<Uri> contacts =
+                normalized != null ? mContactsByNumber.get(normalized) : null;
+        if (contacts == null) {
+            return false;
+        }
+        for (int i = 0; i < contacts.size(); i++) {
+            if (!contacts.get(i).equals(phoneUri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns whether {@code phoneUri} is indexed. */
+    public boolean contains(Uri phoneUri) {
+        return mNumbersByContact.containsKey(phoneUri);
+    }
+
+    /** Returns the number of indexed contacts. */
+    public int size() {
+        return mNumbersByContact.size();
+    }
+
+    /**
+     * Returns {@code number} in E.164 format, or with formatting characters stripped if it can't
+     * be parsed, or null if it is empty.
+     */
+    @Nullable
+    public String normalize(@Nullable String number) {
+        if (TextUtils.isEmpty(number)) {
+            return null;
+        }
+        final String e164 = PhoneNumberUtils.formatNumberToE164(number, mCountryIso);
+        if (e164 != null) {
+            return e164;
+        }
+        final String normalized = PhoneNumberUtils.normalizeNumber(number);
+        return TextUtils.isEmpty(normalized) ? null : normalized;
+    }
+
+    private static String getCountryIso(Context context) {
+        final TelephonyManager telephonyManager = context.getSystemService(TelephonyManager.class);
+        String countryIso = null;
+        if (telephonyManager != null) {
+            countryIso = telephonyManager.getNetworkCountryIso();
+            if (TextUtils.isEmpty(countryIso)) {
+                countryIso = telephonyManager.getSimCountryIso();
+            }
+        }
+        if (TextUtils.isEmpty(countryIso)) {
+            countryIso = Locale.getDefault().getCountry();
+        }
+        return countryIso.toUpperCase(Locale.US);
+    }
+}
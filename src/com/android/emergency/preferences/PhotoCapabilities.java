@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import android.app.admin.DevicePolicyManager;
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.provider.MediaStore;
+
+import com.android.emergency.util.StrictModeAuditor;
+import com.android.emergency.util.TaskScheduler;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.settingslib.RestrictedLockUtilsInternal;
+import com.android.settingslib.RestrictedLockUtilsInternal.EnforcedAdmin;
+
+import java.util.List;
+
+/**
+ * Process-wide cache of what the user photo popup can offer: whether a camera and an image
+ * picker are installed, which system package crops photos, and whether setting the user icon is
+ * restricted.
+ *
+ * <p>Each of these is a binder call into PackageManager or DevicePolicyManager. They are computed
+ * in the background when the name dialog opens, and computed again only after a package is
+ * added, changed or removed, or the user restrictions or device policies change.
+ */
+final class PhotoCapabilities {
+    private static PhotoCapabilities sInstance;
+
+    private final Context mContext;
+    private final Object mLock = new Object();
+    private Snapshot mSnapshot;
+    /** Incremented on every invalidation, so that a computation racing with it is dropped. */
+    private int mGeneration;
+
+    static synchronized PhotoCapabilities getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PhotoCapabilities(context.getApplicationContext());
+            sInstance.registerInvalidationReceivers();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PhotoCapabilities(Context context) {
+        mContext = context;
+    }
+
+    /** Computes the capabilities in the background, unless they are already known. */
+    void prefetch() {
+        synchronized (mLock) {
+            if (mSnapshot != null) {
+                return;
+            }
+        }
+        TaskScheduler.getInstance().execute("prefetchPhotoCapabilities",
+                TaskScheduler.Priority.UI_CRITICAL, this::get);
+    }
+
+    /**
+     * Returns the capabilities, computing them on the calling thread if the prefetch didn't
+     * complete yet.
+     */
+    Snapshot get() {
+        final int generation;
+        synchronized (mLock) {
+            if (mSnapshot != null) {
+                return mSnapshot;
+            }
+            generation = mGeneration;
+        }
+        final Snapshot snapshot = compute();
+        synchronized (mLock) {
+            if (generation == mGeneration) {
+                mSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /** Forgets the cached capabilities. */
+    void invalidate() {
+        synchronized (mLock) {
+            mSnapshot = null;
+            mGeneration++;
+        }
+    }
+
+    private void registerInvalidationReceivers() {
+        final BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        };
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiver(receiver, packageFilter);
+
+        final IntentFilter restrictionFilter = new IntentFilter();
+        restrictionFilter.addAction(UserManager.ACTION_USER_RESTRICTIONS_CHANGED);
+        restrictionFilter.addAction(DevicePolicyManager.ACTION_DEVICE_POLICY_MANAGER_STATE_CHANGED);
+        mContext.registerReceiver(receiver, restrictionFilter);
+    }
+
+    private Snapshot compute() {
+        StrictModeAuditor.noteProviderCall("PhotoCapabilities#compute");
+        final PackageManager packageManager = mContext.getPackageManager();
+        final boolean canTakePhoto = !packageManager.queryIntentActivities(
+                new Intent(MediaStore.ACTION_IMAGE_CAPTURE),
+                PackageManager.MATCH_DEFAULT_ONLY).isEmpty();
+
+        final Intent chooseIntent = new Intent(Intent.ACTION_GET_CONTENT);
+        chooseIntent.setType("image/*");
+        final boolean canChoosePhoto =
+                !packageManager.queryIntentActivities(chooseIntent, 0).isEmpty();
+
+        // Both the picked photos and our own cache files are content URIs, so one resolution
+        // covers every crop request.
+        final Intent cropIntent = new Intent(EditUserPhotoController.ACTION_CROP);
+        cropIntent.setDataAndType(
+                new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).build(), "image/*");
+        final List<ResolveInfo> cropActivities =
+                packageManager.queryIntentActivities(cropIntent, PackageManager.MATCH_SYSTEM_ONLY);
+        final String cropPackage = cropActivities.isEmpty()
+                ? null : cropActivities.get(0).activityInfo.packageName;
+
+        final int myUserId = UserHandle.myUserId();
+        final EnforcedAdmin admin = RestrictedLockUtilsInternal.checkIfRestrictionEnforced(
+                mContext, UserManager.DISALLOW_SET_USER_ICON, myUserId);
+        final boolean restrictedByBase = RestrictedLockUtilsInternal.hasBaseUserRestriction(
+                mContext, UserManager.DISALLOW_SET_USER_ICON, myUserId);
+
+        return new Snapshot(canTakePhoto, canChoosePhoto, cropPackage, admin, restrictedByBase);
+    }
+
+    /** Immutable capabilities, as of the last time they were computed. */
+    static final class Snapshot {
+        private final boolean mCanTakePhoto;
+        private final boolean mCanChoosePhoto;
+        private final String mCropPackage;
+        private final EnforcedAdmin mAdmin;
+        private final boolean mRestrictedByBase;
+
+        Snapshot(boolean canTakePhoto, boolean canChoosePhoto, String cropPackage,
+                EnforcedAdmin admin, boolean restrictedByBase) {
+            mCanTakePhoto = canTakePhoto;
+            mCanChoosePhoto = canChoosePhoto;
+            mCropPackage = cropPackage;
+            mAdmin = admin;
+            mRestrictedByBase = restrictedByBase;
+        }
+
+        boolean canTakePhoto() {
+            return mCanTakePhoto;
+        }
+
+        boolean canChoosePhoto() {
+            return mCanChoosePhoto;
+        }
+
+        /** Returns the system package that crops content URIs, or null if there is none. */
+        String getCropPackage() {
+            return mCropPackage;
+        }
+
+        /** Returns the admin that disallows setting the user icon, or null. */
+        EnforcedAdmin getAdmin() {
+            return mAdmin;
+        }
+
+        /** Returns whether setting the user icon is restricted by the system. */
+        boolean isRestrictedByBase() {
+            return mRestrictedByBase;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import android.os.Build;
+import android.text.PrecomputedText;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.Pair;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.android.emergency.util.TaskScheduler;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Process-wide cache of long preference summaries, laid out ahead of time as
+ * {@link PrecomputedText}, keyed by preference key and the text metrics of the view showing them.
+ *
+ * <p>Free-text medical fields can run to dozens of lines. Their layout is computed on a worker
+ * thread when the value changes, so that binding only attaches it instead of measuring the text
+ * on the main thread every time the list scrolls or the screen resumes. The same preference may
+ * be shown with different metrics, e.g. in the edit and the view screens, so a layout is kept for
+ * each of the last {@link #MAX_PARAMS_PER_KEY} metrics, but only for the latest text. Must be used
+ * on the main thread, and only if {@link #isSupported()}.
+ */
+@RequiresApi(Build.VERSION_CODES.P)
+final class PrecomputedSummaryCache {
+    /** Summaries shorter than this are cheap enough to measure while binding. */
+    @VisibleForTesting
+    static final int MIN_PRECOMPUTED_LENGTH = 80;
+    /** How many different text metrics a preference's summary is laid out for. */
+    @VisibleForTesting
+    static final int MAX_PARAMS_PER_KEY = 2;
+
+    /** The latest layout of each preference's summary, keyed by preference key and metrics. */
+    private static final Map<Pair<String, PrecomputedText.Params>, Entry> sEntries =
+            new ArrayMap<>();
+    /**
+     * The text metrics of the views each preference was bound to, most recent last, keyed by
+     * preference key.
+     */
+    private static final Map<String, ArrayList<PrecomputedText.Params>> sParams =
+            new ArrayMap<>();
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+    }
+
+    /**
+     * Attaches the precomputed layout of {@code text} to {@code summaryView} if there is one, or
+     * starts computing it and runs {@code onReady} once it's available.
+     */
+    static void bind(String key, TextView summaryView, @Nullable String text, Runnable onReady) {
+        final PrecomputedText.Params params = summaryView.getTextMetricsParams();
+        onBound(key, params);
+        final PrecomputedText precomputed = get(key, text, params);
+        if (precomputed != null) {
+            summaryView.setText(precomputed);
+        } else {
+            precompute(key, text, params, onReady);
+        }
+    }
+
+    /**
+     * Starts computing the layouts of {@code text}, the new value of the preference, for the
+     * metrics it was bound with before. Runs {@code onReady} as each layout becomes available.
+     */
+    static void onTextChanged(String key, @Nullable String text, Runnable onReady) {
+        final ArrayList<PrecomputedText.Params> boundParams = sParams.get(key);
+        if (boundParams == null) {
+            return;
+        }
+        for (int i = 0; i < boundParams.size(); i++) {
+            precompute(key, text, boundParams.get(i), onReady);
+        }
+    }
+
+    /** Returns the layout of {@code text} for views with {@code params}, or null if unknown. */
+    @VisibleForTesting
+    @Nullable
+    static PrecomputedText get(String key, @Nullable String text,
+            PrecomputedText.Params params) {
+        final Entry entry = sEntries.get(Pair.create(key, params));
+        if (entry == null || text == null || !entry.matches(text, params)) {
+            return null;
+        }
+        return entry.mPrecomputed;
+    }
+
+    @VisibleForTesting
+    static void clearForTesting() {
+        sEntries.clear();
+        sParams.clear();
+    }
+
+    /**
+     * Records that {@code key} was bound to a view with {@code params}, forgetting the layout for
+     * the least recently bound metrics if there are too many.
+     */
+    private static void onBound(String key, PrecomputedText.Params params) {
+        ArrayList<PrecomputedText.Params> boundParams = sParams.get(key);
+        if (boundParams == null) {
+            boundParams = new ArrayList<>(MAX_PARAMS_PER_KEY);
+            sParams.put(key, boundParams);
+        }
+        if (!boundParams.isEmpty() && boundParams.get(boundParams.size() - 1).equals(params)) {
+            return;
+        }
+        boundParams.remove(params);
+        boundParams.add(params);
+        if (boundParams.size() > MAX_PARAMS_PER_KEY) {
+            sEntries.remove(Pair.create(key, boundParams.remove(0)));
+        }
+    }
+
+    private static void precompute(String key, @Nullable String text,
+            PrecomputedText.Params params, Runnable onReady) {
+        final Pair<String, PrecomputedText.Params> entryKey = Pair.create(key, params);
+        if (text == null || text.length() < MIN_PRECOMPUTED_LENGTH) {
+            sEntries.remove(entryKey);
+            return;
+        }
+        final Entry entry = sEntries.get(entryKey);
+        if (entry != null && (entry.matches(text, params) || entry.isPending(text, params))) {
+            return;
+        }
+        final Entry pending = new Entry(text, params);
+        sEntries.put(entryKey, pending);
+        TaskScheduler.getInstance().submit(null /* owner */, "precomputeSummary",
+                TaskScheduler.Priority.UI_CRITICAL, () -> PrecomputedText.create(text, params),
+                precomputed -> {
+                    // Dropped if the text changed again in the meantime.
+                    if (sEntries.get(entryKey) != pending) {
+                        return;
+                    }
+                    if (precomputed == null) {
+                        // Failed: forget the entry, so that the next bind tries again.
+                        sEntries.remove(entryKey);
+                        return;
+                    }
+                    pending.mPrecomputed = precomputed;
+                    onReady.run();
+                });
+    }
+
+    private static final class Entry {
+        private final int mHash;
+        private final String mText;
+        private final PrecomputedText.Params mParams;
+        /** Null until computed. */
+        private PrecomputedText mPrecomputed;
+
+        Entry(String text, PrecomputedText.Params params) {
+            mHash = text.hashCode();
+            mText = text;
+            mParams = params;
+        }
+
+        boolean matches(String text, PrecomputedText.Params params) {
+            return mPrecomputed != null && isFor(text, params);
+        }
+
+        boolean isPending(String text, PrecomputedText.Params params) {
+            return mPrecomputed == null && isFor(text, params);
+        }
+
+        private boolean isFor(String text, PrecomputedText.Params params) {
+            return mHash == text.hashCode() && TextUtils.equals(mText, text)
+                    && mParams.equals(params);
+        }
+    }
+
+    private PrecomputedSummaryCache() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
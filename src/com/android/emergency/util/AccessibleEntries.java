@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * Builds list entries that are displayed as one text and spoken as another. Free of Android
+ * dependencies, so that it can be benchmarked on the host; the caller provides the decoration,
+ * e.g. a {@code TtsSpan}.
+ */
+public final class AccessibleEntries {
+
+    /**
+     * Returns {@code entries} with each entry decorated by {@code decorator} with the content
+     * description at the same index.
+     *
+     * @throws IllegalArgumentException if there are fewer content descriptions than entries
+     */
+    public static CharSequence[] build(CharSequence[] entries, CharSequence[] contentDescriptions,
+            BiFunction<CharSequence, CharSequence, CharSequence> decorator) {
+        if (contentDescriptions.length < entries.length) {
+            throw new IllegalArgumentException("Missing content descriptions: "
+                    + contentDescriptions.length + " for " + entries.length + " entries");
+        }
+        final CharSequence[] accessibleEntries = new CharSequence[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            accessibleEntries[i] = decorator.apply(entries[i], contentDescriptions[i]);
+        }
+        return accessibleEntries;
+    }
+
+    /** Accessible entries built once, shared by every list that uses the same arrays. */
+    public static final class Entry {
+        private final int mEntriesResId;
+        private final int mContentDescriptionsResId;
+        private final Locale mLocale;
+        private final CharSequence[] mEntries;
+        private final CharSequence[] mContentDescriptions;
+
+        Entry(int entriesResId, int contentDescriptionsResId, Locale locale,
+                CharSequence[] entries, CharSequence[] contentDescriptions) {
+            mEntriesResId = entriesResId;
+            mContentDescriptionsResId = contentDescriptionsResId;
+            mLocale = locale;
+            mEntries = entries;
+            mContentDescriptions = contentDescriptions;
+        }
+
+        /** Returns the accessible entries. Shared: must not be modified. */
+        public CharSequence[] getEntries() {
+            return mEntries;
+        }
+
+        /** Returns the content descriptions they were built from. Shared: must not be modified. */
+        public CharSequence[] getContentDescriptions() {
+            return mContentDescriptions;
+        }
+
+        boolean isFor(int entriesResId, int contentDescriptionsResId, Locale locale) {
+            return mEntriesResId == entriesResId
+                    && mContentDescriptionsResId == contentDescriptionsResId
+                    && Objects.equals(mLocale, locale);
+        }
+    }
+
+    /**
+     * Accessible entries keyed by the resource ids of the entries and content descriptions arrays,
+     * and by the locale they were loaded in. Lookups don't allocate, so that inflating the same
+     * list again costs nothing. Holds a handful of entries; the oldest is dropped when full.
+     * Thread safe.
+     */
+    public static final class Cache {
+        private static final int MAX_SIZE = 16;
+
+        private final List<Entry> mEntries = new ArrayList<>(MAX_SIZE);
+
+        /** Returns the cached entry, or null if there is none. */
+        public synchronized Entry get(int entriesResId, int contentDescriptionsResId,
+                Locale locale) {
+            for (int i = mEntries.size() - 1; i >= 0; i--) {
+                final Entry entry = mEntries.get(i);
+                if (entry.isFor(entriesResId, contentDescriptionsResId, locale)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        /** Builds accessible entries as {@link #build} does, caches and returns them. */
+        public synchronized Entry put(int entriesResId, int contentDescriptionsResId,
+                Locale locale, CharSequence[] entries, CharSequence[] contentDescriptions,
+                BiFunction<CharSequence, CharSequence, CharSequence> decorator) {
+            final Entry entry = new Entry(entriesResId, contentDescriptionsResId, locale,
+                    build(entries, contentDescriptions, decorator), contentDescriptions);
+            if (mEntries.size() == MAX_SIZE) {
+                mEntries.remove(0);
+            }
+            mEntries.add(entry);
+            return entry;
+        }
+    }
+
+    private AccessibleEntries() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
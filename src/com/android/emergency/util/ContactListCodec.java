@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes the list of emergency contacts stored in shared preferences, as a single string of
+ * phone Uris separated by {@link #SEPARATOR}.
+ *
+ * <p>Free of Android dependencies, so that it can be benchmarked on the host.
+ */
+public final class ContactListCodec {
+    /** Separates two contacts in the encoded string. */
+    public static final char SEPARATOR = '|';
+
+    /** Joins the string representations of {@code items}. */
+    public static String encode(List<?> items) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                sb.append(SEPARATOR);
+            }
+            sb.append(items.get(i));
+        }
+        return sb.toString();
+    }
+
+    /** Returns {@code encoded} with {@code item} added at the end. */
+    public static String append(String encoded, String item) {
+        return encoded.isEmpty() ? item : encoded + SEPARATOR + item;
+    }
+
+    /**
+     * Returns {@code encoded} without the first occurrence of {@code item}, or {@code encoded}
+     * itself if it doesn't hold {@code item}. The other items are copied as is, not split.
+     */
+    public static String remove(String encoded, String item) {
+        int start = 0;
+        while (start <= encoded.length()) {
+            int end = encoded.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = encoded.length();
+            }
+            if (end - start == item.length() && encoded.startsWith(item, start)) {
+                if (start == 0) {
+                    return end == encoded.length() ? "" : encoded.substring(end + 1);
+                }
+                // Also drop the separator in front of the item.
+                return encoded.substring(0, start - 1) + encoded.substring(end);
+            }
+            start = end + 1;
+        }
+        return encoded;
+    }
+
+    /**
+     * Splits {@code encoded} into its items. Behaves like {@code encoded.split("\\|")}, including
+     * dropping trailing empty items, without compiling a regular expression.
+     */
+    public static List<String> decode(String encoded) {
+        final List<String> items = new ArrayList<>();
+        if (encoded.isEmpty()) {
+            items.add(encoded);
+            return items;
+        }
+        int start = 0;
+        int end;
+        while ((end = encoded.indexOf(SEPARATOR, start)) >= 0) {
+            items.add(encoded.substring(start, end));
+            start = end + 1;
+        }
+        items.add(encoded.substring(start));
+        int size = items.size();
+        while (size > 0 && items.get(size - 1).isEmpty()) {
+            items.remove(--size);
+        }
+        return items;
+    }
+
+    private ContactListCodec() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
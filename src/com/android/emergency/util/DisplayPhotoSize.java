@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract.DisplayPhoto;
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+/**
+ * Process-wide memoized value of {@link DisplayPhoto#DISPLAY_MAX_DIM}, the size user photos are
+ * cropped and scaled to.
+ *
+ * <p>The value is fetched from the contacts provider on a background thread and fetched again
+ * whenever the provider reports a change. Until the first fetch completes,
+ * {@link #DEFAULT_PHOTO_SIZE} is returned, so callers never block on the provider.
+ */
+public final class DisplayPhotoSize {
+    private static final String TAG = "DisplayPhotoSize";
+
+    /** Used until the provider answered, and if it can't be queried. */
+    @VisibleForTesting
+    public static final int DEFAULT_PHOTO_SIZE = 720;
+
+    private static volatile int sPhotoSize = DEFAULT_PHOTO_SIZE;
+    private static boolean sStarted;
+
+    /**
+     * Starts fetching the value in the background and watching the provider for changes. Only
+     * the first call has an effect. Must be called on the main thread.
+     */
+    public static void prefetch(Context context) {
+        if (sStarted) {
+            return;
+        }
+        sStarted = true;
+        final Context appContext = context.getApplicationContext();
+        appContext.getContentResolver().registerContentObserver(
+                DisplayPhoto.CONTENT_MAX_DIMENSIONS_URI, false /* notifyForDescendants */,
+                new ContentObserver(new Handler(Looper.getMainLooper())) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        fetchAsync(appContext);
+                    }
+                });
+        fetchAsync(appContext);
+    }
+
+    /**
+     * Returns the memoized value, or {@link #DEFAULT_PHOTO_SIZE} if it hasn't been fetched yet.
+     * Also starts the fetch if nobody did.
+     */
+    public static int get(Context context) {
+        prefetch(context);
+        return sPhotoSize;
+    }
+
+    @VisibleForTesting
+    public static void resetForTesting() {
+        sStarted = false;
+        sPhotoSize = DEFAULT_PHOTO_SIZE;
+    }
+
+    private static void fetchAsync(Context context) {
+        TaskScheduler.getInstance().execute("fetchDisplayPhotoSize",
+                TaskScheduler.Priority.BACKGROUND, () -> {
+                    final int photoSize = fetch(context);
+                    if (photoSize > 0) {
+                        sPhotoSize = photoSize;
+                    }
+                });
+    }
+
+    @VisibleForTesting
+    static int fetch(Context context) {
+        StrictModeAuditor.noteProviderCall("DisplayPhotoSize#fetch");
+        try (Cursor cursor = context.getContentResolver().query(
+                DisplayPhoto.CONTENT_MAX_DIMENSIONS_URI,
+                new String[]{DisplayPhoto.DISPLAY_MAX_DIM}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getInt(0);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to query the display photo size", e);
+        }
+        return 0;
+    }
+
+    private DisplayPhotoSize() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
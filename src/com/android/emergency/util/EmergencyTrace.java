@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import android.os.Build;
+import android.os.SystemProperties;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Trace} sections for the emergency info app, off unless
+ * {@code adb shell setprop debug.emergency.trace true} was set on a debuggable build before the
+ * process started.
+ *
+ * <p>Sections are named {@code Emergency:<Class>#<method>}, optionally followed by
+ * {@code :<stage>}, so that a Perfetto query on {@code Emergency:%} finds all of them. Work that
+ * hops threads, e.g. {@link TaskScheduler} tasks, is traced with async slices from submission to
+ * completion.
+ *
+ * <p>{@link #ENABLED} is a constant once the class is initialized: when tracing is off every call
+ * is a branch the JIT removes, and call sites must not build section names dynamically.
+ */
+public final class EmergencyTrace {
+    /** System property that turns tracing on. Only honored on debuggable builds. */
+    public static final String PROPERTY_ENABLED = "debug.emergency.trace";
+
+    /** Whether tracing is on. */
+    public static final boolean ENABLED =
+            Build.IS_DEBUGGABLE && SystemProperties.getBoolean(PROPERTY_ENABLED, false);
+
+    private static final String PREFIX = "Emergency:";
+
+    private static final AtomicInteger sNextCookie = new AtomicInteger();
+
+    /** Begins a section on the current thread. Must be paired with {@link #end()}. */
+    public static void begin(String section) {
+        if (ENABLED) {
+            Trace.beginSection(PREFIX + section);
+        }
+    }
+
+    /** Ends the innermost section begun on the current thread. */
+    public static void end() {
+        if (ENABLED) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Begins an async slice, which may end on another thread. Returns the cookie to pass to
+     * {@link #endAsync}.
+     */
+    public static int beginAsync(String section) {
+        if (!ENABLED) {
+            return 0;
+        }
+        final int cookie = sNextCookie.incrementAndGet();
+        Trace.beginAsyncSection(PREFIX + section, cookie);
+        return cookie;
+    }
+
+    /** Ends an async slice begun by {@link #beginAsync}. */
+    public static void endAsync(String section, int cookie) {
+        if (ENABLED) {
+            Trace.endAsyncSection(PREFIX + section, cookie);
+        }
+    }
+
+    private EmergencyTrace() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
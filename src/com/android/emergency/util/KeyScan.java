@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import java.util.function.Function;
+
+/**
+ * Scans preference keys for values. Free of Android dependencies, so that it can be benchmarked
+ * on the host.
+ */
+public final class KeyScan {
+
+    /**
+     * Returns whether at least one of {@code keys} maps to a non-empty value. Stops at the first
+     * one that does.
+     */
+    public static boolean anyNonEmpty(String[] keys, Function<String, String> values) {
+        for (String key : keys) {
+            final String value = values.apply(key);
+            if (value != null && !value.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private KeyScan() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
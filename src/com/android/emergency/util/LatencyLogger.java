@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import android.metrics.LogMaker;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.SystemProperties;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.logging.MetricsLogger;
+import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Records how long the hot operations of the app take, as MetricsLogger histograms.
+ *
+ * <p>Durations go into power-of-two buckets of microseconds: bucket {@code b} counts samples in
+ * {@code [2^(b-1), 2^b)} us, bucket 0 samples under 1us. Recording a sample costs a clock read
+ * and an atomic increment; the buckets are written to MetricsLogger in the background, one log
+ * entry per non-empty bucket. They are written once {@link #FLUSH_THRESHOLD} samples are pending,
+ * at most {@link #FLUSH_DELAY_MILLIS} after the first pending sample, and when a screen calls
+ * {@link #flushAsync()} as it goes to the background, so that samples of a short session aren't
+ * lost when the process is killed.
+ *
+ * <p>Usage:
+ * <pre>
+ *     final long start = LatencyLogger.start();
+ *     ...
+ *     LatencyLogger.record(LatencyLogger.Operation.GET_CONTACT, start);
+ * </pre>
+ *
+ * <p>On by default; {@code adb shell setprop persist.emergency.latency_histograms false} turns
+ * it off after the next process start.
+ */
+public final class LatencyLogger {
+    /** System property that turns the histograms off when false. */
+    @VisibleForTesting
+    static final String PROPERTY_ENABLED = "persist.emergency.latency_histograms";
+
+    /** Number of buckets; the last one also counts everything above 2^30us. */
+    @VisibleForTesting
+    static final int BUCKET_COUNT = 32;
+
+    /** Number of pending samples after which they are written to MetricsLogger. */
+    @VisibleForTesting
+    static final int FLUSH_THRESHOLD = 256;
+
+    /** Longest time a sample stays pending. */
+    @VisibleForTesting
+    static final long FLUSH_DELAY_MILLIS = 60_000;
+
+    /** The timed operations, with the histogram each is logged to. */
+    public enum Operation {
+        GET_CONTACT("emergency_latency_get_contact"),
+        PHONE_EXISTS("emergency_latency_phone_exists"),
+        PHOTO_DECODE("emergency_latency_photo_decode"),
+        CIRCLE_FRAMED_DRAWABLE("emergency_latency_circle_framed_drawable"),
+        DESERIALIZE_AND_FILTER("emergency_latency_deserialize_and_filter"),
+        SET_EMERGENCY_CONTACTS("emergency_latency_set_emergency_contacts"),
+        UPDATE_SETTINGS_SUGGESTION("emergency_latency_update_settings_suggestion"),
+        /** From a tap on an emergency contact being handled to the call being placed. */
+        CALL_CONTACT("emergency_latency_call_contact");
+
+        private final String mHistogram;
+        private final AtomicIntegerArray mPending = new AtomicIntegerArray(BUCKET_COUNT);
+        private final AtomicIntegerArray mTotal = new AtomicIntegerArray(BUCKET_COUNT);
+
+        Operation(String histogram) {
+            mHistogram = histogram;
+        }
+
+        /** Returns the name of the MetricsLogger histogram. */
+        public String getHistogram() {
+            return mHistogram;
+        }
+    }
+
+    private static final AtomicInteger sPendingSamples = new AtomicInteger();
+    /** Whether a flush is queued on the {@link TaskScheduler} but hasn't started yet. */
+    private static final AtomicBoolean sFlushQueued = new AtomicBoolean();
+    private static final Runnable sDelayedFlush = LatencyLogger::flushAsync;
+    private static Handler sHandler;
+    private static volatile Boolean sEnabled;
+    private static MetricsLogger sMetricsLogger = new MetricsLogger();
+
+    /**
+     * Returns the start token to pass to {@link #record}, or 0 if the histograms are off, in which
+     * case recording is a no-op.
+     */
+    public static long start() {
+        return isEnabled() ? SystemClock.elapsedRealtimeNanos() : 0;
+    }
+
+    /** Records the time elapsed since {@code startNanos}, as returned by {@link #start()}. */
+    public static void record(Operation operation, long startNanos) {
+        if (startNanos == 0) {
+            return;
+        }
+        final int bucket = getBucket(SystemClock.elapsedRealtimeNanos() - startNanos);
+        operation.mPending.incrementAndGet(bucket);
+        operation.mTotal.incrementAndGet(bucket);
+        final int pending = sPendingSamples.incrementAndGet();
+        if (pending >= FLUSH_THRESHOLD) {
+            flushAsync();
+        } else if (pending == 1) {
+            getHandler().postDelayed(sDelayedFlush, FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Writes the pending samples to MetricsLogger in the background, if there are any. Called by
+     * the activities when they stop.
+     */
+    public static void flushAsync() {
+        if (sPendingSamples.get() > 0 && sFlushQueued.compareAndSet(false, true)) {
+            TaskScheduler.getInstance().execute("LatencyLogger#flush",
+                    TaskScheduler.Priority.BACKGROUND, () -> {
+                        sFlushQueued.set(false);
+                        flush();
+                    });
+        }
+    }
+
+    /**
+     * Writes the pending samples to MetricsLogger. Histograms are written with {@link LogMaker},
+     * which needs O; before that the samples only show up in {@link #dump}.
+     */
+    public static void flush() {
+        sPendingSamples.set(0);
+        final boolean canWrite = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+        for (Operation operation : Operation.values()) {
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                final int count = operation.mPending.getAndSet(bucket, 0);
+                if (count > 0 && canWrite) {
+                    sMetricsLogger.write(
+                            new LogMaker(MetricsEvent.RESERVED_FOR_LOGBUILDER_HISTOGRAM)
+                                    .setCounterName(operation.mHistogram)
+                                    .setCounterBucket(bucket)
+                                    .setCounterValue(count));
+                }
+            }
+        }
+    }
+
+    /** Prints the histograms recorded since the process started, for {@code Activity#dump}. */
+    public static void dump(String prefix, PrintWriter writer) {
+        if (!isEnabled()) {
+            return;
+        }
+        writer.println(prefix + "Latency histograms (us bucket upper bound: count):");
+        for (Operation operation : Operation.values()) {
+            final StringBuilder line = new StringBuilder(prefix).append("  ")
+                    .append(operation.mHistogram).append(':');
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                final int count = operation.mTotal.get(bucket);
+                if (count > 0) {
+                    line.append(' ').append(1L << bucket).append(':').append(count);
+                }
+            }
+            writer.println(line);
+        }
+    }
+
+    private static synchronized Handler getHandler() {
+        if (sHandler == null) {
+            sHandler = new Handler(Looper.getMainLooper());
+        }
+        return sHandler;
+    }
+
+    /** Returns the bucket of a duration: the bit length of its value in microseconds. */
+    @VisibleForTesting
+    static int getBucket(long durationNanos) {
+        final long micros = Math.max(0, durationNanos / 1000);
+        return Math.min(BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+    }
+
+    @VisibleForTesting
+    static int getTotalCount(Operation operation, int bucket) {
+        return operation.mTotal.get(bucket);
+    }
+
+    @VisibleForTesting
+    static void setEnabledForTesting(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    @VisibleForTesting
+    static void setMetricsLoggerForTesting(MetricsLogger metricsLogger) {
+        sMetricsLogger = metricsLogger;
+    }
+
+    @VisibleForTesting
+    static void resetForTesting() {
+        sEnabled = null;
+        sMetricsLogger = new MetricsLogger();
+        sPendingSamples.set(0);
+        sFlushQueued.set(false);
+        getHandler().removeCallbacks(sDelayedFlush);
+        for (Operation operation : Operation.values()) {
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                operation.mPending.set(bucket, 0);
+                operation.mTotal.set(bucket, 0);
+            }
+        }
+    }
+
+    private static boolean isEnabled() {
+        Boolean enabled = sEnabled;
+        if (enabled == null) {
+            // Read once: the property lookup is too slow for every sample.
+            enabled = SystemProperties.getBoolean(PROPERTY_ENABLED, true);
+            sEnabled = enabled;
+        }
+        return enabled;
+    }
+
+    private LatencyLogger() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Computes how to turn a list of displayed items into a new list, the way
+ * {@code EmergencyContactsPreference#setEmergencyContacts} updates its contact preferences:
+ * items are compared position by position and rebound in place when they changed, extra items
+ * are removed from the end and missing ones are appended.
+ *
+ * <p>Free of Android dependencies, so that it can be benchmarked on the host.
+ */
+public final class ListDiff {
+    private final int mRemovedCount;
+    private final List<Integer> mChangedPositions;
+    private final int mAddedCount;
+
+    private ListDiff(int removedCount, List<Integer> changedPositions, int addedCount) {
+        mRemovedCount = removedCount;
+        mChangedPositions = changedPositions;
+        mAddedCount = addedCount;
+    }
+
+    /**
+     * Computes the difference between {@code oldItems} and {@code newItems}, in iteration order.
+     * Works on ordered sets as well as lists.
+     */
+    public static <T> ListDiff compute(Collection<T> oldItems, Collection<T> newItems) {
+        final int keptCount = Math.min(oldItems.size(), newItems.size());
+        final List<Integer> changedPositions = new ArrayList<>();
+        final Iterator<T> oldIterator = oldItems.iterator();
+        final Iterator<T> newIterator = newItems.iterator();
+        for (int i = 0; i < keptCount; i++) {
+            if (!Objects.equals(oldIterator.next(), newIterator.next())) {
+                changedPositions.add(i);
+            }
+        }
+        return new ListDiff(oldItems.size() - keptCount, changedPositions,
+                newItems.size() - keptCount);
+    }
+
+    /** Returns how many items are removed from the end of the old list. */
+    public int getRemovedCount() {
+        return mRemovedCount;
+    }
+
+    /** Returns the positions, in the new list, of kept items that now hold a different value. */
+    public List<Integer> getChangedPositions() {
+        return mChangedPositions;
+    }
+
+    /** Returns how many items are appended after the kept ones. */
+    public int getAddedCount() {
+        return mAddedCount;
+    }
+
+    /** Returns whether the old and new lists are equal. */
+    public boolean isEmpty() {
+        return mRemovedCount == 0 && mChangedPositions.isEmpty() && mAddedCount == 0;
+    }
+}
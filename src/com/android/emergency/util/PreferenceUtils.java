@@ -20,7 +20,6 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import androidx.preference.PreferenceManager;
-import android.text.TextUtils;
 
 import com.android.emergency.PreferenceKeys;
 import com.android.emergency.edit.EditInfoActivity;
@@ -37,12 +36,8 @@ public class PreferenceUtils {
     /** Returns true if there is at least one preference set. */
     public static boolean hasAtLeastOnePreferenceSet(Context context) {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        for (String key : PreferenceKeys.KEYS_VIEW_EMERGENCY_INFO) {
-            if (!TextUtils.isEmpty(prefs.getString(key, ""))) {
-                return true;
-            }
-        }
-        return false;
+        return KeyScan.anyNonEmpty(PreferenceKeys.KEYS_VIEW_EMERGENCY_INFO,
+                key -> prefs.getString(key, ""));
     }
 
     /** Returns true if there is at least one valid (still existing) emergency contact. */
@@ -71,10 +66,12 @@ public class PreferenceUtils {
      * emergency settings exist.
      */
     public static void updateSettingsSuggestionState(Context context) {
+        final long start = LatencyLogger.start();
         int state = hasAtLeastOnePreferenceOrContactSet(context) ?
             PackageManager.COMPONENT_ENABLED_STATE_DISABLED :
             PackageManager.COMPONENT_ENABLED_STATE_ENABLED;
         setSettingsSuggestionState(context, state);
+        LatencyLogger.record(LatencyLogger.Operation.UPDATE_SETTINGS_SUGGESTION, start);
     }
 
     /** Enables the settings suggestion for this application. */
@@ -91,6 +88,7 @@ public class PreferenceUtils {
         String targetClass = packageName + SETTINGS_SUGGESTION_ACTIVITY_ALIAS;
         ComponentName name = new ComponentName(packageName, targetClass);
         PackageManager pm = context.getPackageManager();
+        StrictModeAuditor.noteProviderCall("PreferenceUtils#setSettingsSuggestionState");
         pm.setComponentEnabledSetting(name, state, PackageManager.DONT_KILL_APP);
     }
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, case-insensitive prefix index over a list of terms, such as medication names, for
+ * offline autocomplete. Free of Android dependencies, so that it can be benchmarked on the host.
+ *
+ * <p>Terms are sorted, so the terms sharing a prefix are a contiguous range. They are packed into
+ * a single char array. A trie over their first {@link #MAX_TRIE_DEPTH} characters is laid out
+ * breadth first in parallel arrays: the children of each node are contiguous and sorted by
+ * label, and each node records its range of terms. A query walks the trie, then, for longer
+ * prefixes, narrows the range down by binary search. No objects are allocated per term or node.
+ */
+public final class PrefixIndex {
+    /**
+     * How many characters of each term the trie indexes. Deeper levels would mostly hold chains of
+     * single children, which binary search handles as fast in less memory.
+     */
+    static final int MAX_TRIE_DEPTH = 4;
+
+    private static final int ROOT = 0;
+
+    /** Display form of the terms, concatenated, in key order. */
+    private final char[] mTermChars;
+    /** Lower case form of the terms, at the same offsets as {@link #mTermChars}. */
+    private final char[] mKeyChars;
+    /** Where each term starts in the char arrays, plus where the last one ends. */
+    private final int[] mTermOffsets;
+
+    /** The character leading to each trie node from its parent. Unused for the root. */
+    private final char[] mLabels;
+    /** The first child of each node, plus a sentinel: children of i end at mFirstChild[i + 1]. */
+    private final int[] mFirstChild;
+    /** The first term, and one past the last, whose key starts with the node's prefix. */
+    private final int[] mRangeStart;
+    private final int[] mRangeEnd;
+
+    private final boolean mTruncated;
+
+    private PrefixIndex(char[] termChars, char[] keyChars, int[] termOffsets, char[] labels,
+            int[] firstChild, int[] rangeStart, int[] rangeEnd, boolean truncated) {
+        mTermChars = termChars;
+        mKeyChars = keyChars;
+        mTermOffsets = termOffsets;
+        mLabels = labels;
+        mFirstChild = firstChild;
+        mRangeStart = rangeStart;
+        mRangeEnd = rangeEnd;
+        mTruncated = truncated;
+    }
+
+    /**
+     * Builds an index of {@code terms}. Blank terms are ignored, and of terms that only differ in
+     * case, the first one is kept.
+     */
+    public static PrefixIndex build(Collection<String> terms) {
+        return build(terms, false /* truncated */);
+    }
+
+    /**
+     * Reads terms, one per line, and builds an index of them. Blank lines and lines starting with
+     * {@code #} are ignored. Reading stops before {@code maxTerms} terms or {@code maxChars}
+     * characters of terms are exceeded, so that the index takes bounded memory whatever the
+     * input; see {@link #isTruncated()}.
+     */
+    public static PrefixIndex read(Reader reader, int maxTerms, int maxChars) throws IOException {
+        final BufferedReader lines = new BufferedReader(reader);
+        final List<String> terms = new ArrayList<>();
+        int chars = 0;
+        boolean truncated = false;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            final String term = line.trim();
+            if (term.isEmpty() || term.charAt(0) == '#') {
+                continue;
+            }
+            if (terms.size() == maxTerms || chars + term.length() > maxChars) {
+                truncated = true;
+                break;
+            }
+            terms.add(term);
+            chars += term.length();
+        }
+        return build(terms, truncated);
+    }
+
+    private static PrefixIndex build(Collection<String> terms, boolean truncated) {
+        // Sorted by key, first display form wins.
+        final TreeMap<String, String> sorted = new TreeMap<>();
+        int chars = 0;
+        for (String term : terms) {
+            final String display = term.trim();
+            if (display.isEmpty()) {
+                continue;
+            }
+            final String key = toKey(display);
+            if (!sorted.containsKey(key)) {
+                sorted.put(key, display);
+                chars += display.length();
+            }
+        }
+
+        final char[] termChars = new char[chars];
+        final char[] keyChars = new char[chars];
+        final int[] termOffsets = new int[sorted.size() + 1];
+        int term = 0;
+        int offset = 0;
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            termOffsets[term++] = offset;
+            entry.getValue().getChars(0, entry.getValue().length(), termChars, offset);
+            entry.getKey().getChars(0, entry.getKey().length(), keyChars, offset);
+            offset += entry.getValue().length();
+        }
+        termOffsets[term] = offset;
+
+        return buildTrie(termChars, keyChars, termOffsets, truncated);
+    }
+
+    private static PrefixIndex buildTrie(char[] termChars, char[] keyChars, int[] termOffsets,
+            boolean truncated) {
+        final int termCount = termOffsets.length - 1;
+        final CharList labels = new CharList();
+        final IntList firstChild = new IntList();
+        final IntList rangeStart = new IntList();
+        final IntList rangeEnd = new IntList();
+        final IntList depths = new IntList();
+
+        labels.add('\0');
+        rangeStart.add(0);
+        rangeEnd.add(termCount);
+        depths.add(0);
+        // Nodes are numbered in the order they are added, and expanded in that order: breadth
+        // first, so that the children of consecutive nodes are consecutive.
+        for (int node = ROOT; node < labels.size(); node++) {
+            firstChild.add(labels.size());
+            final int depth = depths.get(node);
+            if (depth == MAX_TRIE_DEPTH) {
+                continue;
+            }
+            int term = rangeStart.get(node);
+            final int end = rangeEnd.get(node);
+            // Terms that end at this depth sort first and have no child.
+            while (term < end && keyLength(termOffsets, term) == depth) {
+                term++;
+            }
+            while (term < end) {
+                final char label = keyChars[termOffsets[term] + depth];
+                final int childStart = term;
+                while (term < end && keyChars[termOffsets[term] + depth] == label) {
+                    term++;
+                }
+                labels.add(label);
+                rangeStart.add(childStart);
+                rangeEnd.add(term);
+                depths.add(depth + 1);
+            }
+        }
+        firstChild.add(labels.size());
+
+        return new PrefixIndex(termChars, keyChars, termOffsets, labels.toArray(),
+                firstChild.toArray(), rangeStart.toArray(), rangeEnd.toArray(), truncated);
+    }
+
+    /** Returns up to {@code limit} terms starting with {@code prefix}, ignoring case, in order. */
+    public List<String> query(CharSequence prefix, int limit) {
+        final String key = toKey(prefix.toString());
+        int node = ROOT;
+        for (int i = 0; i < Math.min(key.length(), MAX_TRIE_DEPTH); i++) {
+            node = findChild(node, key.charAt(i));
+            if (node < 0) {
+                return Collections.emptyList();
+            }
+        }
+        int start = mRangeStart[node];
+        int end = mRangeEnd[node];
+        if (key.length() > MAX_TRIE_DEPTH) {
+            start = lowerBound(start, end, key, -1);
+            end = lowerBound(start, end, key, 0);
+        }
+        final int count = Math.min(end - start, limit);
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        final List<String> terms = new ArrayList<>(count);
+        for (int term = start; term < start + count; term++) {
+            terms.add(getTerm(term));
+        }
+        return terms;
+    }
+
+    /** Returns the number of terms. */
+    public int size() {
+        return mTermOffsets.length - 1;
+    }
+
+    /** Returns the number of trie nodes, including the root. */
+    public int getNodeCount() {
+        return mLabels.length;
+    }
+
+    /** Returns an estimate of the memory the index holds, in bytes. */
+    public long estimateSizeBytes() {
+        return 2L * (mTermChars.length + mKeyChars.length + mLabels.length)
+                + 4L * (mTermOffsets.length + mFirstChild.length + mRangeStart.length
+                        + mRangeEnd.length);
+    }
+
+    /** Returns whether {@link #read} stopped before the end of its input. */
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+
+    private String getTerm(int term) {
+        return new String(mTermChars, mTermOffsets[term],
+                mTermOffsets[term + 1] - mTermOffsets[term]);
+    }
+
+    /** Returns the child of {@code node} reached through {@code label}, or -1. */
+    private int findChild(int node, char label) {
+        int low = mFirstChild[node];
+        int high = mFirstChild[node + 1] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char midLabel = mLabels[mid];
+            if (midLabel < label) {
+                low = mid + 1;
+            } else if (midLabel > label) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the first term in {@code [start, end)} whose key, cut to the length of {@code key},
+     * compares to {@code key} above {@code threshold}: -1 for the first term with the prefix, 0 for
+     * the first one after them.
+     */
+    private int lowerBound(int start, int end, String key, int threshold) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, key) > threshold) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /** Compares the first {@code key.length()} characters of the term's key to {@code key}. */
+    private int comparePrefix(int term, String key) {
+        final int offset = mTermOffsets[term];
+        final int length = Math.min(mTermOffsets[term + 1] - offset, key.length());
+        for (int i = 0; i < length; i++) {
+            final int diff = mKeyChars[offset + i] - key.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        // A term shorter than the prefix sorts before it.
+        return length < key.length() ? -1 : 0;
+    }
+
+    private static int keyLength(int[] termOffsets, int term) {
+        return termOffsets[term + 1] - termOffsets[term];
+    }
+
+    /** Lower cases one char at a time, so that a key has the same length as its term. */
+    private static String toKey(String term) {
+        final char[] key = new char[term.length()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = Character.toLowerCase(term.charAt(i));
+        }
+        return new String(key);
+    }
+
+    /** Growable array of chars, to build the trie without boxing. */
+    private static final class CharList {
+        private char[] mValues = new char[16];
+        private int mSize;
+
+        void add(char value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        char[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+
+    /** Growable array of ints, to build the trie without boxing. */
+    private static final class IntList {
+        private int[] mValues = new int[16];
+        private int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int get(int index) {
+            return mValues[index];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import android.os.Build;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.os.SystemProperties;
+import android.os.strictmode.Violation;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Debug and test mode that reports disk and provider I/O done on the main thread.
+ *
+ * <p>When enabled, e.g. with {@code adb shell setprop debug.emergency.strictmode true} on a
+ * debuggable build, the activities install a StrictMode thread policy and every violation is
+ * recorded together with its stack and the duration of the main thread message it happened in.
+ * The records are printed by {@code adb shell dumpsys activity com.android.emergency}.
+ *
+ * <p>ContentResolver and PackageManager calls are not detected by StrictMode itself, so the call
+ * sites report them through {@link #noteProviderCall(String)}.
+ */
+public final class StrictModeAuditor {
+    private static final String TAG = "StrictModeAuditor";
+
+    /** System property that turns the audit mode on. Only honored on debuggable builds. */
+    @VisibleForTesting
+    static final String PROPERTY_AUDIT_MODE = "debug.emergency.strictmode";
+
+    private static final int MAX_RECORDED_VIOLATIONS = 64;
+
+    private static final Object sLock = new Object();
+    @GuardedBy("sLock")
+    private static final ArrayDeque<RecordedViolation> sViolations = new ArrayDeque<>();
+
+    private static boolean sEnabledForTesting;
+    private static boolean sInstalled;
+
+    // Only accessed on the main thread.
+    private static long sDispatchStartMillis;
+    private static long sLastDispatchDurationMillis;
+
+    /** Returns whether the audit mode is on. */
+    public static boolean isEnabled() {
+        return sEnabledForTesting
+                || (Build.IS_DEBUGGABLE && SystemProperties.getBoolean(PROPERTY_AUDIT_MODE, false));
+    }
+
+    /**
+     * Installs the audit thread policy on the main thread if the audit mode is on. Called by every
+     * activity in {@code onCreate}; only the first call has an effect. The audit needs the
+     * StrictMode penalty listener, so it is not available before P.
+     */
+    public static void maybeInstall() {
+        if (sInstalled || !isEnabled() || Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return;
+        }
+        sInstalled = true;
+        Looper.getMainLooper().setMessageLogging(StrictModeAuditor::onLooperMessage);
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectUnbufferedIo()
+                .detectCustomSlowCalls()
+                .penaltyLog()
+                // Run the listener directly: StrictMode calls it right after the offending
+                // message finished, which is what the duration bookkeeping relies on.
+                .penaltyListener(Runnable::run, StrictModeAuditor::recordViolation)
+                .build());
+        Log.i(TAG, "Main thread I/O audit mode enabled");
+    }
+
+    /**
+     * Notes a ContentResolver or PackageManager call. This is a no-op unless the calling thread
+     * is audited, in which case it is recorded like disk I/O.
+     */
+    public static void noteProviderCall(String name) {
+        StrictMode.noteSlowCall(name);
+    }
+
+    /** Returns a copy of the recorded violations, oldest first. */
+    public static List<RecordedViolation> getViolations() {
+        synchronized (sLock) {
+            return new ArrayList<>(sViolations);
+        }
+    }
+
+    /** Forgets all recorded violations. */
+    public static void clearViolations() {
+        synchronized (sLock) {
+            sViolations.clear();
+        }
+    }
+
+    /** Prints the recorded violations, for {@code Activity#dump}. */
+    public static void dump(String prefix, PrintWriter writer) {
+        if (!isEnabled()) {
+            return;
+        }
+        final List<RecordedViolation> violations = getViolations();
+        writer.println(prefix + "Main thread I/O violations: " + violations.size());
+        for (RecordedViolation violation : violations) {
+            writer.println(prefix + "  " + violation.getType() + " in "
+                    + violation.getDurationMillis() + "ms message");
+            for (StackTraceElement element : violation.getStackTrace()) {
+                writer.println(prefix + "      at " + element);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    public static void setEnabledForTesting(boolean enabled) {
+        sEnabledForTesting = enabled;
+        if (!enabled) {
+            sInstalled = false;
+            StrictMode.setThreadPolicy(StrictMode.ThreadPolicy.LAX);
+        }
+    }
+
+    private static void onLooperMessage(String message) {
+        if (message.startsWith(">>>>> Dispatching")) {
+            sDispatchStartMillis = SystemClock.uptimeMillis();
+        } else if (message.startsWith("<<<<< Finished")) {
+            sLastDispatchDurationMillis = SystemClock.uptimeMillis() - sDispatchStartMillis;
+        }
+    }
+
+    private static void recordViolation(Violation violation) {
+        final RecordedViolation record = new RecordedViolation(
+                violation.getClass().getSimpleName(), violation.getStackTrace(),
+                sLastDispatchDurationMillis);
+        synchronized (sLock) {
+            if (sViolations.size() == MAX_RECORDED_VIOLATIONS) {
+                sViolations.removeFirst();
+            }
+            sViolations.addLast(record);
+        }
+    }
+
+    /** A main thread I/O violation. */
+    public static final class RecordedViolation {
+        private final String mType;
+        private final StackTraceElement[] mStackTrace;
+        private final long mDurationMillis;
+
+        RecordedViolation(String type, StackTraceElement[] stackTrace, long durationMillis) {
+            mType = type;
+            mStackTrace = stackTrace;
+            mDurationMillis = durationMillis;
+        }
+
+        /** Returns the violation type, e.g. {@code DiskReadViolation}. */
+        public String getType() {
+            return mType;
+        }
+
+        /** Returns the stack of the offending call. */
+        public StackTraceElement[] getStackTrace() {
+            return mStackTrace;
+        }
+
+        /** Returns how long the main thread message that did the I/O took. */
+        public long getDurationMillis() {
+            return mDurationMillis;
+        }
+    }
+
+    private StrictModeAuditor() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * App-wide executor for work that must not run on the main thread.
+ *
+ * <p>Tasks run on a small, bounded pool of worker threads. Queued {@link Priority#UI_CRITICAL}
+ * tasks, which the user is waiting for, always run before {@link Priority#BACKGROUND} ones.
+ * Results are delivered on the main thread.
+ *
+ * <p>A task may have an owner, typically the fragment whose views it updates. The owner calls
+ * {@link #cancelAll(Object)} when its lifecycle ends: queued tasks are dropped, and running
+ * tasks complete but don't deliver their result. Tasks without an owner, such as writes the user
+ * already confirmed, are never cancelled.
+ */
+public final class TaskScheduler {
+    private static final String TAG = "TaskScheduler";
+
+    /** How urgently a task needs to run. */
+    public enum Priority {
+        /** The user is waiting for the result, e.g. a photo to show up. */
+        UI_CRITICAL,
+        /** Nobody is waiting for the result, e.g. persisting or prefetching data. */
+        BACKGROUND
+    }
+
+    private static final int MAX_WORKER_THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private static TaskScheduler sInstance;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong mSequence = new AtomicLong();
+    @GuardedBy("mRunning")
+    private final List<ScheduledTask<?>> mRunning = new ArrayList<>();
+
+    /** Returns the process-wide instance, creating it on first use. */
+    public static synchronized TaskScheduler getInstance() {
+        if (sInstance == null) {
+            final int workers = Math.max(2,
+                    Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_WORKER_THREADS));
+            sInstance = new TaskScheduler(workers);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    TaskScheduler(int workers) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = new ThreadPoolExecutor(workers, workers, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                runnable -> new Thread(runnable, "EmergencyTask-" + threadCount.incrementAndGet()));
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs {@code work} on a worker thread, then {@code onResult} with its result on the main
+     * thread, unless {@code owner} cancelled its tasks in the meantime. If {@code work} throws,
+     * {@code onResult} gets {@code null}, so that callers waiting for the result can recover.
+     *
+     * @param owner the object whose lifecycle bounds the task, or null if it must always complete
+     * @param name short description of the task, for {@link #dump}
+     */
+    public <T> void submit(@Nullable Object owner, String name, Priority priority,
+            Callable<T> work, @Nullable Consumer<T> onResult) {
+        mExecutor.execute(new ScheduledTask<>(owner, name, priority,
+                mSequence.getAndIncrement(), work, onResult));
+    }
+
+    /** Runs {@code work} on a worker thread. The task has no owner and is never cancelled. */
+    public void execute(String name, Priority priority, Runnable work) {
+        submit(null /* owner */, name, priority, () -> {
+            work.run();
+            return null;
+        }, null /* onResult */);
+    }
+
+    /**
+     * Cancels all tasks submitted on behalf of {@code owner}. Must be called on the main thread.
+     */
+    public void cancelAll(Object owner) {
+        for (Runnable runnable : mExecutor.getQueue().toArray(new Runnable[0])) {
+            final ScheduledTask<?> task = (ScheduledTask<?>) runnable;
+            if (task.mOwner == owner) {
+                task.mCancelled = true;
+                if (mExecutor.remove(task)) {
+                    // Never going to run: close its trace slice here.
+                    task.endAsyncTrace();
+                }
+            }
+        }
+        synchronized (mRunning) {
+            for (ScheduledTask<?> task : mRunning) {
+                if (task.mOwner == owner) {
+                    task.mCancelled = true;
+                }
+            }
+        }
+    }
+
+    /** Prints the running and queued tasks, for {@code Activity#dump}. */
+    public void dump(String prefix, PrintWriter writer) {
+        final long now = SystemClock.elapsedRealtime();
+        final List<ScheduledTask<?>> running;
+        synchronized (mRunning) {
+            running = new ArrayList<>(mRunning);
+        }
+        writer.println(prefix + "Background tasks: " + running.size() + " running, "
+                + mExecutor.getQueue().size() + " queued, "
+                + mExecutor.getCompletedTaskCount() + " completed");
+        for (ScheduledTask<?> task : running) {
+            writer.println(prefix + "  running " + task.describe() + " for "
+                    + (now - task.mStartTime) + "ms");
+        }
+        for (Runnable runnable : mExecutor.getQueue().toArray(new Runnable[0])) {
+            final ScheduledTask<?> task = (ScheduledTask<?>) runnable;
+            writer.println(prefix + "  queued " + task.describe() + " for "
+                    + (now - task.mSubmitTime) + "ms");
+        }
+    }
+
+    private final class ScheduledTask<T> implements Runnable, Comparable<ScheduledTask<?>> {
+        private final Object mOwner;
+        private final String mName;
+        private final Priority mPriority;
+        private final long mSequence;
+        private final Callable<T> mWork;
+        private final Consumer<T> mOnResult;
+        private final long mSubmitTime = SystemClock.elapsedRealtime();
+        private final int mTraceCookie;
+        private long mStartTime;
+        private volatile boolean mCancelled;
+
+        ScheduledTask(Object owner, String name, Priority priority, long sequence,
+                Callable<T> work, Consumer<T> onResult) {
+            mOwner = owner;
+            mName = name;
+            mPriority = priority;
+            mSequence = sequence;
+            mWork = work;
+            mOnResult = onResult;
+            mTraceCookie = EmergencyTrace.beginAsync(getTraceSection());
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                endAsyncTrace();
+                return;
+            }
+            mStartTime = SystemClock.elapsedRealtime();
+            synchronized (mRunning) {
+                mRunning.add(this);
+            }
+            Process.setThreadPriority(mPriority == Priority.UI_CRITICAL
+                    ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+            EmergencyTrace.begin(getTraceSection());
+            try {
+                deliverResult(mWork.call());
+            } catch (Exception e) {
+                Log.e(TAG, "Task " + mName + " failed", e);
+                deliverResult(null);
+            } finally {
+                EmergencyTrace.end();
+                endAsyncTrace();
+                synchronized (mRunning) {
+                    mRunning.remove(this);
+                }
+            }
+        }
+
+        private void deliverResult(T result) {
+            if (mOnResult != null) {
+                mMainHandler.post(() -> {
+                    if (!mCancelled) {
+                        mOnResult.accept(result);
+                    }
+                });
+            }
+        }
+
+        void endAsyncTrace() {
+            EmergencyTrace.endAsync(getTraceSection(), mTraceCookie);
+        }
+
+        private String getTraceSection() {
+            return EmergencyTrace.ENABLED ? "TaskScheduler#" + mName : null;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask<?> other) {
+            if (mPriority != other.mPriority) {
+                return mPriority.compareTo(other.mPriority);
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+
+        String describe() {
+            return mName + " (" + mPriority + (mOwner == null ? "" : ", owned") + ")";
+        }
+    }
+}
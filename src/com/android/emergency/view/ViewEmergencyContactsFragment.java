@@ -18,6 +18,7 @@ package com.android.emergency.view;
 import androidx.fragment.app.Fragment;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Bundle;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceManager;
@@ -26,6 +27,10 @@ import android.widget.ListView;
 import com.android.emergency.PreferenceKeys;
 import com.android.emergency.R;
 import com.android.emergency.preferences.EmergencyContactsPreference;
+import com.android.emergency.util.EmergencyTrace;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Fragment that displays emergency contacts.
@@ -36,15 +41,31 @@ public class ViewEmergencyContactsFragment extends PreferenceFragmentCompat {
 
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
-        addPreferencesFromResource(R.xml.view_emergency_contacts);
-        mEmergencyContactsPreference = (EmergencyContactsPreference)
-                findPreference(PreferenceKeys.KEY_EMERGENCY_CONTACTS);
+        EmergencyTrace.begin("ViewEmergencyContactsFragment#onCreatePreferences");
+        try {
+            addPreferencesFromResource(R.xml.view_emergency_contacts);
+            mEmergencyContactsPreference = (EmergencyContactsPreference)
+                    findPreference(PreferenceKeys.KEY_EMERGENCY_CONTACTS);
+        } finally {
+            EmergencyTrace.end();
+        }
     }
 
     @Override
     public void onResume() {
-        super.onResume();
-        mEmergencyContactsPreference.reloadFromPreference();
+        EmergencyTrace.begin("ViewEmergencyContactsFragment#onResume");
+        try {
+            super.onResume();
+            mEmergencyContactsPreference.reloadFromPreference();
+        } finally {
+            EmergencyTrace.end();
+        }
+    }
+
+    /** Returns the emergency contacts shown, or an empty list if they aren't loaded yet. */
+    public List<Uri> getEmergencyContacts() {
+        return mEmergencyContactsPreference == null
+                ? Collections.emptyList() : mEmergencyContactsPreference.getEmergencyContacts();
     }
 
     public static Fragment newInstance() {
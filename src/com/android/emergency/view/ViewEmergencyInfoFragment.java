@@ -28,6 +28,7 @@ import androidx.preference.PreferenceManager;
 import com.android.emergency.PreferenceKeys;
 import com.android.emergency.R;
 import com.android.emergency.ReloadablePreferenceInterface;
+import com.android.emergency.util.EmergencyTrace;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -41,15 +42,20 @@ public class ViewEmergencyInfoFragment extends PreferenceFragmentCompat {
 
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
-        setPreferencesFromResource(R.xml.view_emergency_info, rootKey);
+        EmergencyTrace.begin("ViewEmergencyInfoFragment#onCreatePreferences");
+        try {
+            setPreferencesFromResource(R.xml.view_emergency_info, rootKey);
 
-        for (String preferenceKey : PreferenceKeys.KEYS_VIEW_EMERGENCY_INFO) {
-            Preference preference = findPreference(preferenceKey);
-            mPreferences.add(preference);
+            for (String preferenceKey : PreferenceKeys.KEYS_VIEW_EMERGENCY_INFO) {
+                Preference preference = findPreference(preferenceKey);
+                mPreferences.add(preference);
 
-            if (((ReloadablePreferenceInterface) preference).isNotSet()) {
-                getPreferenceScreen().removePreference(preference);
+                if (((ReloadablePreferenceInterface) preference).isNotSet()) {
+                    getPreferenceScreen().removePreference(preference);
+                }
             }
+        } finally {
+            EmergencyTrace.end();
         }
     }
 
@@ -65,17 +71,22 @@ public class ViewEmergencyInfoFragment extends PreferenceFragmentCompat {
 
     @Override
     public void onResume() {
-        super.onResume();
-        for (Preference preference : mPreferences) {
-            ReloadablePreferenceInterface reloadablePreference =
-                    (ReloadablePreferenceInterface) preference;
-            reloadablePreference.reloadFromPreference();
-            if (reloadablePreference.isNotSet()) {
-                getPreferenceScreen().removePreference(preference);
-            } else {
-                // Note: this preference won't be added it if it already exists.
-                getPreferenceScreen().addPreference(preference);
+        EmergencyTrace.begin("ViewEmergencyInfoFragment#onResume");
+        try {
+            super.onResume();
+            for (Preference preference : mPreferences) {
+                ReloadablePreferenceInterface reloadablePreference =
+                        (ReloadablePreferenceInterface) preference;
+                reloadablePreference.reloadFromPreference();
+                if (reloadablePreference.isNotSet()) {
+                    getPreferenceScreen().removePreference(preference);
+                } else {
+                    // Note: this preference won't be added it if it already exists.
+                    getPreferenceScreen().addPreference(preference);
+                }
             }
+        } finally {
+            EmergencyTrace.end();
         }
     }
 
@@ -15,14 +15,21 @@
  */
 package com.android.emergency.view;
 
+import android.Manifest;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.KeyguardManager;
+import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 import androidx.fragment.app.FragmentManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
 import androidx.annotation.LayoutRes;
 import android.os.UserHandle;
@@ -42,24 +49,43 @@ import android.view.View;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 import android.widget.Toolbar;
 import android.widget.ViewFlipper;
 
+import com.android.emergency.AvatarCache;
 import com.android.emergency.CircleFramedDrawable;
+import com.android.emergency.EmergencyContactManager;
+import com.android.emergency.EmergencyInfoPrefetcher;
+import com.android.emergency.PreferenceKeys;
 import com.android.emergency.R;
+import com.android.emergency.alert.EmergencyAlertDispatcher;
+import com.android.emergency.alert.EmergencyAlertService;
 import com.android.emergency.edit.EditInfoActivity;
+import com.android.emergency.overlay.FeatureFactory;
+import com.android.emergency.util.EmergencyTrace;
+import com.android.emergency.util.LatencyLogger;
 import com.android.emergency.util.PreferenceUtils;
+import com.android.emergency.util.StrictModeAuditor;
+import com.android.emergency.util.TaskScheduler;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.logging.MetricsLogger;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.internal.util.UserIcons;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Activity for viewing emergency information.
  */
 public class ViewInfoActivity extends FragmentActivity {
+    @VisibleForTesting
+    static final String TAG_NOTIFY_CONTACTS_DIALOG = "notify_contacts_dialog";
+    private static final int REQUEST_SEND_SMS = 1;
+
     private ImageView mPersonalCardLargeIcon;
     private TextView mPersonalCardLargeItem;
     private SharedPreferences mSharedPreferences;
@@ -69,6 +95,8 @@ public class ViewInfoActivity extends FragmentActivity {
     private TabLayout mTabLayout;
     private ArrayList<Pair<String, Fragment>> mFragments;
     private Menu mMenu;
+    /** Data prefetched before this launch, only used until the first {@link #onResume()}. */
+    private EmergencyInfoPrefetcher.Snapshot mPrefetchedSnapshot;
 
     @Override
     public void setContentView(@LayoutRes int layoutResID) {
@@ -81,49 +109,80 @@ public class ViewInfoActivity extends FragmentActivity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.view_activity_layout);
-        mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        mPersonalCard = (LinearLayout) findViewById(R.id.name_and_dob_linear_layout);
-        mPersonalCardLargeIcon = (ImageView) findViewById(R.id.personal_card_icon);
-        mPersonalCardLargeItem = (TextView) findViewById(R.id.personal_card_large);
-        mViewFlipper = (ViewFlipper) findViewById(R.id.view_flipper);
+        EmergencyTrace.begin("ViewInfoActivity#onCreate");
+        try {
+            StrictModeAuditor.maybeInstall();
+            super.onCreate(savedInstanceState);
+            mPrefetchedSnapshot = EmergencyInfoPrefetcher.onViewInfoLaunched(this);
+            setContentView(R.layout.view_activity_layout);
+            mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+            mPersonalCard = (LinearLayout) findViewById(R.id.name_and_dob_linear_layout);
+            mPersonalCardLargeIcon = (ImageView) findViewById(R.id.personal_card_icon);
+            mPersonalCardLargeItem = (TextView) findViewById(R.id.personal_card_large);
+            mViewFlipper = (ViewFlipper) findViewById(R.id.view_flipper);
 
-        MetricsLogger.visible(this, MetricsEvent.ACTION_VIEW_EMERGENCY_INFO);
+            MetricsLogger.visible(this, MetricsEvent.ACTION_VIEW_EMERGENCY_INFO);
+        } finally {
+            EmergencyTrace.end();
+        }
     }
 
     @Override
     public void onResume() {
-        super.onResume();
-        loadUserInfo();
-        // Update the tabs: new info might have been added/deleted from the edit screen that
-        // could lead to adding/removing a fragment
-        setupTabs();
-        maybeHideTabs();
+        EmergencyTrace.begin("ViewInfoActivity#onResume");
+        try {
+            super.onResume();
+            loadUserInfo();
+            // Update the tabs: new info might have been added/deleted from the edit screen that
+            // could lead to adding/removing a fragment
+            setupTabs();
+            maybeHideTabs();
+            invalidateOptionsMenu();
+            // Later resumes must pick up changes made in the edit screen.
+            mPrefetchedSnapshot = null;
+        } finally {
+            EmergencyTrace.end();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        LatencyLogger.flushAsync();
     }
 
     private void loadUserInfo() {
         UserManager userManager = getSystemService(UserManager.class);
-        if (TextUtils.isEmpty(userManager.getUserName())) {
+        String userName = mPrefetchedSnapshot != null
+                ? mPrefetchedSnapshot.getUserName() : userManager.getUserName();
+        if (TextUtils.isEmpty(userName)) {
             mPersonalCard.setVisibility(View.GONE);
         } else {
             mPersonalCard.setVisibility(View.VISIBLE);
-            mPersonalCardLargeItem.setText(userManager.getUserName());
+            mPersonalCardLargeItem.setText(userName);
 
-            Bitmap bitmapUserIcon = userManager.getUserIcon(UserHandle.myUserId());
+            // The user icon is decoded from disk on every call: skip it if it is already cached.
+            final AvatarCache avatarCache = AvatarCache.getInstance(this);
+            final String userIconId = avatarCache.getUserIconId(UserHandle.myUserId());
+            final int size = (int) getResources().getDimension(R.dimen.action_bar_size);
+            Bitmap renderedUserIcon = avatarCache.getCachedBitmap(userIconId, size);
+            if (renderedUserIcon == null) {
+                Bitmap bitmapUserIcon = mPrefetchedSnapshot != null
+                        ? mPrefetchedSnapshot.getUserIcon()
+                        : userManager.getUserIcon(UserHandle.myUserId());
 
-            if (bitmapUserIcon == null) {
-                // Get default user icon.
-                Drawable defaultUserIcon = UserIcons.getDefaultUserIcon(
-                        getApplicationContext().getResources(), UserHandle.myUserId(),
-                        false /* light icon */);
-                bitmapUserIcon = UserIcons.convertToBitmap(defaultUserIcon);
+                if (bitmapUserIcon == null) {
+                    // Get default user icon.
+                    Drawable defaultUserIcon = UserIcons.getDefaultUserIcon(
+                            getApplicationContext().getResources(), UserHandle.myUserId(),
+                            false /* light icon */);
+                    bitmapUserIcon = UserIcons.convertToBitmap(defaultUserIcon);
+                }
+                renderedUserIcon = avatarCache.getRenderedBitmap(userIconId, bitmapUserIcon, size);
             }
 
-            Drawable drawableUserIcon = new CircleFramedDrawable(bitmapUserIcon,
-                    (int) getResources().getDimension(R.dimen.action_bar_size));
-
-            mPersonalCardLargeIcon.setImageDrawable(drawableUserIcon);
+            mPersonalCardLargeIcon.setImageDrawable(
+                    new CircleFramedDrawable(renderedUserIcon, size));
         }
     }
 
@@ -152,6 +211,13 @@ public class ViewInfoActivity extends FragmentActivity {
         return super.onCreateOptionsMenu(menu);
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_notify_contacts)
+                .setVisible(getEmergencyContactsFragment() != null && canNotifyContacts());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int itemId = item.getItemId();
@@ -163,10 +229,42 @@ public class ViewInfoActivity extends FragmentActivity {
             intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
             startActivity(intent);
             return true;
+        } else if (itemId == R.id.action_notify_contacts) {
+            showNotifyContactsDialog();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions,
+            int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode != REQUEST_SEND_SMS) {
+            return;
+        }
+        if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            notifyEmergencyContacts();
+        } else {
+            Toast.makeText(this, R.string.fail_emergency_alert_permission, Toast.LENGTH_LONG)
+                    .show();
+        }
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        StrictModeAuditor.dump(prefix, writer);
+        TaskScheduler.getInstance().dump(prefix, writer);
+        LatencyLogger.dump(prefix, writer);
+        AvatarCache.getInstance(this).dump(prefix, writer);
+        // Don't create the dispatcher, and start its thread, just to dump it.
+        final EmergencyAlertDispatcher alertDispatcher = EmergencyAlertDispatcher.peekInstance();
+        if (alertDispatcher != null) {
+            alertDispatcher.dump(prefix, writer);
+        }
+    }
+
     /** Return the tab layout. */
     @VisibleForTesting
     public TabLayout getTabLayout() {
@@ -184,15 +282,129 @@ public class ViewInfoActivity extends FragmentActivity {
         return mFragments;
     }
 
+    private void showNotifyContactsDialog() {
+        if (getSupportFragmentManager().findFragmentByTag(TAG_NOTIFY_CONTACTS_DIALOG) == null) {
+            NotifyContactsDialogFragment.newInstance()
+                    .show(getSupportFragmentManager(), TAG_NOTIFY_CONTACTS_DIALOG);
+        }
+    }
+
+    /**
+     * Whether the emergency contacts may be notified: always once the phone is unlocked, and from
+     * the lock screen only if the user allowed it in the edit screen.
+     */
+    private boolean canNotifyContacts() {
+        return !getSystemService(KeyguardManager.class).isKeyguardLocked()
+                || mSharedPreferences.getBoolean(PreferenceKeys.KEY_ALERT_FROM_LOCK_SCREEN, false);
+    }
+
+    private void onNotifyContactsConfirmed() {
+        if (!canNotifyContacts()) {
+            // Locked again since the dialog was shown.
+            return;
+        }
+        if (checkSelfPermission(Manifest.permission.SEND_SMS)
+                == PackageManager.PERMISSION_GRANTED) {
+            notifyEmergencyContacts();
+            return;
+        }
+        final KeyguardManager keyguardManager = getSystemService(KeyguardManager.class);
+        if (!keyguardManager.isKeyguardLocked()) {
+            requestSendSmsPermission();
+            return;
+        }
+        // The permission dialog can't show over the lock screen.
+        keyguardManager.requestDismissKeyguard(this, new KeyguardManager.KeyguardDismissCallback() {
+            @Override
+            public void onDismissSucceeded() {
+                requestSendSmsPermission();
+            }
+
+            @Override
+            public void onDismissCancelled() {
+                onDismissError();
+            }
+
+            @Override
+            public void onDismissError() {
+                Toast.makeText(ViewInfoActivity.this, R.string.fail_emergency_alert_locked,
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    private void requestSendSmsPermission() {
+        requestPermissions(new String[] {Manifest.permission.SEND_SMS}, REQUEST_SEND_SMS);
+    }
+
+    /** Sends the alert message to every emergency contact shown. */
+    @VisibleForTesting
+    void notifyEmergencyContacts() {
+        final ViewEmergencyContactsFragment fragment = getEmergencyContactsFragment();
+        if (fragment == null) {
+            return;
+        }
+        final List<Uri> phoneUris = fragment.getEmergencyContacts();
+        final String message = getAlertMessage();
+        final Context appContext = getApplicationContext();
+        // No owner: the user confirmed, so the alert goes out even if they leave this screen.
+        FeatureFactory.getFactory(this).getEmergencyContactsFeatureProvider()
+                .getContactSource(this)
+                .resolveContacts(null /* owner */, phoneUris, contacts -> {
+                    if (contacts == null) {
+                        Toast.makeText(appContext, R.string.fail_emergency_alert_load_contacts,
+                                Toast.LENGTH_LONG).show();
+                        return;
+                    }
+                    final ArrayList<String> phoneNumbers = new ArrayList<>(phoneUris.size());
+                    for (Uri phoneUri : phoneUris) {
+                        final EmergencyContactManager.Contact contact = contacts.get(phoneUri);
+                        if (contact != null && !TextUtils.isEmpty(contact.getPhoneNumber())) {
+                            phoneNumbers.add(contact.getPhoneNumber());
+                        }
+                    }
+                    if (phoneNumbers.isEmpty()) {
+                        Toast.makeText(appContext, R.string.fail_emergency_alert_no_numbers,
+                                Toast.LENGTH_LONG).show();
+                        return;
+                    }
+                    EmergencyAlertService.start(appContext, phoneNumbers, message);
+                });
+    }
+
+    private String getAlertMessage() {
+        final String userName = getSystemService(UserManager.class).getUserName();
+        return TextUtils.isEmpty(userName)
+                ? getString(R.string.emergency_alert_message_no_name)
+                : getString(R.string.emergency_alert_message, userName);
+    }
+
+    private ViewEmergencyContactsFragment getEmergencyContactsFragment() {
+        if (mFragments == null) {
+            return null;
+        }
+        for (Pair<String, Fragment> fragment : mFragments) {
+            if (fragment.second instanceof ViewEmergencyContactsFragment) {
+                return (ViewEmergencyContactsFragment) fragment.second;
+            }
+        }
+        return null;
+    }
+
     private ArrayList<Pair<String, Fragment>> setUpFragments() {
         // Return only the fragments that have at least one piece of information set:
         ArrayList<Pair<String, Fragment>> fragments = new ArrayList<>(2);
 
-        if (PreferenceUtils.hasAtLeastOnePreferenceSet(this)) {
+        final boolean hasInfo = mPrefetchedSnapshot != null
+                ? mPrefetchedSnapshot.hasInfo() : PreferenceUtils.hasAtLeastOnePreferenceSet(this);
+        final boolean hasContacts = mPrefetchedSnapshot != null
+                ? mPrefetchedSnapshot.hasContacts()
+                : PreferenceUtils.hasAtLeastOneEmergencyContact(this);
+        if (hasInfo) {
             fragments.add(Pair.create(getResources().getString(R.string.tab_title_info),
                     ViewEmergencyInfoFragment.newInstance()));
         }
-        if (PreferenceUtils.hasAtLeastOneEmergencyContact(this)) {
+        if (hasContacts) {
             fragments.add(Pair.create(getResources().getString(R.string.tab_title_contacts),
                     ViewEmergencyContactsFragment.newInstance()));
         }
@@ -223,6 +435,27 @@ public class ViewInfoActivity extends FragmentActivity {
         }
     }
 
+    /**
+     * Dialog shown to the user before texting all emergency contacts. Using a
+     * {@link DialogFragment} takes care of screen rotation issues.
+     */
+    public static class NotifyContactsDialogFragment extends DialogFragment {
+
+        @Override
+        public Dialog onCreateDialog(Bundle savedInstanceState) {
+            return new AlertDialog.Builder(getActivity())
+                    .setMessage(R.string.notify_emergency_contacts_message)
+                    .setPositiveButton(R.string.send, (dialog, which) ->
+                            ((ViewInfoActivity) getActivity()).onNotifyContactsConfirmed())
+                    .setNegativeButton(android.R.string.cancel, null)
+                    .create();
+        }
+
+        public static DialogFragment newInstance() {
+            return new NotifyContactsDialogFragment();
+        }
+    }
+
     /** The adapter used to handle the two fragments. */
     protected class ViewPagerAdapter extends FragmentStatePagerAdapter {
         public ViewPagerAdapter(FragmentManager fm) {
@@ -0,0 +1,68 @@
+#!/usr/bin/env python3
+#
+# Copyright (C) 2021 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+"""Compares two JMH JSON result files written by run_benchmarks.sh.
+
+Usage: compare_benchmarks.py BASELINE.json CANDIDATE.json [--threshold PERCENT]
+
+All benchmarks report average times, so a higher score is slower. Exits with status 1 if
+any benchmark got slower by more than the threshold (default 10%).
+"""
+
+import argparse
+import json
+import sys
+
+
+def load(path):
+    with open(path) as f:
+        results = {}
+        for result in json.load(f):
+            params = result.get('params', {})
+            name = result['benchmark'] + ''.join(
+                ' %s=%s' % (key, params[key]) for key in sorted(params))
+            metric = result['primaryMetric']
+            results[name] = (metric['score'], metric['scoreUnit'])
+        return results
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument('baseline')
+    parser.add_argument('candidate')
+    parser.add_argument('--threshold', type=float, default=10.0)
+    args = parser.parse_args()
+
+    baseline = load(args.baseline)
+    candidate = load(args.candidate)
+    regressed = False
+    for name in sorted(set(baseline) & set(candidate)):
+        old_score, unit = baseline[name]
+        new_score, _ = candidate[name]
+        change = (new_score - old_score) / old_score * 100 if old_score else 0.0
+        marker = ''
+        if change > args.threshold:
+            marker = '  REGRESSION'
+            regressed = True
+        print('%-80s %12.1f -> %12.1f %s (%+.1f%%)%s'
+              % (name, old_score, new_score, unit, change, marker))
+    for name in sorted(set(candidate) - set(baseline)):
+        print('%-80s new' % name)
+    return 1 if regressed else 0
+
+
+if __name__ == '__main__':
+    sys.exit(main())
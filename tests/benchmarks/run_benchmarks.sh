@@ -0,0 +1,34 @@
+#!/bin/bash
+#
+# Copyright (C) 2021 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Runs the host benchmarks and writes the JMH results as JSON, named after the current git
+# revision, so that two revisions can be compared with compare_benchmarks.py.
+#
+# Usage: run_benchmarks.sh [output_dir] [JMH arguments...]
+# Requires a lunched tree where "m EmergencyInfoBenchmarks" works.
+
+set -e
+
+OUTPUT_DIR=${1:-/tmp/emergency-benchmarks}
+shift || true
+
+m EmergencyInfoBenchmarks
+REVISION=$(git -C "$(dirname "$0")" rev-parse --short HEAD)
+mkdir -p "$OUTPUT_DIR"
+RESULTS="$OUTPUT_DIR/$REVISION.json"
+
+"$ANDROID_HOST_OUT/bin/EmergencyInfoBenchmarks" -rf json -rff "$RESULTS" "$@"
+echo "Results written to $RESULTS"
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.benchmarks;
+
+import com.android.emergency.util.AccessibleEntries;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accessible entry construction of {@code EmergencyListPreference}, with the blood type list, and
+ * the cache lookup that replaces it when the list is inflated again. The decoration stands in for
+ * {@code SpannableString} and {@code TtsSpan}, which are not available on the host.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessibleEntriesBenchmark {
+    private static final int ENTRIES_RES_ID = 0x7f030001;
+    private static final int CONTENT_DESCRIPTIONS_RES_ID = 0x7f030101;
+
+    private final AccessibleEntries.Cache mCache = new AccessibleEntries.Cache();
+    private final CharSequence[] mEntries = {
+            "O+", "O-", "A+", "A-", "B+", "B-", "AB+", "AB-", "H/H"};
+    private final CharSequence[] mContentDescriptions = {
+            "O positive", "O negative", "A positive", "A negative", "B positive", "B negative",
+            "AB positive", "AB negative", "H H"};
+
+    @Benchmark
+    public CharSequence[] build() {
+        return AccessibleEntries.build(mEntries, mContentDescriptions,
+                (displayText, accessibleText) -> new DecoratedText(displayText, accessibleText));
+    }
+
+    /** What inflating the list again costs: a cache hit, which must not allocate. */
+    @Benchmark
+    public CharSequence[] cachedLookup() {
+        return mCache.get(ENTRIES_RES_ID, CONTENT_DESCRIPTIONS_RES_ID, Locale.US).getEntries();
+    }
+
+    @Setup
+    public void setUp() {
+        // Other lists and locales seen before, to make the lookup scan a little.
+        for (int i = 0; i < 3; i++) {
+            mCache.put(ENTRIES_RES_ID + i + 1, CONTENT_DESCRIPTIONS_RES_ID + i + 1, Locale.FRANCE,
+                    mEntries, mContentDescriptions, DecoratedText::new);
+        }
+        mCache.put(ENTRIES_RES_ID, CONTENT_DESCRIPTIONS_RES_ID, Locale.US, mEntries,
+                mContentDescriptions, DecoratedText::new);
+    }
+
+    /** Minimal text carrying a spoken alternative. */
+    private static final class DecoratedText implements CharSequence {
+        private final CharSequence mDisplayText;
+        private final CharSequence mAccessibleText;
+
+        DecoratedText(CharSequence displayText, CharSequence accessibleText) {
+            mDisplayText = displayText;
+            mAccessibleText = accessibleText;
+        }
+
+        @Override
+        public int length() {
+            return mDisplayText.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return mDisplayText.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DecoratedText(mDisplayText.subSequence(start, end), mAccessibleText);
+        }
+
+        @Override
+        public String toString() {
+            return mDisplayText.toString();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.benchmarks;
+
+import com.android.emergency.util.ContactListCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Encoding and decoding of the emergency contacts stored in shared preferences. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContactListCodecBenchmark {
+    @Param({"1", "10", "100"})
+    public int mContactCount;
+
+    private List<String> mPhoneUris;
+    private String mEncoded;
+
+    @Setup
+    public void setUp() {
+        mPhoneUris = new ArrayList<>(mContactCount);
+        for (int i = 0; i < mContactCount; i++) {
+            mPhoneUris.add("content://com.android.contacts/data/phones/" + (1000 + i));
+        }
+        mEncoded = ContactListCodec.encode(mPhoneUris);
+    }
+
+    @Benchmark
+    public String encode() {
+        return ContactListCodec.encode(mPhoneUris);
+    }
+
+    @Benchmark
+    public List<String> decode() {
+        return ContactListCodec.decode(mEncoded);
+    }
+
+    /** The regular expression split the codec replaced, as a baseline. */
+    @Benchmark
+    public String[] decodeWithRegex() {
+        return mEncoded.split("\\|");
+    }
+}
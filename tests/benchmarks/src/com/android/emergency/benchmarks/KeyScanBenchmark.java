@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.benchmarks;
+
+import com.android.emergency.PreferenceKeys;
+import com.android.emergency.util.KeyScan;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scan of {@code PreferenceUtils#hasAtLeastOnePreferenceSet}, over an in-memory map standing
+ * in for shared preferences.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyScanBenchmark {
+    /** Which key has a value: none, the first or the last one. */
+    @Param({"none", "first", "last"})
+    public String mSetKey;
+
+    private final Map<String, String> mValues = new HashMap<>();
+
+    @Setup
+    public void setUp() {
+        final String[] keys = PreferenceKeys.KEYS_VIEW_EMERGENCY_INFO;
+        for (String key : keys) {
+            mValues.put(key, "");
+        }
+        if ("first".equals(mSetKey)) {
+            mValues.put(keys[0], "value");
+        } else if ("last".equals(mSetKey)) {
+            mValues.put(keys[keys.length - 1], "value");
+        }
+    }
+
+    @Benchmark
+    public boolean anyNonEmpty() {
+        return KeyScan.anyNonEmpty(PreferenceKeys.KEYS_VIEW_EMERGENCY_INFO, mValues::get);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.benchmarks;
+
+import com.android.emergency.util.ListDiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** The diff of {@code EmergencyContactsPreference#setEmergencyContacts}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListDiffBenchmark {
+    @Param({"1", "10", "100", "500"})
+    public int mContactCount;
+
+    private List<String> mContacts;
+    private List<String> mContactsCopy;
+    private List<String> mFirstRemoved;
+    private List<String> mLastRemoved;
+    private List<String> mOneAdded;
+
+    @Setup
+    public void setUp() {
+        mContacts = new ArrayList<>(mContactCount);
+        for (int i = 0; i < mContactCount; i++) {
+            mContacts.add("content://com.android.contacts/data/phones/" + (1000 + i));
+        }
+        mContactsCopy = new ArrayList<>(mContacts);
+        mFirstRemoved = new ArrayList<>(mContacts.subList(1, mContactCount));
+        mLastRemoved = new ArrayList<>(mContacts.subList(0, mContactCount - 1));
+        mOneAdded = new ArrayList<>(mContacts);
+        mOneAdded.add("content://com.android.contacts/data/phones/999");
+    }
+
+    /** Reloading unchanged contacts, e.g. on every onResume. */
+    @Benchmark
+    public ListDiff unchanged() {
+        return ListDiff.compute(mContacts, mContactsCopy);
+    }
+
+    @Benchmark
+    public ListDiff firstRemoved() {
+        return ListDiff.compute(mContacts, mFirstRemoved);
+    }
+
+    @Benchmark
+    public ListDiff lastRemoved() {
+        return ListDiff.compute(mContacts, mLastRemoved);
+    }
+
+    @Benchmark
+    public ListDiff oneAdded() {
+        return ListDiff.compute(mContacts, mOneAdded);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.benchmarks;
+
+import com.android.emergency.util.PrefixIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suggestion lookups of {@code AutocompleteEditTextPreference}, for lists the size of the bundled
+ * ones and larger, with prefixes within and beyond the trie. Terms are made up from syllables, so
+ * that they share prefixes the way drug names do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixIndexBenchmark {
+    private static final String[] SYLLABLES = {
+            "a", "am", "an", "ce", "cil", "cin", "da", "di", "fen", "ga", "lin", "lo", "mab",
+            "met", "mi", "ne", "nol", "o", "pam", "pine", "pra", "pril", "ro", "sar", "ta", "tan",
+            "tin", "tra", "va", "xi", "zo", "zole"};
+    private static final int PREFIX_COUNT = 256;
+    private static final int MAX_SUGGESTIONS = 8;
+
+    @Param({"200", "2000", "10000"})
+    public int mTermCount;
+
+    private List<String> mTerms;
+    private PrefixIndex mIndex;
+    private String[] mShortPrefixes;
+    private String[] mLongPrefixes;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mTerms = new ArrayList<>(mTermCount);
+        for (int i = 0; i < mTermCount; i++) {
+            final StringBuilder term = new StringBuilder();
+            final int syllables = 2 + random.nextInt(4);
+            for (int j = 0; j < syllables; j++) {
+                term.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            term.setCharAt(0, Character.toUpperCase(term.charAt(0)));
+            mTerms.add(term.toString());
+        }
+        mIndex = PrefixIndex.build(mTerms);
+
+        // Prefixes of actual terms, as typed.
+        mShortPrefixes = new String[PREFIX_COUNT];
+        mLongPrefixes = new String[PREFIX_COUNT];
+        for (int i = 0; i < PREFIX_COUNT; i++) {
+            final String term = mTerms.get(random.nextInt(mTerms.size()));
+            mShortPrefixes[i] = term.substring(0, Math.min(term.length(), 2));
+            mLongPrefixes[i] = term.substring(0, Math.min(term.length(), 7)).toLowerCase();
+        }
+    }
+
+    /** Early in typing: a node of the trie, many matches. */
+    @Benchmark
+    public List<String> queryShortPrefix() {
+        return mIndex.query(mShortPrefixes[mNext++ & (PREFIX_COUNT - 1)], MAX_SUGGESTIONS);
+    }
+
+    /** Further in: past the trie, narrowed down by binary search. */
+    @Benchmark
+    public List<String> queryLongPrefix() {
+        return mIndex.query(mLongPrefixes[mNext++ & (PREFIX_COUNT - 1)], MAX_SUGGESTIONS);
+    }
+
+    /** Loading a list, which happens once per process. */
+    @Benchmark
+    public PrefixIndex build() {
+        return PrefixIndex.build(mTerms);
+    }
+}
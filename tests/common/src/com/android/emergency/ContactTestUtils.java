@@ -21,6 +21,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
 import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Photo;
 import android.provider.ContactsContract.CommonDataKinds.StructuredName;
 
 /**
@@ -63,11 +64,26 @@ public class ContactTestUtils {
     public static Uri createContact(ContentResolver contentResolver,
                                     String name,
                                     String phoneNumber) {
+        return createContact(contentResolver, name, phoneNumber, null /* photo */);
+    }
+
+    /**
+     * Creates a new contact with the given name, phone number and photo, encoded as JPEG or PNG.
+     * Returns the ContactsContract.CommonDataKinds.Phone.CONTENT_URI corresponding to the new
+     * contact.
+     */
+    public static Uri createContact(ContentResolver contentResolver,
+                                    String name,
+                                    String phoneNumber,
+                                    byte[] photo) {
         ContentValues values = new ContentValues();
         Uri rawContactUri = contentResolver.insert(ContactsContract.RawContacts.CONTENT_URI,
                 values);
         long rawContactId = ContentUris.parseId(rawContactUri);
         insertStructuredName(contentResolver, rawContactId, name, values);
+        if (photo != null) {
+            insertPhoto(contentResolver, rawContactId, photo);
+        }
         return insertPhoneNumber(contentResolver, rawContactId,
                 phoneNumber,
                 ContactsContract.CommonDataKinds.Phone.TYPE_MOBILE);
@@ -83,6 +99,16 @@ public class ContactTestUtils {
         contentResolver.insert(ContactsContract.Data.CONTENT_URI, values);
     }
 
+    private static void insertPhoto(ContentResolver contentResolver,
+                                    long rawContactId,
+                                    byte[] photo) {
+        ContentValues values = new ContentValues();
+        values.put(ContactsContract.Data.RAW_CONTACT_ID, rawContactId);
+        values.put(ContactsContract.Data.MIMETYPE, Photo.CONTENT_ITEM_TYPE);
+        values.put(Photo.PHOTO, photo);
+        contentResolver.insert(ContactsContract.Data.CONTENT_URI, values);
+    }
+
     private static Uri insertPhoneNumber(ContentResolver contentResolver,
                                          long rawContactId,
                                          String phoneNumber,
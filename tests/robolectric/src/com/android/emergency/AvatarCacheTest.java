@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link AvatarCache}. */
+@RunWith(RobolectricTestRunner.class)
+public final class AvatarCacheTest {
+    private static final int SIZE = 32;
+
+    private AvatarCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new AvatarCache(1024 * 1024);
+    }
+
+    @Test
+    public void testSameSourceAndSize_reusesRenderedBitmap() {
+        Bitmap source = createSource(Color.RED);
+
+        Bitmap first = mCache.getRenderedBitmap(source, SIZE);
+        Bitmap second = mCache.getRenderedBitmap(source, SIZE);
+
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(first.getWidth()).isEqualTo(SIZE);
+        assertThat(mCache.getHitCount()).isEqualTo(1);
+        assertThat(mCache.getMissCount()).isEqualTo(1);
+        assertThat(mCache.getHitRate()).isEqualTo(0.5f);
+    }
+
+    @Test
+    public void testEqualContentFromAnotherBitmap_rendersAgain() {
+        Bitmap first = mCache.getRenderedBitmap(createSource(Color.RED), SIZE);
+        Bitmap second = mCache.getRenderedBitmap(createSource(Color.RED), SIZE);
+
+        // Sources are not hashed: only callers can tell that two bitmaps are the same picture.
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(mCache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCallerId_keysCache() {
+        Bitmap first = mCache.getRenderedBitmap("photo:1", createSource(Color.RED), SIZE);
+
+        assertThat(mCache.getCachedBitmap("photo:1", SIZE)).isSameInstanceAs(first);
+        assertThat(mCache.getCachedBitmap("photo:2", SIZE)).isNull();
+        assertThat(mCache.getCachedBitmap("photo:1", SIZE * 2)).isNull();
+    }
+
+    @Test
+    public void testUserIconId_changesWhenInvalidated() {
+        String before = mCache.getUserIconId(0);
+        mCache.getRenderedBitmap(before, createSource(Color.RED), SIZE);
+
+        mCache.invalidateUserIcons();
+
+        assertThat(mCache.getUserIconId(0)).isNotEqualTo(before);
+        assertThat(mCache.getCachedBitmap(mCache.getUserIconId(0), SIZE)).isNull();
+        assertThat(mCache.getUserIconId(1)).isNotEqualTo(mCache.getUserIconId(0));
+    }
+
+    @Test
+    public void testDifferentSize_rendersAgain() {
+        Bitmap source = createSource(Color.RED);
+
+        mCache.getRenderedBitmap(source, SIZE);
+        mCache.getRenderedBitmap(source, SIZE * 2);
+
+        assertThat(mCache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testTrimMemory_evictsEverything() {
+        mCache.getRenderedBitmap(createSource(Color.RED), SIZE);
+        assertThat(mCache.getSizeBytes()).isGreaterThan(0);
+
+        mCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+
+        assertThat(mCache.getSizeBytes()).isEqualTo(0);
+    }
+
+    private static Bitmap createSource(int color) {
+        Bitmap source = Bitmap.createBitmap(SIZE * 4, SIZE * 3, Bitmap.Config.ARGB_8888);
+        source.eraseColor(color);
+        return source;
+    }
+}
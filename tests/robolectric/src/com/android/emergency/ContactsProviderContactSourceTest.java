@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+import com.android.emergency.testing.BinderCallCounter;
+import com.android.emergency.testing.CountingContactsProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Unit tests for {@link ContactsProviderContactSource}. */
+@RunWith(RobolectricTestRunner.class)
+public final class ContactsProviderContactSourceTest {
+    private static Runnable sOnQuery;
+
+    private ContactsProviderContactSource mSource;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(HookedContactsProvider.class,
+                ContactsContract.AUTHORITY);
+        EmergencyInfoPrefetcher.clear();
+        mSource = new ContactsProviderContactSource(RuntimeEnvironment.application);
+        BinderCallCounter.reset();
+    }
+
+    @After
+    public void tearDown() {
+        sOnQuery = null;
+    }
+
+    @Test
+    public void testGetContact_cachesLoadedContact() {
+        EmergencyContactManager.Contact first = mSource.getContact(phoneUri(1));
+        int queries = BinderCallCounter.getTotal();
+
+        EmergencyContactManager.Contact second = mSource.getContact(phoneUri(1));
+
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(BinderCallCounter.getTotal()).isEqualTo(queries);
+    }
+
+    @Test
+    public void testGetContact_changeDuringLoad_doesNotCacheStaleContact() {
+        sOnQuery = () -> {
+            sOnQuery = null;
+            mSource.onContactsProviderChanged();
+        };
+        EmergencyContactManager.Contact stale = mSource.getContact(phoneUri(1));
+
+        EmergencyContactManager.Contact reloaded = mSource.getContact(phoneUri(1));
+
+        assertThat(reloaded).isNotSameInstanceAs(stale);
+    }
+
+    @Test
+    public void testGetContact_cacheIsBounded() {
+        EmergencyContactManager.Contact oldest = mSource.getContact(phoneUri(0));
+        for (int i = 1; i <= ContactsProviderContactSource.MAX_CACHED_CONTACTS; i++) {
+            mSource.getContact(phoneUri(i));
+        }
+
+        assertThat(mSource.getContact(phoneUri(0))).isNotSameInstanceAs(oldest);
+    }
+
+    private static Uri phoneUri(long dataId) {
+        return Uri.withAppendedPath(ContactsContract.Data.CONTENT_URI, Long.toString(dataId));
+    }
+
+    /** Runs {@link #sOnQuery} while answering a query, to interleave a change with a load. */
+    public static class HookedContactsProvider extends CountingContactsProvider {
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            if (sOnQuery != null) {
+                sOnQuery.run();
+            }
+            return super.query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.preference.PreferenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Unit tests for {@link EmergencyInfoPrefetcher}. */
+@RunWith(RobolectricTestRunner.class)
+public final class EmergencyInfoPrefetcherTest {
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        EmergencyInfoPrefetcher.resetForTesting();
+    }
+
+    @After
+    public void tearDown() {
+        EmergencyInfoPrefetcher.resetForTesting();
+    }
+
+    @Test
+    public void testLaunchWithoutPrefetch_isCold() {
+        assertThat(EmergencyInfoPrefetcher.onViewInfoLaunched(mContext)).isNull();
+
+        assertThat(EmergencyInfoPrefetcher.getColdLaunchCount()).isEqualTo(1);
+        assertThat(EmergencyInfoPrefetcher.getWarmLaunchCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLaunchAfterPrefetch_isWarm() {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(PreferenceKeys.KEY_ALLERGIES, "Peanuts").commit();
+
+        EmergencyInfoPrefetcher.prefetch(mContext);
+        EmergencyInfoPrefetcher.Snapshot snapshot =
+                EmergencyInfoPrefetcher.onViewInfoLaunched(mContext);
+
+        assertThat(snapshot).isNotNull();
+        assertThat(snapshot.hasInfo()).isTrue();
+        assertThat(snapshot.hasContacts()).isFalse();
+        assertThat(snapshot.getUserIcon()).isNotNull();
+        assertThat(EmergencyInfoPrefetcher.getWarmLaunchCount()).isEqualTo(1);
+        assertThat(EmergencyInfoPrefetcher.getColdLaunchCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLaunchAfterStalePrefetch_isCold() {
+        EmergencyInfoPrefetcher.prefetch(mContext);
+        SystemClock.setCurrentTimeMillis(
+                SystemClock.elapsedRealtime() + EmergencyInfoPrefetcher.MAX_SNAPSHOT_AGE_MS + 1);
+
+        assertThat(EmergencyInfoPrefetcher.onViewInfoLaunched(mContext)).isNull();
+        assertThat(EmergencyInfoPrefetcher.getColdLaunchCount()).isEqualTo(1);
+    }
+}
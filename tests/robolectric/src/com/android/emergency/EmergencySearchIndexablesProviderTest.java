@@ -17,10 +17,16 @@ package com.android.emergency;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import android.content.Context;
 import android.database.Cursor;
+import android.provider.ContactsContract;
 import android.provider.SearchIndexablesContract;
 
+import androidx.preference.PreferenceManager;
+
 import com.android.emergency.R;
+import com.android.emergency.testing.BinderCallCounter;
+import com.android.emergency.testing.CountingContactsProvider;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -28,16 +34,20 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 
 /** Unit tests for {@link EmergencySearchIndexablesProvider}. */
 @RunWith(RobolectricTestRunner.class)
 public final class EmergencySearchIndexablesProviderTest {
+    private Context mContext;
     private EmergencySearchIndexablesProvider mProvider;
 
     @Before
     public void setUp() {
-        mProvider = new EmergencySearchIndexablesProvider();
+        mContext = RuntimeEnvironment.application;
+        mProvider = Robolectric.setupContentProvider(EmergencySearchIndexablesProvider.class);
     }
 
     @Test
@@ -68,12 +78,54 @@ public final class EmergencySearchIndexablesProviderTest {
         assertThat(cursor.getCount()).isEqualTo(0);
     }
 
+    @Test
+    public void testQueryRawData_readsOnlyTheNameOfEachContact() {
+        Robolectric.setupContentProvider(CountingContactsProvider.class,
+                ContactsContract.AUTHORITY);
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(PreferenceKeys.KEY_EMERGENCY_CONTACTS,
+                        "content://com.android.contacts/data/1")
+                .commit();
+        BinderCallCounter.reset();
+
+        Cursor cursor = mProvider.queryRawData(SearchIndexablesContract.INDEXABLES_RAW_COLUMNS);
+
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.moveToFirst();
+        assertThat(cursor.getString(SearchIndexablesContract.COLUMN_INDEX_RAW_TITLE))
+                .isEqualTo("Jane");
+        // No separate existence check, and no photo lookup.
+        assertThat(BinderCallCounter.getTotal()).isEqualTo(1);
+    }
+
     @Test
     public void testQueryNonIndexableKeys() {
         Cursor cursor = mProvider.queryNonIndexableKeys(
                 SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS);
         assertThat(cursor.getColumnNames()).isEqualTo(
                 SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS);
-        assertThat(cursor.getCount()).isEqualTo(0);
+
+        Set<String> keys = new HashSet<>();
+        while (cursor.moveToNext()) {
+            keys.add(cursor.getString(0));
+        }
+        // No contact picker is installed, so adding a contact doesn't apply, and without
+        // contacts neither does alerting them.
+        assertThat(keys).containsExactly("footer_preference",
+                PreferenceKeys.KEY_ADD_EMERGENCY_CONTACT,
+                PreferenceKeys.KEY_ALERT_FROM_LOCK_SCREEN);
+    }
+
+    @Test
+    public void testQueryNonIndexableKeys_withContact_indexesAlertFromLockScreen() {
+        Robolectric.setupContentProvider(CountingContactsProvider.class,
+                ContactsContract.AUTHORITY);
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(PreferenceKeys.KEY_EMERGENCY_CONTACTS,
+                        "content://com.android.contacts/data/1")
+                .commit();
+
+        assertThat(EmergencySearchIndexablesProvider.getNonIndexableKeys(mContext))
+                .doesNotContain(PreferenceKeys.KEY_ALERT_FROM_LOCK_SCREEN);
     }
 }
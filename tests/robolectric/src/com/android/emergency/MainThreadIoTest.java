@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.ContactsContract;
+
+import androidx.preference.PreferenceManager;
+
+import com.android.emergency.edit.EditInfoActivity;
+import com.android.emergency.edit.EditMedicalInfoActivity;
+import com.android.emergency.testing.MainThreadIoRule;
+import com.android.emergency.view.ViewInfoActivity;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Fails when a user-facing screen does disk or ContentResolver work on the main thread.
+ *
+ * <p>The call sites passed to the rule are known offenders that are being moved off the main
+ * thread. Remove entries as they are fixed; do not add new ones. The audit relies on the
+ * StrictMode penalty listener, which needs P.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = Build.VERSION_CODES.P)
+public final class MainThreadIoTest {
+    @Rule
+    public final MainThreadIoRule mMainThreadIo = new MainThreadIoRule(
+            "EmergencyContactManager#loadContact",
+            "EmergencyContactManager#phoneExists",
+            "PreferenceUtils#setSettingsSuggestionState");
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        Uri phoneUri = Uri.withAppendedPath(ContactsContract.Data.CONTENT_URI, "1");
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(PreferenceKeys.KEY_ALLERGIES, "Peanuts")
+                .putString(PreferenceKeys.KEY_EMERGENCY_CONTACTS, phoneUri.toString())
+                .commit();
+    }
+
+    @Test
+    public void testViewInfoActivity() {
+        Robolectric.buildActivity(ViewInfoActivity.class).setup();
+        mMainThreadIo.assertNoMainThreadIo("ViewInfoActivity");
+    }
+
+    @Test
+    public void testEditInfoActivity() {
+        Robolectric.buildActivity(EditInfoActivity.class).setup();
+        mMainThreadIo.assertNoMainThreadIo("EditInfoActivity");
+    }
+
+    @Test
+    public void testEditMedicalInfoActivity() {
+        Robolectric.buildActivity(EditMedicalInfoActivity.class).setup();
+        mMainThreadIo.assertNoMainThreadIo("EditMedicalInfoActivity");
+    }
+}
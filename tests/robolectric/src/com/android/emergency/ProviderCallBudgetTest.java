@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.app.Activity;
+import android.content.Context;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+import androidx.preference.PreferenceManager;
+
+import com.android.emergency.edit.EditInfoActivity;
+import com.android.emergency.edit.EditMedicalInfoActivity;
+import com.android.emergency.testing.BinderCallCounter;
+import com.android.emergency.testing.CountingContactsProvider;
+import com.android.emergency.testing.CountingPackageManager;
+import com.android.emergency.util.ContactListCodec;
+import com.android.emergency.view.ViewInfoActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.ParameterizedRobolectricTestRunner.Parameters;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Caps the number of ContentResolver and PackageManager calls each screen makes on the main
+ * thread while starting, for a growing number of emergency contacts.
+ *
+ * <p>Each of these is a binder call on a device. The budgets are {@code base + perContact * N};
+ * if a change legitimately needs more, raise the budget in the same change and say why.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(shadows = CountingPackageManager.class)
+public final class ProviderCallBudgetTest {
+    private static final int VIEW_INFO_BASE = 10;
+    private static final int VIEW_INFO_PER_CONTACT = 5;
+    private static final int EDIT_INFO_BASE = 10;
+    private static final int EDIT_INFO_PER_CONTACT = 6;
+    private static final int EDIT_MEDICAL_INFO_BASE = 5;
+
+    @Parameters(name = "{0} contacts")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][] {{1}, {10}, {100}});
+    }
+
+    private final int mContactCount;
+
+    public ProviderCallBudgetTest(int contactCount) {
+        mContactCount = contactCount;
+    }
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(CountingContactsProvider.class,
+                ContactsContract.AUTHORITY);
+        Context context = RuntimeEnvironment.application;
+        List<Uri> contacts = new ArrayList<>(mContactCount);
+        for (int i = 1; i <= mContactCount; i++) {
+            contacts.add(Uri.withAppendedPath(ContactsContract.Data.CONTENT_URI,
+                    String.valueOf(i)));
+        }
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(PreferenceKeys.KEY_ALLERGIES, "Peanuts")
+                .putString(PreferenceKeys.KEY_EMERGENCY_CONTACTS,
+                        ContactListCodec.encode(contacts))
+                .commit();
+        BinderCallCounter.reset();
+    }
+
+    @Test
+    public void testViewInfoActivity() {
+        assertWithinBudget(ViewInfoActivity.class,
+                VIEW_INFO_BASE + VIEW_INFO_PER_CONTACT * mContactCount);
+    }
+
+    @Test
+    public void testEditInfoActivity() {
+        assertWithinBudget(EditInfoActivity.class,
+                EDIT_INFO_BASE + EDIT_INFO_PER_CONTACT * mContactCount);
+    }
+
+    @Test
+    public void testEditMedicalInfoActivity() {
+        // Doesn't show contacts: must not scale with them.
+        assertWithinBudget(EditMedicalInfoActivity.class, EDIT_MEDICAL_INFO_BASE);
+    }
+
+    private void assertWithinBudget(Class<? extends Activity> activityClass, int budget) {
+        Robolectric.buildActivity(activityClass).setup();
+        assertWithMessage(activityClass.getSimpleName() + " with " + mContactCount
+                + " contacts made " + BinderCallCounter.describe())
+                .that(BinderCallCounter.getTotal())
+                .isAtMost(budget);
+    }
+}
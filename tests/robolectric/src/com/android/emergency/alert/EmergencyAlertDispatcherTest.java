@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.alert;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.SmsManager;
+
+import com.android.emergency.alert.EmergencyAlertDispatcher.State;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Unit tests for {@link EmergencyAlertDispatcher}. */
+@RunWith(RobolectricTestRunner.class)
+public final class EmergencyAlertDispatcherTest {
+    private static final String MESSAGE = "Help!";
+
+    private FakeSmsSender mSender;
+    private final List<String> mFinished = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mSender = new FakeSmsSender();
+    }
+
+    @Test
+    public void testSend_sendsOnceToEachNumber() {
+        EmergencyAlertDispatcher dispatcher = createDispatcher(Collections.emptyList());
+
+        dispatcher.send(Arrays.asList(
+                "650-555-0100", "+1 (650) 555-0100", "650 555 0101", ""), MESSAGE);
+        idle();
+
+        assertThat(mSender.mDestinations).containsExactly("+16505550100", "+16505550101")
+                .inOrder();
+        assertThat(dispatcher.getStates()).containsExactly(
+                "+16505550100", State.SENDING, "+16505550101", State.SENDING);
+    }
+
+    @Test
+    public void testSend_boundsConcurrentSends() {
+        EmergencyAlertDispatcher dispatcher = createDispatcher(Collections.emptyList());
+
+        dispatcher.send(numbers(EmergencyAlertDispatcher.MAX_CONCURRENT_SENDS + 2), MESSAGE);
+        idle();
+        assertThat(mSender.mDestinations).hasSize(EmergencyAlertDispatcher.MAX_CONCURRENT_SENDS);
+
+        mSender.complete(0, Activity.RESULT_OK);
+        idle();
+        assertThat(mSender.mDestinations)
+                .hasSize(EmergencyAlertDispatcher.MAX_CONCURRENT_SENDS + 1);
+    }
+
+    @Test
+    public void testSend_waitsForRateLimit() {
+        // Two parts per second; each message is a single part.
+        EmergencyAlertDispatcher dispatcher = createDispatcher(
+                Collections.singletonList(new RateLimiter(2, 1_000)));
+
+        dispatcher.send(numbers(3), MESSAGE);
+        idle();
+        assertThat(mSender.mDestinations).hasSize(2);
+
+        idleFor(999);
+        assertThat(mSender.mDestinations).hasSize(2);
+        idleFor(1);
+        assertThat(mSender.mDestinations).hasSize(3);
+    }
+
+    @Test
+    public void testSend_multipartMessage_countsEveryPart() {
+        EmergencyAlertDispatcher dispatcher = createDispatcher(
+                Collections.singletonList(new RateLimiter(3, 1_000)));
+        String message = new String(new char[FakeSmsSender.PART_LENGTH * 2]).replace('\0', 'a');
+
+        dispatcher.send(numbers(2), message);
+        idle();
+
+        assertThat(mSender.mParts.get(0)).hasSize(2);
+        assertThat(mSender.mDestinations).hasSize(1);
+    }
+
+    @Test
+    public void testSend_retriesWithBackoff() {
+        EmergencyAlertDispatcher dispatcher = createDispatcher(Collections.emptyList());
+        dispatcher.send(numbers(1), MESSAGE);
+        idle();
+
+        mSender.complete(0, SmsManager.RESULT_ERROR_NO_SERVICE);
+        idle();
+        assertThat(dispatcher.getStates()).containsExactly("0", State.WAITING_TO_RETRY);
+
+        idleFor(EmergencyAlertDispatcher.INITIAL_BACKOFF_MILLIS - 1);
+        assertThat(mSender.mDestinations).hasSize(1);
+        idleFor(1);
+        assertThat(mSender.mDestinations).containsExactly("0", "0");
+
+        mSender.complete(1, Activity.RESULT_OK);
+        idle();
+        assertThat(dispatcher.getStates()).containsExactly("0", State.SENT);
+        assertThat(mFinished).containsExactly("1/1");
+    }
+
+    @Test
+    public void testSend_givesUpAfterMaxAttempts() {
+        EmergencyAlertDispatcher dispatcher = createDispatcher(Collections.emptyList());
+        dispatcher.send(numbers(1), MESSAGE);
+        idle();
+
+        for (int attempt = 1; attempt < EmergencyAlertDispatcher.MAX_ATTEMPTS; attempt++) {
+            mSender.complete(attempt - 1, SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+            idleFor(EmergencyAlertDispatcher.getBackoffMillis(attempt));
+        }
+        mSender.complete(EmergencyAlertDispatcher.MAX_ATTEMPTS - 1,
+                SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+        idle();
+
+        assertThat(mSender.mDestinations).hasSize(EmergencyAlertDispatcher.MAX_ATTEMPTS);
+        assertThat(dispatcher.getStates()).containsExactly("0", State.FAILED);
+        assertThat(mFinished).containsExactly("0/1");
+    }
+
+    @Test
+    public void testSend_permanentFailure_isNotRetried() {
+        EmergencyAlertDispatcher dispatcher = createDispatcher(Collections.emptyList());
+        dispatcher.send(numbers(2), MESSAGE);
+        idle();
+
+        mSender.complete(0, SmsManager.RESULT_ERROR_NULL_PDU);
+        mSender.complete(1, Activity.RESULT_OK);
+        idleFor(EmergencyAlertDispatcher.INITIAL_BACKOFF_MILLIS);
+
+        assertThat(mSender.mDestinations).hasSize(2);
+        assertThat(dispatcher.getStates()).containsExactly("0", State.FAILED, "1", State.SENT);
+        assertThat(mFinished).containsExactly("1/2");
+    }
+
+    @Test
+    public void testSend_whileInProgress_addsNewNumbersOnly() {
+        EmergencyAlertDispatcher dispatcher = createDispatcher(Collections.emptyList());
+        dispatcher.send(numbers(1), MESSAGE);
+        idle();
+
+        dispatcher.send(numbers(2), MESSAGE);
+        idle();
+
+        assertThat(mSender.mDestinations).containsExactly("0", "1").inOrder();
+    }
+
+    @Test
+    public void testResume_afterProcessDied_sendsToRemainingRecipientsOnly() {
+        EmergencyAlertDispatcher dispatcher = createDispatcher(Collections.emptyList());
+        dispatcher.send(numbers(3), MESSAGE);
+        idle();
+        mSender.complete(0, Activity.RESULT_OK);
+        mSender.complete(1, SmsManager.RESULT_ERROR_NULL_PDU);
+        idle();
+
+        // A new process: new dispatcher and sender, same saved state.
+        FakeSmsSender sender = new FakeSmsSender();
+        EmergencyAlertDispatcher restarted =
+                createDispatcher(Collections.emptyList(), sender);
+        restarted.resume();
+        idle();
+
+        assertThat(sender.mDestinations).containsExactly("2");
+        assertThat(restarted.getStates()).containsExactly(
+                "0", State.SENT, "1", State.FAILED, "2", State.SENDING).inOrder();
+
+        sender.complete(0, Activity.RESULT_OK);
+        idle();
+        assertThat(mFinished).containsExactly("2/3");
+
+        // Finished alerts aren't resumed again.
+        createDispatcher(Collections.emptyList(), new FakeSmsSender()).resume();
+        idle();
+        assertThat(mFinished).containsExactly("2/3", "0/0").inOrder();
+    }
+
+    @Test
+    public void testResume_afterProcessDied_keepsRateLimitHistory() {
+        // Two parts per second; each message is a single part.
+        EmergencyAlertDispatcher dispatcher = createDispatcher(
+                Collections.singletonList(new RateLimiter(2, 1_000)));
+        dispatcher.send(numbers(3), MESSAGE);
+        idle();
+        mSender.complete(0, Activity.RESULT_OK);
+        mSender.complete(1, Activity.RESULT_OK);
+        idle();
+
+        FakeSmsSender sender = new FakeSmsSender();
+        createDispatcher(Collections.singletonList(new RateLimiter(2, 1_000)), sender).resume();
+        idle();
+        assertThat(sender.mDestinations).isEmpty();
+
+        idleFor(999);
+        assertThat(sender.mDestinations).isEmpty();
+        idleFor(1);
+        assertThat(sender.mDestinations).containsExactly("2");
+    }
+
+    @Test
+    public void testSend_afterProcessDied_doesNotResendToSavedRecipients() {
+        createDispatcher(Collections.emptyList()).send(numbers(2), MESSAGE);
+        idle();
+        mSender.complete(0, Activity.RESULT_OK);
+        idle();
+
+        FakeSmsSender sender = new FakeSmsSender();
+        createDispatcher(Collections.emptyList(), sender).send(numbers(3), MESSAGE);
+        idle();
+
+        assertThat(sender.mDestinations).containsExactly("1", "2").inOrder();
+    }
+
+    @Test
+    public void testGetBackoffMillis_doublesUpToCap() {
+        assertThat(EmergencyAlertDispatcher.getBackoffMillis(1))
+                .isEqualTo(EmergencyAlertDispatcher.INITIAL_BACKOFF_MILLIS);
+        assertThat(EmergencyAlertDispatcher.getBackoffMillis(2))
+                .isEqualTo(EmergencyAlertDispatcher.INITIAL_BACKOFF_MILLIS * 2);
+        assertThat(EmergencyAlertDispatcher.getBackoffMillis(30)).isEqualTo(60_000);
+    }
+
+    private EmergencyAlertDispatcher createDispatcher(List<RateLimiter> rateLimiters) {
+        return createDispatcher(rateLimiters, mSender);
+    }
+
+    private EmergencyAlertDispatcher createDispatcher(List<RateLimiter> rateLimiters,
+            FakeSmsSender sender) {
+        EmergencyAlertDispatcher dispatcher = new EmergencyAlertDispatcher(
+                RuntimeEnvironment.application, sender, new Handler(Looper.getMainLooper()),
+                rateLimiters);
+        dispatcher.setListener((sent, total) -> mFinished.add(sent + "/" + total));
+        return dispatcher;
+    }
+
+    private static List<String> numbers(int count) {
+        List<String> numbers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            numbers.add(String.valueOf(i));
+        }
+        return numbers;
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static void idleFor(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Records the messages sent, and leaves it to the test to say how each send went. */
+    private static final class FakeSmsSender implements SmsSender {
+        static final int PART_LENGTH = 10;
+
+        final List<String> mDestinations = new ArrayList<>();
+        final List<ArrayList<String>> mParts = new ArrayList<>();
+        final List<Callback> mCallbacks = new ArrayList<>();
+
+        @Override
+        public ArrayList<String> divideMessage(String text) {
+            ArrayList<String> parts = new ArrayList<>();
+            for (int i = 0; i < text.length(); i += PART_LENGTH) {
+                parts.add(text.substring(i, Math.min(text.length(), i + PART_LENGTH)));
+            }
+            return parts;
+        }
+
+        @Override
+        public void sendMultipartTextMessage(String destination, ArrayList<String> parts,
+                Callback callback) {
+            mDestinations.add(destination);
+            mParts.add(parts);
+            mCallbacks.add(callback);
+        }
+
+        void complete(int send, int resultCode) {
+            mCallbacks.get(send).onSent(resultCode);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.overlay;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Unit tests for {@link FeatureFactory}. */
+@RunWith(RobolectricTestRunner.class)
+public final class FeatureFactoryTest {
+    private static final int THREADS = 8;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        FeatureFactory.sFactory = null;
+    }
+
+    @After
+    public void tearDown() {
+        FeatureFactory.sFactory = null;
+    }
+
+    @Test
+    public void testGetFactory_createsDefaultAndReportsCost() {
+        FeatureFactory factory = FeatureFactory.getFactory(mContext);
+
+        assertThat(factory).isInstanceOf(FeatureFactoryImpl.class);
+        assertThat(FeatureFactory.getFactory(mContext)).isSameAs(factory);
+        assertThat(FeatureFactory.getCreationCostMicros()).isAtLeast(0L);
+    }
+
+    @Test
+    public void testGetFactory_concurrentCallers_getSameInstance() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<FeatureFactory>> results = new ArrayList<>();
+        Callable<FeatureFactory> getFactory = () -> {
+            start.await();
+            return FeatureFactory.getFactory(mContext);
+        };
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(getFactory));
+        }
+
+        start.countDown();
+
+        FeatureFactory first = results.get(0).get();
+        for (Future<FeatureFactory> result : results) {
+            assertThat(result.get()).isSameAs(first);
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.emergency.R;
+import com.android.emergency.util.PrefixIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Unit tests for {@link AutocompleteEditTextPreference}. */
+@RunWith(RobolectricTestRunner.class)
+public final class AutocompleteEditTextPreferenceTest {
+    private Context mContext;
+    private AutocompleteEditTextPreference.ListTokenizer mTokenizer;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mTokenizer = new AutocompleteEditTextPreference.ListTokenizer();
+    }
+
+    @Test
+    public void testGetIndex_loadsBundledListsOnce() {
+        PrefixIndex medications =
+                AutocompleteEditTextPreference.getIndex(mContext, R.raw.medication_suggestions);
+        PrefixIndex allergies =
+                AutocompleteEditTextPreference.getIndex(mContext, R.raw.allergy_suggestions);
+
+        assertThat(medications.query("ibu", AutocompleteEditTextPreference.MAX_SUGGESTIONS))
+                .containsExactly("Ibuprofen");
+        assertThat(allergies.query("pean", AutocompleteEditTextPreference.MAX_SUGGESTIONS))
+                .containsExactly("Peanuts");
+        assertThat(medications.isTruncated()).isFalse();
+        assertThat(AutocompleteEditTextPreference.getIndex(mContext, R.raw.medication_suggestions))
+                .isSameInstanceAs(medications);
+    }
+
+    @Test
+    public void testTokenizer_findsItemAroundCursor() {
+        String text = "Aspirin, Ibu\nPea";
+
+        assertThat(mTokenizer.findTokenStart(text, 12)).isEqualTo(9);
+        assertThat(mTokenizer.findTokenEnd(text, 9)).isEqualTo(12);
+        assertThat(mTokenizer.findTokenStart(text, text.length())).isEqualTo(13);
+        assertThat(mTokenizer.findTokenEnd(text, 13)).isEqualTo(text.length());
+    }
+
+    @Test
+    public void testTokenizer_terminateToken() {
+        assertThat(mTokenizer.terminateToken("Ibuprofen").toString()).isEqualTo("Ibuprofen, ");
+        assertThat(mTokenizer.terminateToken("Ibuprofen, ").toString()).isEqualTo("Ibuprofen, ");
+    }
+}
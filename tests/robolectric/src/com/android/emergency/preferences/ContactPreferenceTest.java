@@ -26,6 +26,10 @@ import android.content.Intent;
 import android.net.Uri;
 import com.android.emergency.ContactTestUtils;
 import com.android.emergency.EmergencyContactManager;
+import com.android.emergency.R;
+import com.android.emergency.testing.FakeFeatureFactory;
+import com.android.emergency.testing.InMemoryContactSource;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -35,6 +39,7 @@ import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowToast;
 
 /** Unit tests for {@link ContactPreference}. */
 @RunWith(RobolectricTestRunner.class)
@@ -65,6 +70,24 @@ public class ContactPreferenceTest {
         mPreference = new ContactPreference(activity, mPhoneUri, mContactFactory);
     }
 
+    @After
+    public void tearDown() {
+        FakeFeatureFactory.uninstall();
+    }
+
+    @Test
+    public void testDefaultContactFactory_loadsFromContactSource() {
+        InMemoryContactSource source = new InMemoryContactSource();
+        Uri phoneUri = source.addContact("Jane", "+15555550100");
+        FakeFeatureFactory.install(source);
+
+        ContactPreference preference =
+                new ContactPreference(Robolectric.setupActivity(Activity.class), phoneUri);
+
+        assertThat(preference.getContact().getName()).isEqualTo("Jane");
+        assertThat(source.getLookupCount()).isEqualTo(1);
+    }
+
     @Test
     public void testContactPreference() {
         assertThat(mPreference.getPhoneUri()).isEqualTo(mPhoneUri);
@@ -76,7 +99,49 @@ public class ContactPreferenceTest {
             preference -> {
                 // Do nothing
             });
+        assertThat(mPreference.getRemoveContactDialog()).isNull();
+    }
+
+    @Test
+    public void testShowRemoveContactDialog_createsDialogOnFirstUse() {
+        mPreference.showRemoveContactDialog(null);
+        assertThat(mPreference.getRemoveContactDialog()).isNull();
+
+        mPreference.setRemoveContactPreferenceListener(
+            preference -> {
+                // Do nothing
+            });
+        mPreference.showRemoveContactDialog(null);
+
         assertThat(mPreference.getRemoveContactDialog()).isNotNull();
+        assertThat(mPreference.getRemoveContactDialog().isShowing()).isTrue();
+    }
+
+    @Test
+    public void testCallTarget_preparedAtBind() {
+        when(mContact.getPhoneNumber()).thenReturn("+1 (650) 555-0100");
+        mPreference.setPhoneUri(mPhoneUri);
+
+        assertThat(mPreference.getCallUri()).isEqualTo(Uri.parse("tel:+16505550100"));
+    }
+
+    @Test
+    public void testCallTarget_notDialable() {
+        when(mContact.getPhoneNumber()).thenReturn("()");
+        mPreference.setPhoneUri(mPhoneUri);
+
+        assertThat(mPreference.getCallUri()).isNull();
+        mPreference.callContact();
+        assertThat(mPreference.getLastCallLatencyNanos()).isEqualTo(0);
+        assertThat(ShadowToast.getTextOfLatestToast()).isEqualTo(
+                RuntimeEnvironment.application.getString(R.string.fail_call_contact));
+    }
+
+    @Test
+    public void testCallContact_recordsLatency() {
+        mPreference.callContact();
+
+        assertThat(mPreference.getLastCallLatencyNanos()).isGreaterThan(0L);
     }
 
     @Test
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/** Unit tests for {@link EditUserPhotoController}. */
+@RunWith(RobolectricTestRunner.class)
+public final class EditUserPhotoControllerTest {
+
+    @Test
+    public void testCalculateInSampleSize_sourceSmallerThanTarget_noSubsampling() {
+        assertThat(EditUserPhotoController.calculateInSampleSize(500, 720)).isEqualTo(1);
+    }
+
+    @Test
+    public void testCalculateInSampleSize_neverGoesBelowTarget() {
+        // A 50 MP camera photo has a ~6000px short side.
+        int sampleSize = EditUserPhotoController.calculateInSampleSize(6000, 720);
+
+        assertThat(sampleSize).isEqualTo(8);
+        assertThat(6000 / sampleSize).isAtLeast(720);
+        assertThat(6000 / (sampleSize * 2)).isLessThan(720);
+    }
+
+    @Test
+    public void testCalculateInSampleSize_exactMultiple() {
+        assertThat(EditUserPhotoController.calculateInSampleSize(2880, 720)).isEqualTo(4);
+    }
+
+    @Test
+    public void testStagePhoto_unreadableSource_failsAndLeavesNoFile() throws IOException {
+        Context context = RuntimeEnvironment.application;
+        File destination = new File(context.getCacheDir(), "staged.jpg");
+        // A stale copy from an earlier pick must not be handed to the crop activity either.
+        try (FileOutputStream out = new FileOutputStream(destination)) {
+            out.write(new byte[] {1, 2, 3});
+        }
+
+        boolean staged = EditUserPhotoController.stagePhoto(context,
+                Uri.parse("content://com.android.emergency.missing/photo"), destination);
+
+        assertThat(staged).isFalse();
+        assertThat(destination.exists()).isFalse();
+        assertThat(new File(destination.getPath() + ".tmp").exists()).isFalse();
+    }
+}
@@ -22,7 +22,11 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import android.content.ContextWrapper;
@@ -36,10 +40,14 @@ import androidx.preference.PreferenceScreen;
 import com.android.emergency.ContactTestUtils;
 import com.android.emergency.EmergencyContactManager;
 import com.android.emergency.PreferenceKeys;
+import com.android.emergency.R;
+import com.android.emergency.testing.FakeFeatureFactory;
+import com.android.emergency.testing.InMemoryContactSource;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -47,6 +55,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowToast;
 
 /** Unit tests for {@link EmergencyContactsPreference}. */
 @RunWith(RobolectricTestRunner.class)
@@ -76,6 +85,11 @@ public class EmergencyContactsPreferenceTest {
         prefRoot.addPreference(mPreference);
     }
 
+    @After
+    public void tearDown() {
+        FakeFeatureFactory.uninstall();
+    }
+
     @Test
     public void testDefaultProperties() {
         assertThat(mPreference.isPersistent()).isTrue();
@@ -162,4 +176,118 @@ public class EmergencyContactsPreferenceTest {
         ContactPreference contactPreference = (ContactPreference) mPreference.getPreference(0);
         assertThat(contactPreference.getPhoneUri()).isEqualTo(contactUriJohn);
     }
+
+    @Test
+    public void testSetEmergencyContacts_dropsContactsThatFailToLoad() {
+        final Uri contactUriJane = Uri.parse("tel:456");
+        final Uri contactUriBroken = Uri.parse("tel:000");
+        final Uri contactUriJohn = Uri.parse("tel:123");
+        mockContact(contactUriJane, "Jane");
+        mockContact(contactUriJohn, "John");
+        when(mContactFactory.getContact(any(), eq(contactUriBroken)))
+                .thenThrow(new IllegalArgumentException());
+
+        final List<Uri> emergencyContacts = new ArrayList<>();
+        emergencyContacts.add(contactUriJane);
+        emergencyContacts.add(contactUriBroken);
+        emergencyContacts.add(contactUriJohn);
+        emergencyContacts.add(contactUriJane);
+        mPreference.setEmergencyContacts(emergencyContacts);
+
+        assertThat(mPreference.getEmergencyContacts())
+                .containsExactly(contactUriJane, contactUriJohn).inOrder();
+        assertThat(mPreference.getPreferenceCount()).isEqualTo(2);
+        assertThat(((ContactPreference) mPreference.getPreference(1)).getPhoneUri())
+                .isEqualTo(contactUriJohn);
+    }
+
+    @Test
+    public void testSetEmergencyContacts_removingLastContact_doesNotRebindOthers() {
+        final List<Uri> emergencyContacts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final Uri contactUri = Uri.parse("tel:" + i);
+            mockContact(contactUri, "Contact " + i);
+            emergencyContacts.add(contactUri);
+        }
+        mPreference.setEmergencyContacts(emergencyContacts);
+
+        mPreference.setEmergencyContacts(emergencyContacts.subList(0, 4));
+
+        assertThat(mPreference.getPreferenceCount()).isEqualTo(4);
+        for (int i = 0; i < 4; i++) {
+            verify(mContactFactory, times(1)).getContact(any(), eq(emergencyContacts.get(i)));
+        }
+    }
+
+    @Test
+    public void testAddNewEmergencyContact_rejectsSameNumberFromAnotherContact() {
+        when(mContactValidator.isValidEmergencyContact(any(), any())).thenReturn(true);
+        final Uri contactUri = Uri.parse("content://com.android.contacts/data/1");
+        final Uri sameNumberUri = Uri.parse("content://com.android.contacts/data/2");
+        when(mockContact(contactUri, "Jane").getPhoneNumber()).thenReturn("650-555-0100");
+        when(mockContact(sameNumberUri, "Jane").getPhoneNumber())
+                .thenReturn("+1 (650) 555-0100");
+
+        mPreference.addNewEmergencyContact(contactUri);
+        mPreference.addNewEmergencyContact(sameNumberUri);
+
+        assertThat(mPreference.getEmergencyContacts()).containsExactly(contactUri);
+        assertThat(mPreference.findEmergencyContactByNumber("+16505550100"))
+                .isEqualTo(contactUri);
+        assertThat(ShadowToast.getTextOfLatestToast()).isEqualTo(
+                RuntimeEnvironment.application.getString(R.string.fail_add_duplicate_contact));
+    }
+
+    @Test
+    public void testSetEmergencyContacts_keepsStoredContactsWithSameNumber() {
+        final Uri contactUri = Uri.parse("content://com.android.contacts/data/1");
+        final Uri sameNumberUri = Uri.parse("content://com.android.contacts/data/2");
+        when(mockContact(contactUri, "Jane").getPhoneNumber()).thenReturn("650-555-0100");
+        when(mockContact(sameNumberUri, "Jane").getPhoneNumber())
+                .thenReturn("+1 (650) 555-0100");
+
+        final List<Uri> emergencyContacts = new ArrayList<>();
+        emergencyContacts.add(contactUri);
+        emergencyContacts.add(sameNumberUri);
+        mPreference.setEmergencyContacts(emergencyContacts);
+
+        assertThat(mPreference.getEmergencyContacts())
+                .containsExactly(contactUri, sameNumberUri).inOrder();
+        assertThat(mPreference.getPreferenceCount()).isEqualTo(2);
+        assertThat(mPreference.findEmergencyContactByNumber("+16505550100"))
+                .isEqualTo(contactUri);
+    }
+
+    @Test
+    public void testContactsChanged_bindsResolvedContactsWithoutMainThreadLookups() {
+        final InMemoryContactSource source = new InMemoryContactSource();
+        final Uri janeUri = source.addContact("Jane", "+15555550100");
+        final Uri johnUri = source.addContact("John", "+15555550101");
+        FakeFeatureFactory.install(source);
+        when(mContactFactory.getContact(any(), any())).thenAnswer(
+                invocation -> source.getContact(invocation.getArgument(1)));
+        final List<Uri> emergencyContacts = new ArrayList<>();
+        emergencyContacts.add(janeUri);
+        emergencyContacts.add(johnUri);
+        mPreference.setEmergencyContacts(emergencyContacts);
+        mPreference.onAttached();
+        reset(mContactFactory, mContactValidator);
+
+        source.removeContact(janeUri);
+
+        assertThat(mPreference.getEmergencyContacts()).containsExactly(johnUri);
+        assertThat(mPreference.getPreferenceCount()).isEqualTo(1);
+        assertThat(mPreference.getPreference(0).getTitle()).isEqualTo("John");
+        assertThat(mPreference.findEmergencyContactByNumber("+15555550101")).isEqualTo(johnUri);
+        verifyZeroInteractions(mContactFactory, mContactValidator);
+    }
+
+    private EmergencyContactManager.Contact mockContact(Uri contactUri, String name) {
+        EmergencyContactManager.Contact contact = mock(EmergencyContactManager.Contact.class);
+        when(mContactFactory.getContact(any(), eq(contactUri))).thenReturn(contact);
+        when(contact.getName()).thenReturn(name);
+        when(contact.getPhoneNumber()).thenReturn(contactUri.getSchemeSpecificPart());
+        when(contact.getPhoneUri()).thenReturn(contactUri);
+        return contact;
+    }
 }
@@ -135,6 +135,17 @@ public class EmergencyNamePreferenceTest {
         verify(photoController).onActivityResult(eq(0), eq(0), same(resultData));
     }
 
+    @Test
+    public void pendingPhotoFragment_isRetainedAndHandsThePhotoOverOnce() {
+        EmergencyNamePreference.PendingPhotoFragment holder =
+                new EmergencyNamePreference.PendingPhotoFragment();
+        holder.setPhoto(mBitmap);
+
+        assertThat(holder.getRetainInstance()).isTrue();
+        assertThat(holder.takePhoto()).isSameInstanceAs(mBitmap);
+        assertThat(holder.takePhoto()).isNull();
+    }
+
     private ViewGroup createLayout() {
         ViewGroup root = new LinearLayout(mContext);
 
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link PhoneNumberIndex}. */
+@RunWith(RobolectricTestRunner.class)
+public final class PhoneNumberIndexTest {
+    private static final Uri JANE = Uri.parse("content://com.android.contacts/data/1");
+    private static final Uri JANE_OTHER_RAW_CONTACT =
+            Uri.parse("content://com.android.contacts/data/2");
+    private static final Uri JOHN = Uri.parse("content://com.android.contacts/data/3");
+
+    private PhoneNumberIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new PhoneNumberIndex("US");
+    }
+
+    @Test
+    public void testNormalize_toE164() {
+        assertThat(mIndex.normalize("(650) 555-0100")).isEqualTo("+16505550100");
+        assertThat(mIndex.normalize("+1 650-555-0100")).isEqualTo("+16505550100");
+        assertThat(mIndex.normalize("")).isNull();
+        assertThat(mIndex.normalize(null)).isNull();
+    }
+
+    @Test
+    public void testAdd_reportsSameNumberFromAnotherContact() {
+        assertThat(mIndex.isDuplicate(JANE_OTHER_RAW_CONTACT, "6505550100")).isFalse();
+        assertThat(mIndex.add(JANE, "650-555-0100")).isTrue();
+        assertThat(mIndex.isDuplicate(JANE_OTHER_RAW_CONTACT, "6505550100")).isTrue();
+        assertThat(mIndex.isDuplicate(JANE, "6505550100")).isFalse();
+
+        assertThat(mIndex.add(JANE_OTHER_RAW_CONTACT, "+1 (650) 555 0100")).isFalse();
+        assertThat(mIndex.add(JOHN, "650-555-0199")).isTrue();
+        // Both contacts with the shared number stay indexed.
+        assertThat(mIndex.size()).isEqualTo(3);
+        assertThat(mIndex.contains(JANE_OTHER_RAW_CONTACT)).isTrue();
+    }
+
+    @Test
+    public void testFindContact_sharedNumber_returnsFirstAddedUntilRemoved() {
+        mIndex.add(JANE, "650-555-0100");
+        mIndex.add(JANE_OTHER_RAW_CONTACT, "+1 650 555 0100");
+
+        assertThat(mIndex.findContact("6505550100")).isEqualTo(JANE);
+        mIndex.remove(JANE);
+        assertThat(mIndex.findContact("6505550100")).isEqualTo(JANE_OTHER_RAW_CONTACT);
+        mIndex.remove(JANE_OTHER_RAW_CONTACT);
+        assertThat(mIndex.findContact("6505550100")).isNull();
+    }
+
+    @Test
+    public void testFindContact() {
+        mIndex.add(JANE, "650-555-0100");
+
+        assertThat(mIndex.findContact("+16505550100")).isEqualTo(JANE);
+        assertThat(mIndex.findContact("650-555-0199")).isNull();
+
+        mIndex.remove(JANE);
+        assertThat(mIndex.findContact("+16505550100")).isNull();
+        assertThat(mIndex.add(JANE_OTHER_RAW_CONTACT, "650-555-0100")).isTrue();
+    }
+}
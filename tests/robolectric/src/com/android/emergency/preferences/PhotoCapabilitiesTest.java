@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ResolveInfo;
+import android.provider.MediaStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Unit tests for {@link PhotoCapabilities}. */
+@RunWith(RobolectricTestRunner.class)
+public final class PhotoCapabilitiesTest {
+    private Context mContext;
+    private PhotoCapabilities mCapabilities;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCapabilities = new PhotoCapabilities(mContext);
+    }
+
+    @Test
+    public void testGet_isCached() {
+        PhotoCapabilities.Snapshot snapshot = mCapabilities.get();
+
+        assertThat(snapshot.canTakePhoto()).isFalse();
+        assertThat(mCapabilities.get()).isSameAs(snapshot);
+    }
+
+    @Test
+    public void testInvalidate_picksUpNewCamera() {
+        assertThat(mCapabilities.get().canTakePhoto()).isFalse();
+        ResolveInfo camera = new ResolveInfo();
+        camera.activityInfo = new ActivityInfo();
+        camera.activityInfo.packageName = "com.example.camera";
+        camera.activityInfo.name = "Camera";
+        shadowOf(mContext.getPackageManager()).addResolveInfoForIntent(
+                new Intent(MediaStore.ACTION_IMAGE_CAPTURE), camera);
+
+        assertThat(mCapabilities.get().canTakePhoto()).isFalse();
+        mCapabilities.invalidate();
+
+        assertThat(mCapabilities.get().canTakePhoto()).isTrue();
+    }
+}
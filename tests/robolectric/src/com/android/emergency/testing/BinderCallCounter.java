@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.testing;
+
+import android.os.Looper;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the calls a screen makes on the main thread that would be binder calls on a device, by
+ * name, e.g. {@code ContentResolver#query}. Fed by {@link CountingContactsProvider} and
+ * {@link CountingPackageManager}.
+ *
+ * <p>Work done on background threads is not counted: it is not on the path to the first frame,
+ * and its timing isn't deterministic under Robolectric.
+ */
+public final class BinderCallCounter {
+    private static final Map<String, Integer> sCounts = new TreeMap<>();
+
+    /** Counts a call to {@code name} if made on the main thread. */
+    public static synchronized void record(String name) {
+        if (Looper.getMainLooper().isCurrentThread()) {
+            sCounts.merge(name, 1, Integer::sum);
+        }
+    }
+
+    /** Forgets all counted calls. */
+    public static synchronized void reset() {
+        sCounts.clear();
+    }
+
+    /** Returns the number of counted calls, all names together. */
+    public static synchronized int getTotal() {
+        int total = 0;
+        for (int count : sCounts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /** Returns the counts by name, for failure messages. */
+    public static synchronized String describe() {
+        return sCounts.toString();
+    }
+
+    private BinderCallCounter() {
+        // Prevent instantiation
+        throw new UnsupportedOperationException();
+    }
+}
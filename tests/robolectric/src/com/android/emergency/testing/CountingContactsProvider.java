@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.testing;
+
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+import java.util.Locale;
+
+/**
+ * Contacts provider stand-in that answers every query with the same contact, and reports every
+ * call to {@link BinderCallCounter}. Only the phone number differs: it is derived from the data
+ * id of the queried Uri, so contacts stored as different data rows aren't duplicates. Register it
+ * with {@code Robolectric.setupContentProvider(CountingContactsProvider.class,
+ * ContactsContract.AUTHORITY)}.
+ */
+public class CountingContactsProvider extends ContentProvider {
+    /**
+     * Reported for {@link ContactsContract.DisplayPhoto#DISPLAY_MAX_DIM}; deliberately not the
+     * app's fallback, so tests can tell a fetched value from the default.
+     */
+    public static final int DISPLAY_MAX_DIM = 512;
+
+    private static final String[] COLUMNS = {
+            ContactsContract.Contacts.DISPLAY_NAME,
+            ContactsContract.CommonDataKinds.Phone.NUMBER,
+            ContactsContract.CommonDataKinds.Phone.TYPE,
+            ContactsContract.CommonDataKinds.Phone.LABEL,
+            ContactsContract.CommonDataKinds.Photo.PHOTO_ID,
+            ContactsContract.DisplayPhoto.DISPLAY_MAX_DIM,
+            ContactsContract.Contacts._ID,
+            ContactsContract.Contacts.LOOKUP_KEY};
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        BinderCallCounter.record("ContentResolver#query");
+        final MatrixCursor cursor = new MatrixCursor(projection != null ? projection : COLUMNS);
+        final Object[] row = new Object[cursor.getColumnCount()];
+        for (int i = 0; i < row.length; i++) {
+            final String column = cursor.getColumnName(i);
+            if (ContactsContract.Contacts.DISPLAY_NAME.equals(column)) {
+                row[i] = "Jane";
+            } else if (ContactsContract.CommonDataKinds.Phone.NUMBER.equals(column)) {
+                row[i] = phoneNumber(uri);
+            } else if (ContactsContract.DisplayPhoto.DISPLAY_MAX_DIM.equals(column)) {
+                row[i] = DISPLAY_MAX_DIM;
+            } else if (ContactsContract.Contacts.LOOKUP_KEY.equals(column)) {
+                row[i] = "lookup";
+            } else if (ContactsContract.CommonDataKinds.Photo.PHOTO_ID.equals(column)) {
+                row[i] = 0;
+            } else {
+                row[i] = 1;
+            }
+        }
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    /** Returns a number unique to the data id of {@code uri}, or to id 0 if it has none. */
+    private static String phoneNumber(Uri uri) {
+        long id;
+        try {
+            id = ContentUris.parseId(uri);
+        } catch (NumberFormatException | UnsupportedOperationException e) {
+            id = 0;
+        }
+        return String.format(Locale.US, "+1555555%04d", 100 + Math.max(id, 0) % 9900);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        BinderCallCounter.record("ContentResolver#getType");
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        BinderCallCounter.record("ContentResolver#insert");
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        BinderCallCounter.record("ContentResolver#delete");
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection,
+            String[] selectionArgs) {
+        BinderCallCounter.record("ContentResolver#update");
+        return 0;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.testing;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.pm.ResolveInfo;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowApplicationPackageManager;
+
+import java.util.List;
+
+/**
+ * PackageManager shadow that reports the calls this app makes to {@link BinderCallCounter}.
+ * Enable it with {@code @Config(shadows = CountingPackageManager.class)}.
+ */
+@Implements(className = "android.app.ApplicationPackageManager",
+        inheritImplementationMethods = true)
+public class CountingPackageManager extends ShadowApplicationPackageManager {
+
+    @Implementation
+    @Override
+    protected List<ResolveInfo> queryIntentActivities(Intent intent, int flags) {
+        BinderCallCounter.record("PackageManager#queryIntentActivities");
+        return super.queryIntentActivities(intent, flags);
+    }
+
+    @Implementation
+    @Override
+    protected ResolveInfo resolveActivity(Intent intent, int flags) {
+        BinderCallCounter.record("PackageManager#resolveActivity");
+        return super.resolveActivity(intent, flags);
+    }
+
+    @Implementation
+    @Override
+    protected void setComponentEnabledSetting(ComponentName componentName, int newState,
+            int flags) {
+        BinderCallCounter.record("PackageManager#setComponentEnabledSetting");
+        super.setComponentEnabledSetting(componentName, newState, flags);
+    }
+
+    @Implementation
+    @Override
+    protected int getComponentEnabledSetting(ComponentName componentName) {
+        BinderCallCounter.record("PackageManager#getComponentEnabledSetting");
+        return super.getComponentEnabledSetting(componentName);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.testing;
+
+import android.content.Context;
+
+import com.android.emergency.EmergencyContactSource;
+import com.android.emergency.edit.EmergencyContactsFeatureProvider;
+import com.android.emergency.overlay.FeatureFactory;
+
+/** {@link FeatureFactory} that serves contacts from a test-provided source. */
+public final class FakeFeatureFactory extends FeatureFactory {
+    private final EmergencyContactSource mContactSource;
+
+    private FakeFeatureFactory(EmergencyContactSource contactSource) {
+        mContactSource = contactSource;
+    }
+
+    /** Makes {@link FeatureFactory#getFactory} return a factory serving {@code contactSource}. */
+    public static void install(EmergencyContactSource contactSource) {
+        sFactory = new FakeFeatureFactory(contactSource);
+    }
+
+    /** Restores the default factory. */
+    public static void uninstall() {
+        sFactory = null;
+    }
+
+    @Override
+    public EmergencyContactsFeatureProvider getEmergencyContactsFeatureProvider() {
+        return new EmergencyContactsFeatureProvider() {
+            @Override
+            public EmergencyContactSource getContactSource(Context context) {
+                return mContactSource;
+            }
+        };
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.testing;
+
+import android.net.Uri;
+
+import com.android.emergency.EmergencyContactManager;
+import com.android.emergency.EmergencyContactSource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link EmergencyContactSource} that serves contacts added by the test, without any provider
+ * round trip. Callbacks run synchronously. Also counts lookups, for benchmarks.
+ */
+public final class InMemoryContactSource implements EmergencyContactSource {
+    private final Map<Uri, EmergencyContactManager.Contact> mContacts = new LinkedHashMap<>();
+    private final List<Observer> mObservers = new ArrayList<>();
+    private int mLookupCount;
+
+    /** Adds a contact with the given name and number, and returns its phone Uri. */
+    public Uri addContact(String name, String phoneNumber) {
+        final Uri phoneUri = Uri.parse("content://com.android.contacts/data/" + mContacts.size());
+        mContacts.put(phoneUri, new EmergencyContactManager.Contact(phoneUri, phoneUri, name,
+                phoneNumber, null /* phoneType */, null /* photo */));
+        return phoneUri;
+    }
+
+    /** Removes a contact, and notifies observers like ContactsProvider would. */
+    public void removeContact(Uri phoneUri) {
+        mContacts.remove(phoneUri);
+        for (Observer observer : new ArrayList<>(mObservers)) {
+            observer.onContactsChanged();
+        }
+    }
+
+    /** Returns how many times a contact was looked up or validated. */
+    public int getLookupCount() {
+        return mLookupCount;
+    }
+
+    @Override
+    public EmergencyContactManager.Contact getContact(Uri phoneUri) {
+        mLookupCount++;
+        final EmergencyContactManager.Contact contact = mContacts.get(phoneUri);
+        if (contact == null) {
+            throw new IllegalArgumentException("Unknown contact " + phoneUri);
+        }
+        return contact;
+    }
+
+    @Override
+    public boolean isValidEmergencyContact(Uri phoneUri) {
+        mLookupCount++;
+        return mContacts.containsKey(phoneUri);
+    }
+
+    @Override
+    public void resolveContacts(Object owner, List<Uri> phoneUris, Callback callback) {
+        final Map<Uri, EmergencyContactManager.Contact> contacts = new LinkedHashMap<>();
+        for (Uri phoneUri : phoneUris) {
+            if (isValidEmergencyContact(phoneUri)) {
+                contacts.put(phoneUri, getContact(phoneUri));
+            }
+        }
+        callback.onContactsResolved(contacts);
+    }
+
+    @Override
+    public void prefetch(List<Uri> phoneUris) {
+    }
+
+    @Override
+    public void registerObserver(Observer observer) {
+        mObservers.add(observer);
+    }
+
+    @Override
+    public void unregisterObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.testing;
+
+import static org.junit.Assert.fail;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Looper;
+import android.provider.ContactsContract;
+
+import com.android.emergency.util.StrictModeAuditor;
+
+import org.junit.rules.ExternalResource;
+import org.robolectric.Robolectric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rule that records disk and ContentResolver work done on the main thread while a test runs.
+ *
+ * <p>Disk I/O is reported by {@link StrictModeAuditor}. ContentResolver work is reported by a
+ * stand-in for the contacts provider, which remembers the app call site of every query it gets
+ * on the main thread.
+ */
+public final class MainThreadIoRule extends ExternalResource {
+    private static final String APP_PACKAGE = "com.android.emergency.";
+
+    private static final List<String> sProviderCallSites =
+            Collections.synchronizedList(new ArrayList<>());
+
+    private final Set<String> mAllowedCallSites;
+
+    /**
+     * @param allowedCallSites call sites, formatted as {@code SimpleClassName#method}, that are
+     *        known to do main thread I/O and are tolerated.
+     */
+    public MainThreadIoRule(String... allowedCallSites) {
+        mAllowedCallSites = new HashSet<>(Arrays.asList(allowedCallSites));
+    }
+
+    @Override
+    protected void before() {
+        sProviderCallSites.clear();
+        StrictModeAuditor.clearViolations();
+        StrictModeAuditor.setEnabledForTesting(true);
+        StrictModeAuditor.maybeInstall();
+        Robolectric.setupContentProvider(RecordingContactsProvider.class,
+                ContactsContract.AUTHORITY);
+    }
+
+    @Override
+    protected void after() {
+        StrictModeAuditor.setEnabledForTesting(false);
+        StrictModeAuditor.clearViolations();
+    }
+
+    /** Fails if main thread I/O happened outside of the allowed call sites. */
+    public void assertNoMainThreadIo(String screen) {
+        final List<String> offenders = new ArrayList<>();
+        synchronized (sProviderCallSites) {
+            for (String callSite : sProviderCallSites) {
+                if (!mAllowedCallSites.contains(callSite)) {
+                    offenders.add("ContentResolver call from " + callSite);
+                }
+            }
+        }
+        for (StrictModeAuditor.RecordedViolation violation : StrictModeAuditor.getViolations()) {
+            final String callSite = findAppCallSite(violation.getStackTrace());
+            if (!mAllowedCallSites.contains(callSite)) {
+                offenders.add(violation.getType() + " from " + callSite);
+            }
+        }
+        if (!offenders.isEmpty()) {
+            fail(screen + " does I/O on the main thread:\n" + String.join("\n", offenders));
+        }
+    }
+
+    private static String findAppCallSite(StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            final String className = element.getClassName();
+            if (className.startsWith(APP_PACKAGE)
+                    && !className.startsWith(APP_PACKAGE + "testing.")
+                    && !className.equals(StrictModeAuditor.class.getName())) {
+                final String simpleName = className.substring(className.lastIndexOf('.') + 1);
+                return simpleName + "#" + element.getMethodName();
+            }
+        }
+        return "<unknown>";
+    }
+
+    /**
+     * {@link CountingContactsProvider} that also remembers the app call site of every query it
+     * gets on the main thread.
+     */
+    public static class RecordingContactsProvider extends CountingContactsProvider {
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            if (Looper.getMainLooper().isCurrentThread()) {
+                sProviderCallSites.add(
+                        findAppCallSite(Thread.currentThread().getStackTrace()));
+            }
+            return super.query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+    }
+}
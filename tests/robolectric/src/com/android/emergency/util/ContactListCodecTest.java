@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/** Unit tests for {@link ContactListCodec} and {@link ListDiff}. */
+@RunWith(RobolectricTestRunner.class)
+public final class ContactListCodecTest {
+
+    @Test
+    public void testEncode() {
+        assertThat(ContactListCodec.encode(Collections.emptyList())).isEmpty();
+        assertThat(ContactListCodec.encode(Arrays.asList("a", "b", "c"))).isEqualTo("a|b|c");
+    }
+
+    @Test
+    public void testDecode_matchesRegexSplit() {
+        for (String encoded : new String[] {"", "a", "a|b", "a||b", "a|", "|a", "|", "a|b||"}) {
+            assertThat(ContactListCodec.decode(encoded))
+                    .containsExactlyElementsIn(encoded.split("\\|")).inOrder();
+        }
+    }
+
+    @Test
+    public void testAppend() {
+        assertThat(ContactListCodec.append("", "a")).isEqualTo("a");
+        assertThat(ContactListCodec.append("a|b", "c")).isEqualTo("a|b|c");
+    }
+
+    @Test
+    public void testRemove() {
+        assertThat(ContactListCodec.remove("a|b|c", "a")).isEqualTo("b|c");
+        assertThat(ContactListCodec.remove("a|b|c", "b")).isEqualTo("a|c");
+        assertThat(ContactListCodec.remove("a|b|c", "c")).isEqualTo("a|b");
+        assertThat(ContactListCodec.remove("a", "a")).isEmpty();
+        assertThat(ContactListCodec.remove("ab|b", "b")).isEqualTo("ab");
+        assertThat(ContactListCodec.remove("a|ab", "a")).isEqualTo("ab");
+        assertThat(ContactListCodec.remove("a|b", "x")).isEqualTo("a|b");
+        assertThat(ContactListCodec.remove("", "a")).isEmpty();
+    }
+
+    @Test
+    public void testListDiff() {
+        ListDiff unchanged = ListDiff.compute(Arrays.asList("a", "b"), Arrays.asList("a", "b"));
+        assertThat(unchanged.isEmpty()).isTrue();
+
+        ListDiff lastRemoved =
+                ListDiff.compute(Arrays.asList("a", "b", "c"), Arrays.asList("a", "b"));
+        assertThat(lastRemoved.getRemovedCount()).isEqualTo(1);
+        assertThat(lastRemoved.getChangedPositions()).isEmpty();
+        assertThat(lastRemoved.getAddedCount()).isEqualTo(0);
+
+        ListDiff firstRemoved =
+                ListDiff.compute(Arrays.asList("a", "b", "c"), Arrays.asList("b", "c"));
+        assertThat(firstRemoved.getRemovedCount()).isEqualTo(1);
+        assertThat(firstRemoved.getChangedPositions()).containsExactly(0, 1);
+        assertThat(firstRemoved.getAddedCount()).isEqualTo(0);
+
+        ListDiff replacedAndAdded =
+                ListDiff.compute(Arrays.asList("a", "b"), Arrays.asList("a", "x", "y"));
+        assertThat(replacedAndAdded.getRemovedCount()).isEqualTo(0);
+        assertThat(replacedAndAdded.getChangedPositions()).containsExactly(1);
+        assertThat(replacedAndAdded.getAddedCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.provider.ContactsContract;
+
+import com.android.emergency.testing.CountingContactsProvider;
+import com.android.emergency.testing.MainThreadIoRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Unit tests for {@link DisplayPhotoSize}. */
+@RunWith(RobolectricTestRunner.class)
+public final class DisplayPhotoSizeTest {
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        DisplayPhotoSize.resetForTesting();
+    }
+
+    @After
+    public void tearDown() {
+        DisplayPhotoSize.resetForTesting();
+    }
+
+    @Test
+    public void testGet_beforeFetch_returnsDefault() {
+        assertThat(DisplayPhotoSize.get(mContext)).isEqualTo(DisplayPhotoSize.DEFAULT_PHOTO_SIZE);
+    }
+
+    @Test
+    public void testFetch_withoutProvider_returnsZero() {
+        assertThat(DisplayPhotoSize.fetch(mContext)).isEqualTo(0);
+    }
+
+    @Test
+    public void testFetch_readsMaxDimension() {
+        Robolectric.setupContentProvider(MainThreadIoRule.RecordingContactsProvider.class,
+                ContactsContract.AUTHORITY);
+
+        assertThat(CountingContactsProvider.DISPLAY_MAX_DIM)
+                .isNotEqualTo(DisplayPhotoSize.DEFAULT_PHOTO_SIZE);
+        assertThat(DisplayPhotoSize.fetch(mContext))
+                .isEqualTo(CountingContactsProvider.DISPLAY_MAX_DIM);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.metrics.LogMaker;
+import android.os.Build;
+import android.os.Looper;
+
+import com.android.internal.logging.MetricsLogger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+/** Unit tests for {@link LatencyLogger}. {@link LogMaker} histograms need O. */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = Build.VERSION_CODES.O)
+public final class LatencyLoggerTest {
+    @Mock
+    private MetricsLogger mMetricsLogger;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        LatencyLogger.resetForTesting();
+        LatencyLogger.setMetricsLoggerForTesting(mMetricsLogger);
+    }
+
+    @After
+    public void tearDown() {
+        LatencyLogger.resetForTesting();
+    }
+
+    @Test
+    public void testGetBucket_isBitLengthOfMicros() {
+        assertThat(LatencyLogger.getBucket(-1)).isEqualTo(0);
+        assertThat(LatencyLogger.getBucket(999)).isEqualTo(0);
+        assertThat(LatencyLogger.getBucket(1_000)).isEqualTo(1);
+        assertThat(LatencyLogger.getBucket(3_000)).isEqualTo(2);
+        assertThat(LatencyLogger.getBucket(1_024_000)).isEqualTo(11);
+        assertThat(LatencyLogger.getBucket(Long.MAX_VALUE))
+                .isEqualTo(LatencyLogger.BUCKET_COUNT - 1);
+    }
+
+    @Test
+    public void testRecord_disabled_isNoOp() {
+        LatencyLogger.setEnabledForTesting(false);
+
+        final long start = LatencyLogger.start();
+        LatencyLogger.record(LatencyLogger.Operation.GET_CONTACT, start);
+        LatencyLogger.flush();
+
+        assertThat(start).isEqualTo(0);
+        verify(mMetricsLogger, never()).write(any(LogMaker.class));
+    }
+
+    @Test
+    public void testFlush_writesOneEntryPerBucket() {
+        LatencyLogger.setEnabledForTesting(true);
+
+        for (int i = 0; i < 3; i++) {
+            LatencyLogger.record(LatencyLogger.Operation.PHONE_EXISTS, LatencyLogger.start());
+        }
+        LatencyLogger.flush();
+        LatencyLogger.flush();
+
+        verify(mMetricsLogger, times(1)).write(any(LogMaker.class));
+        int total = 0;
+        for (int bucket = 0; bucket < LatencyLogger.BUCKET_COUNT; bucket++) {
+            total += LatencyLogger.getTotalCount(LatencyLogger.Operation.PHONE_EXISTS, bucket);
+        }
+        assertThat(total).isEqualTo(3);
+    }
+
+    @Test
+    public void testRecord_fewSamples_flushedAfterDelay() {
+        LatencyLogger.setEnabledForTesting(true);
+
+        LatencyLogger.record(LatencyLogger.Operation.GET_CONTACT, LatencyLogger.start());
+        verify(mMetricsLogger, never()).write(any(LogMaker.class));
+        shadowOf(Looper.getMainLooper()).idleFor(LatencyLogger.FLUSH_DELAY_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        verify(mMetricsLogger, timeout(5000)).write(any(LogMaker.class));
+    }
+
+    @Test
+    public void testFlushAsync_writesPendingSamples() {
+        LatencyLogger.setEnabledForTesting(true);
+
+        LatencyLogger.record(LatencyLogger.Operation.GET_CONTACT, LatencyLogger.start());
+        LatencyLogger.flushAsync();
+
+        verify(mMetricsLogger, timeout(5000)).write(any(LogMaker.class));
+    }
+
+    @Test
+    public void testFlushAsync_nothingPending_isNoOp() {
+        LatencyLogger.setEnabledForTesting(true);
+
+        LatencyLogger.flushAsync();
+        LatencyLogger.flush();
+
+        verify(mMetricsLogger, never()).write(any(LogMaker.class));
+    }
+}
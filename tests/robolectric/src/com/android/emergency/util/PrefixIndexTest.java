@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/** Unit tests for {@link PrefixIndex}. */
+@RunWith(RobolectricTestRunner.class)
+public final class PrefixIndexTest {
+    private static final List<String> TERMS = Arrays.asList("Ibuprofen", "Insulin", "Aspirin",
+            "Amoxicillin", "Amlodipine", "Atorvastatin", "Penicillin", "Peanuts", "Pea");
+
+    @Test
+    public void testQuery_returnsMatchesInOrder() {
+        PrefixIndex index = PrefixIndex.build(TERMS);
+
+        assertThat(index.query("a", 10))
+                .containsExactly("Amlodipine", "Amoxicillin", "Aspirin", "Atorvastatin")
+                .inOrder();
+        assertThat(index.query("pea", 10)).containsExactly("Pea", "Peanuts").inOrder();
+        assertThat(index.query("z", 10)).isEmpty();
+    }
+
+    @Test
+    public void testQuery_ignoresCase() {
+        PrefixIndex index = PrefixIndex.build(TERMS);
+
+        assertThat(index.query("IBU", 10)).containsExactly("Ibuprofen");
+    }
+
+    @Test
+    public void testQuery_prefixLongerThanTrie() {
+        PrefixIndex index = PrefixIndex.build(TERMS);
+
+        assertThat(index.query("amlodi", 10)).containsExactly("Amlodipine");
+        assertThat(index.query("amlodipine", 10)).containsExactly("Amlodipine");
+        assertThat(index.query("amlodipines", 10)).isEmpty();
+        assertThat(index.query("amlox", 10)).isEmpty();
+    }
+
+    @Test
+    public void testQuery_limit() {
+        PrefixIndex index = PrefixIndex.build(TERMS);
+
+        assertThat(index.query("a", 2)).containsExactly("Amlodipine", "Amoxicillin").inOrder();
+        assertThat(index.query("", 1)).containsExactly("Amlodipine");
+    }
+
+    @Test
+    public void testBuild_dropsBlankAndDuplicateTerms() {
+        PrefixIndex index = PrefixIndex.build(Arrays.asList("Aspirin", " ", "aspirin", " Eggs "));
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.query("", 10)).containsExactly("Aspirin", "Eggs").inOrder();
+    }
+
+    @Test
+    public void testBuild_empty() {
+        PrefixIndex index = PrefixIndex.build(Collections.emptyList());
+
+        assertThat(index.size()).isEqualTo(0);
+        assertThat(index.query("a", 10)).isEmpty();
+        assertThat(index.query("", 10)).isEmpty();
+    }
+
+    @Test
+    public void testRead_skipsCommentsAndStopsAtBounds() throws Exception {
+        String list = "# Allergies\nEggs\n\nMilk\nPeanuts\nSoy\n";
+
+        PrefixIndex all = PrefixIndex.read(new StringReader(list), 10, 100);
+        PrefixIndex fewerTerms = PrefixIndex.read(new StringReader(list), 2, 100);
+        PrefixIndex fewerChars = PrefixIndex.read(new StringReader(list), 10, 8);
+
+        assertThat(all.query("", 10)).containsExactly("Eggs", "Milk", "Peanuts", "Soy").inOrder();
+        assertThat(all.isTruncated()).isFalse();
+        assertThat(fewerTerms.query("", 10)).containsExactly("Eggs", "Milk").inOrder();
+        assertThat(fewerTerms.isTruncated()).isTrue();
+        assertThat(fewerChars.query("", 10)).containsExactly("Eggs", "Milk").inOrder();
+        assertThat(fewerChars.isTruncated()).isTrue();
+    }
+
+    @Test
+    public void testQuery_matchesLinearScan() {
+        Random random = new Random(0);
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            terms.add(randomWord(random, 1 + random.nextInt(9)));
+        }
+        PrefixIndex index = PrefixIndex.build(terms);
+        TreeSet<String> sorted = new TreeSet<>(terms);
+
+        for (int i = 0; i < 500; i++) {
+            String prefix = randomWord(random, random.nextInt(8));
+            List<String> expected = new ArrayList<>();
+            for (String term : sorted) {
+                if (term.startsWith(prefix)) {
+                    expected.add(term);
+                }
+            }
+            assertThat(index.query(prefix, Integer.MAX_VALUE)).isEqualTo(expected);
+        }
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(3)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** Unit tests for {@link TaskScheduler}. */
+@RunWith(RobolectricTestRunner.class)
+public final class TaskSchedulerTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private TaskScheduler mScheduler;
+    private CountDownLatch mBlocker;
+
+    @Before
+    public void setUp() {
+        mScheduler = new TaskScheduler(1 /* workers */);
+        mBlocker = new CountDownLatch(1);
+        // Keep the only worker busy so that the next tasks stay queued.
+        mScheduler.execute("blocker", TaskScheduler.Priority.BACKGROUND, () -> {
+            try {
+                mBlocker.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @Test
+    public void testUiCriticalTasks_runFirst() throws Exception {
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        mScheduler.execute("background", TaskScheduler.Priority.BACKGROUND, () -> {
+            order.add("background");
+            done.countDown();
+        });
+        mScheduler.execute("critical", TaskScheduler.Priority.UI_CRITICAL, () -> {
+            order.add("critical");
+            done.countDown();
+        });
+
+        mBlocker.countDown();
+
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).containsExactly("critical", "background").inOrder();
+    }
+
+    @Test
+    public void testCancelAll_dropsQueuedTasksOfOwner() throws Exception {
+        Object owner = new Object();
+        List<String> ran = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        mScheduler.submit(owner, "owned", TaskScheduler.Priority.UI_CRITICAL,
+                () -> ran.add("owned"), null /* onResult */);
+        mScheduler.execute("unowned", TaskScheduler.Priority.BACKGROUND, () -> {
+            ran.add("unowned");
+            done.countDown();
+        });
+
+        mScheduler.cancelAll(owner);
+        mBlocker.countDown();
+
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(ran).containsExactly("unowned");
+    }
+
+    @Test
+    public void testSubmit_deliversResultOnMainThread() throws Exception {
+        List<Boolean> deliveredOnMainThread = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        mScheduler.submit(new Object(), "compute", TaskScheduler.Priority.UI_CRITICAL,
+                () -> 42, result -> {
+                    deliveredOnMainThread.add(Looper.getMainLooper().isCurrentThread());
+                    assertThat(result).isEqualTo(42);
+                });
+        mScheduler.execute("marker", TaskScheduler.Priority.BACKGROUND, done::countDown);
+
+        mBlocker.countDown();
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(deliveredOnMainThread).containsExactly(true);
+    }
+
+    @Test
+    public void testSubmit_failedWork_deliversNull() throws Exception {
+        List<Object> results = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        mScheduler.submit(new Object(), "fail", TaskScheduler.Priority.UI_CRITICAL,
+                () -> {
+                    throw new IllegalStateException("Expected failure");
+                }, result -> results.add(result == null ? "null" : result));
+        mScheduler.execute("marker", TaskScheduler.Priority.BACKGROUND, done::countDown);
+
+        mBlocker.countDown();
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(results).containsExactly("null");
+    }
+
+    @Test
+    public void testDump_listsQueuedTasks() {
+        mScheduler.execute("queued task", TaskScheduler.Priority.BACKGROUND, () -> { });
+        StringWriter output = new StringWriter();
+
+        mScheduler.dump("", new PrintWriter(output));
+        mBlocker.countDown();
+
+        assertThat(output.toString()).contains("queued queued task (BACKGROUND)");
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+import androidx.test.InstrumentationRegistry;
+
+import com.android.emergency.edit.EditInfoActivity;
+import com.android.emergency.util.ContactListCodec;
+import com.android.emergency.view.ViewInfoActivity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Memory benchmark: opens the edit and view screens with 1, 10 and 50 emergency contacts that
+ * each have a different large photo, and reports the heap retained per contact, Java and native
+ * (bitmap pixels) together.
+ *
+ * <p>Results are logged and sent as instrumentation status, under
+ * {@code retained_bytes_per_contact}. The test fails if a contact retains more than
+ * {@link #MAX_RETAINED_BYTES_PER_CONTACT}.
+ */
+@RunWith(Parameterized.class)
+public class EmergencyContactsHeapTest {
+    private static final String TAG = "EmergencyContactsHeapTest";
+
+    /** Generous bound: a contact is expected to retain its avatar and a few views. */
+    private static final long MAX_RETAINED_BYTES_PER_CONTACT = 256 * 1024;
+    private static final int PHOTO_SIZE = 2048;
+    private static final String NAME_PREFIX = "HeapTest";
+
+    @Parameters(name = "{0} contacts")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][] {{1}, {10}, {50}});
+    }
+
+    private final int mContactCount;
+    private Instrumentation mInstrumentation;
+    private Context mTargetContext;
+    private final List<Uri> mContacts = new ArrayList<>();
+
+    public EmergencyContactsHeapTest(int contactCount) {
+        mContactCount = contactCount;
+    }
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mTargetContext = mInstrumentation.getTargetContext();
+        final ContentResolver contentResolver = mTargetContext.getContentResolver();
+        for (int i = 0; i < mContactCount; i++) {
+            // Distinct photos, so that no two contacts can share a cached avatar.
+            mContacts.add(ContactTestUtils.createContact(contentResolver, NAME_PREFIX + i,
+                    String.valueOf(5550100 + i), createLargePhoto(i)));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        final ContentResolver contentResolver = mTargetContext.getContentResolver();
+        for (int i = 0; i < mContactCount; i++) {
+            ContactTestUtils.deleteContact(contentResolver, NAME_PREFIX + i,
+                    String.valueOf(5550100 + i));
+        }
+        PreferenceManager.getDefaultSharedPreferences(mTargetContext).edit().clear().commit();
+    }
+
+    @Test
+    public void testViewInfoActivity() {
+        measure(ViewInfoActivity.class);
+    }
+
+    @Test
+    public void testEditInfoActivity() {
+        measure(EditInfoActivity.class);
+    }
+
+    private void measure(Class<? extends Activity> activityClass) {
+        // Open the screen once without contacts, so that the baseline includes everything the
+        // screen itself retains.
+        setEmergencyContacts(new ArrayList<>());
+        final long baseline = measureRetainedBytes(activityClass);
+        setEmergencyContacts(mContacts);
+        final long retained = measureRetainedBytes(activityClass);
+
+        final long perContact = Math.max(0, retained - baseline) / mContactCount;
+        Log.i(TAG, activityClass.getSimpleName() + " with " + mContactCount + " contacts: "
+                + perContact + " bytes retained per contact");
+        final Bundle results = new Bundle();
+        results.putString("screen", activityClass.getSimpleName());
+        results.putInt("contacts", mContactCount);
+        results.putLong("retained_bytes_per_contact", perContact);
+        mInstrumentation.sendStatus(0, results);
+
+        assertWithMessage(activityClass.getSimpleName() + " retained bytes per contact")
+                .that(perContact).isAtMost(MAX_RETAINED_BYTES_PER_CONTACT);
+    }
+
+    /** Returns the heap in use while {@code activityClass} is showing. */
+    private long measureRetainedBytes(Class<? extends Activity> activityClass) {
+        final Activity activity = mInstrumentation.startActivitySync(
+                new Intent(mTargetContext, activityClass)
+                        .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK));
+        mInstrumentation.waitForIdleSync();
+        final long bytes = getHeapInUse();
+        activity.finish();
+        mInstrumentation.waitForIdleSync();
+        return bytes;
+    }
+
+    private void setEmergencyContacts(List<Uri> contacts) {
+        PreferenceManager.getDefaultSharedPreferences(mTargetContext).edit()
+                .putString(PreferenceKeys.KEY_EMERGENCY_CONTACTS, ContactListCodec.encode(contacts))
+                .commit();
+    }
+
+    private static long getHeapInUse() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+
+    /** Returns a photo whose background color and stripe position depend on {@code index}. */
+    private static byte[] createLargePhoto(int index) {
+        final Bitmap bitmap = Bitmap.createBitmap(PHOTO_SIZE, PHOTO_SIZE, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.HSVToColor(new float[] {(index * 37) % 360, 0.6f, 0.9f}));
+        final Paint paint = new Paint();
+        paint.setColor(Color.WHITE);
+        final int stripe = PHOTO_SIZE / 64;
+        final int top = (index * stripe) % (PHOTO_SIZE - stripe);
+        canvas.drawRect(0, top, PHOTO_SIZE, top + stripe, paint);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.emergency.ContactTestUtils;
+import com.android.emergency.PreferenceKeys;
+import com.android.emergency.view.ViewEmergencyContactsFragment;
+import com.android.emergency.view.ViewInfoActivity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Benchmark: tapping an emergency contact on the view screen must place the call within one frame.
+ * The call placer is replaced so that nothing is dialed; the time from handling the tap until it
+ * is asked to place the call is measured. Results are logged and sent as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class ContactPreferenceCallLatencyTest {
+    private static final String TAG = "ContactCallLatency";
+    private static final String NAME = "Jane";
+    private static final String PHONE_NUMBER = "+1 (650) 555-0100";
+    private static final int TAPS = 11;
+    private static final long FRAME_NANOS = 16_000_000L;
+
+    private Instrumentation mInstrumentation;
+    private Context mTargetContext;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mTargetContext = mInstrumentation.getTargetContext();
+
+        PreferenceManager.getDefaultSharedPreferences(mTargetContext).edit().clear().commit();
+        final Uri contactUri = ContactTestUtils.createContact(
+                mTargetContext.getContentResolver(), NAME, PHONE_NUMBER);
+        PreferenceManager.getDefaultSharedPreferences(mTargetContext)
+                .edit().putString(PreferenceKeys.KEY_EMERGENCY_CONTACTS, contactUri.toString())
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        assertThat(ContactTestUtils.deleteContact(
+                mTargetContext.getContentResolver(), NAME, PHONE_NUMBER)).isTrue();
+        PreferenceManager.getDefaultSharedPreferences(mTargetContext).edit().clear().commit();
+    }
+
+    @Test
+    public void testTapToPlaceCall_withinOneFrame() {
+        final ContactPreference contactPreference = startActivityAndGetContactPreference();
+        final long[] placedAt = new long[1];
+        final Uri[] placedUri = new Uri[1];
+        contactPreference.setCallPlacer(callUri -> {
+            placedAt[0] = SystemClock.elapsedRealtimeNanos();
+            placedUri[0] = callUri;
+        });
+
+        final long[] tapToCall = new long[TAPS];
+        for (int i = 0; i < TAPS; i++) {
+            final long[] tappedAt = new long[1];
+            placedAt[0] = 0;
+            mInstrumentation.runOnMainSync(() -> {
+                tappedAt[0] = SystemClock.elapsedRealtimeNanos();
+                contactPreference.getOnPreferenceClickListener()
+                        .onPreferenceClick(contactPreference);
+            });
+            assertWithMessage("call placed").that(placedAt[0]).isGreaterThan(0L);
+            tapToCall[i] = placedAt[0] - tappedAt[0];
+        }
+        assertThat(placedUri[0]).isEqualTo(Uri.parse("tel:+16505550100"));
+
+        Arrays.sort(tapToCall);
+        final long median = tapToCall[TAPS / 2];
+        Log.i(TAG, "tap to placeCall: median " + median + "ns, max " + tapToCall[TAPS - 1]
+                + "ns, last recorded " + contactPreference.getLastCallLatencyNanos() + "ns");
+        final Bundle results = new Bundle();
+        results.putLong("tap_to_place_call_median_ns", median);
+        results.putLong("tap_to_place_call_max_ns", tapToCall[TAPS - 1]);
+        mInstrumentation.sendStatus(0, results);
+
+        assertWithMessage("median ns from tap to placeCall").that(median).isLessThan(FRAME_NANOS);
+    }
+
+    private ContactPreference startActivityAndGetContactPreference() {
+        final Intent viewActivityIntent = new Intent(mTargetContext, ViewInfoActivity.class);
+        final ViewInfoActivity activity =
+                (ViewInfoActivity) mInstrumentation.startActivitySync(viewActivityIntent);
+        mInstrumentation.waitForIdleSync();
+        final ViewEmergencyContactsFragment fragment =
+                (ViewEmergencyContactsFragment) activity.getFragments().get(0).second;
+        final EmergencyContactsPreference preference = (EmergencyContactsPreference)
+                fragment.findPreference(PreferenceKeys.KEY_EMERGENCY_CONTACTS);
+        assertThat(preference.getPreferenceCount()).isEqualTo(1);
+        return (ContactPreference) preference.getPreference(0);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.emergency.EmergencyContactManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmark: the cost of {@link EmergencyContactsPreference#setEmergencyContacts} per contact must
+ * stay flat from 1 to 500 contacts. The cost of removing the last contact and of adding one is
+ * also reported, but not asserted on: single operations this short are too noisy to compare.
+ *
+ * <p>Contacts come from an in-memory factory, so that only the preference itself is measured.
+ * Results are logged and sent as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class EmergencyContactsPreferenceScalingTest {
+    private static final String TAG = "EmergencyContactsScaling";
+    private static final List<Integer> CONTACT_COUNTS = Arrays.asList(1, 10, 100, 500);
+    private static final int REPETITIONS = 5;
+    /** Per-contact cost at 500 contacts may be at most this many times the cost at 10. */
+    private static final double MAX_PER_CONTACT_GROWTH = 4;
+
+    private Instrumentation mInstrumentation;
+    private Context mTargetContext;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mTargetContext = mInstrumentation.getTargetContext();
+    }
+
+    @Test
+    public void testSetEmergencyContacts_scalesLinearly() {
+        final long[] bindNanosPerContact = new long[CONTACT_COUNTS.size()];
+        for (int i = 0; i < CONTACT_COUNTS.size(); i++) {
+            final int count = CONTACT_COUNTS.get(i);
+            final List<Uri> contacts = createPhoneUris(count);
+
+            long bind = Long.MAX_VALUE;
+            long removeLast = Long.MAX_VALUE;
+            long addOne = Long.MAX_VALUE;
+            for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+                final EmergencyContactsPreference preference = createPreference();
+                bind = Math.min(bind, time(() -> preference.setEmergencyContacts(contacts)));
+                removeLast = Math.min(removeLast, time(() -> preference.onRemoveContactPreference(
+                        (ContactPreference) preference.getPreference(count - 1))));
+                addOne = Math.min(addOne,
+                        time(() -> preference.addNewEmergencyContact(phoneUri(count))));
+            }
+            bindNanosPerContact[i] = bind / count;
+
+            Log.i(TAG, count + " contacts: bind " + bindNanosPerContact[i] + "ns/contact, "
+                    + "remove last " + removeLast + "ns, add one " + addOne + "ns");
+            final Bundle results = new Bundle();
+            results.putInt("contacts", count);
+            results.putLong("bind_ns_per_contact", bindNanosPerContact[i]);
+            results.putLong("remove_last_ns", removeLast);
+            results.putLong("add_one_ns", addOne);
+            mInstrumentation.sendStatus(0, results);
+        }
+
+        final int small = CONTACT_COUNTS.indexOf(10);
+        final int large = CONTACT_COUNTS.indexOf(500);
+        assertWithMessage("bind ns per contact at 500 vs 10")
+                .that((double) bindNanosPerContact[large])
+                .isAtMost(MAX_PER_CONTACT_GROWTH * bindNanosPerContact[small]);
+    }
+
+    private EmergencyContactsPreference createPreference() {
+        final EmergencyContactsPreference[] preference = new EmergencyContactsPreference[1];
+        mInstrumentation.runOnMainSync(() -> {
+            final PreferenceScreen screen =
+                    new PreferenceManager(mTargetContext).createPreferenceScreen(mTargetContext);
+            preference[0] = new EmergencyContactsPreference(mTargetContext, null /* attrs */,
+                    (context, phoneUri) -> true,
+                    (context, phoneUri) -> new EmergencyContactManager.Contact(phoneUri,
+                            phoneUri, "Contact " + phoneUri.getLastPathSegment(),
+                            phoneUri.getLastPathSegment(), null /* phoneType */,
+                            null /* photo */));
+            screen.addPreference(preference[0]);
+        });
+        return preference[0];
+    }
+
+    /** Returns how long {@code update} took on the main thread. */
+    private long time(Runnable update) {
+        final long[] nanos = new long[1];
+        mInstrumentation.runOnMainSync(() -> {
+            final long start = SystemClock.elapsedRealtimeNanos();
+            update.run();
+            nanos[0] = SystemClock.elapsedRealtimeNanos() - start;
+        });
+        return nanos[0];
+    }
+
+    private static List<Uri> createPhoneUris(int count) {
+        final List<Uri> phoneUris = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            phoneUris.add(phoneUri(i));
+        }
+        return phoneUris;
+    }
+
+    private static Uri phoneUri(int id) {
+        return Uri.withAppendedPath(ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                String.valueOf(1000 + id));
+    }
+}
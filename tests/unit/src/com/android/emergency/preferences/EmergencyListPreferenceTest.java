@@ -148,6 +148,23 @@ public final class EmergencyListPreferenceTest {
         }
     }
 
+    @Test
+    public void testAccessibleEntries_sharedAcrossInflations() {
+        EditInfoActivity firstActivity = startEditInfoActivity();
+        EmergencyListPreference firstPreference = getEmergencyListPreference(
+                (EditInfoFragment) firstActivity.getFragment(), PreferenceKeys.KEY_BLOOD_TYPE);
+        firstActivity.finish();
+
+        EditInfoActivity secondActivity = startEditInfoActivity();
+        EmergencyListPreference secondPreference = getEmergencyListPreference(
+                (EditInfoFragment) secondActivity.getFragment(), PreferenceKeys.KEY_BLOOD_TYPE);
+
+        assertThat(secondPreference).isNotSameInstanceAs(firstPreference);
+        assertThat(secondPreference.getEntries()).isSameInstanceAs(firstPreference.getEntries());
+        assertThat(secondPreference.getContentDescriptions())
+                .isSameInstanceAs(firstPreference.getContentDescriptions());
+    }
+
     private EditInfoActivity startEditInfoActivity() {
         final Intent editActivityIntent = new Intent(mTargetContext, EditInfoActivity.class);
         return (EditInfoActivity) mInstrumentation.startActivitySync(editActivityIntent);
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emergency.preferences;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.text.PrecomputedText;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** Unit tests for {@link PrecomputedSummaryCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class PrecomputedSummaryCacheTest {
+    private static final String KEY = "medical_conditions";
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private Instrumentation mInstrumentation;
+    private Context mTargetContext;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mTargetContext = mInstrumentation.getTargetContext();
+        mInstrumentation.runOnMainSync(PrecomputedSummaryCache::clearForTesting);
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(PrecomputedSummaryCache::clearForTesting);
+    }
+
+    @Test
+    public void testBind_longText_attachesPrecomputedLayoutOnNextBind() throws Exception {
+        final String text = longText("Asthma");
+        final TextView[] view = new TextView[1];
+        final CountDownLatch ready = new CountDownLatch(1);
+        mInstrumentation.runOnMainSync(() -> {
+            view[0] = new TextView(mTargetContext);
+            view[0].setText(text);
+            PrecomputedSummaryCache.bind(KEY, view[0], text, ready::countDown);
+        });
+        assertThat(ready.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+        mInstrumentation.runOnMainSync(() ->
+                PrecomputedSummaryCache.bind(KEY, view[0], text, () -> { }));
+
+        assertThat(view[0].getText()).isInstanceOf(PrecomputedText.class);
+        assertThat(view[0].getText().toString()).isEqualTo(text);
+    }
+
+    @Test
+    public void testBind_shortText_isNotPrecomputed() {
+        final String text = "Asthma";
+        mInstrumentation.runOnMainSync(() -> {
+            TextView view = new TextView(mTargetContext);
+            view.setText(text);
+            PrecomputedSummaryCache.bind(KEY, view, text, () -> { });
+
+            assertThat(PrecomputedSummaryCache.get(KEY, text, view.getTextMetricsParams()))
+                    .isNull();
+            assertThat(view.getText()).isNotInstanceOf(PrecomputedText.class);
+        });
+    }
+
+    @Test
+    public void testOnTextChanged_replacesLayoutOfOldText() throws Exception {
+        final String oldText = longText("Asthma");
+        final String newText = longText("Diabetes");
+        final TextView[] view = new TextView[1];
+        final CountDownLatch boundReady = new CountDownLatch(1);
+        mInstrumentation.runOnMainSync(() -> {
+            view[0] = new TextView(mTargetContext);
+            PrecomputedSummaryCache.bind(KEY, view[0], oldText, boundReady::countDown);
+        });
+        assertThat(boundReady.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+        final CountDownLatch changedReady = new CountDownLatch(1);
+        mInstrumentation.runOnMainSync(() ->
+                PrecomputedSummaryCache.onTextChanged(KEY, newText, changedReady::countDown));
+        assertThat(changedReady.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+        mInstrumentation.runOnMainSync(() -> {
+            final PrecomputedText.Params params = view[0].getTextMetricsParams();
+            assertThat(PrecomputedSummaryCache.get(KEY, oldText, params)).isNull();
+            assertThat(PrecomputedSummaryCache.get(KEY, newText, params).toString())
+                    .isEqualTo(newText);
+        });
+    }
+
+    @Test
+    public void testBind_sameKeyWithDifferentMetrics_keepsLayoutForEach() throws Exception {
+        final String text = longText("Asthma");
+        final TextView[] views = new TextView[2];
+        final CountDownLatch ready = new CountDownLatch(2);
+        mInstrumentation.runOnMainSync(() -> {
+            for (int i = 0; i < views.length; i++) {
+                views[i] = createTextView(12 + 8 * i);
+                PrecomputedSummaryCache.bind(KEY, views[i], text, ready::countDown);
+            }
+        });
+        assertThat(ready.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+        mInstrumentation.runOnMainSync(() -> {
+            assertThat(views[0].getTextMetricsParams())
+                    .isNotEqualTo(views[1].getTextMetricsParams());
+            for (TextView view : views) {
+                PrecomputedSummaryCache.bind(KEY, view, text, () -> { });
+                assertThat(view.getText()).isInstanceOf(PrecomputedText.class);
+            }
+        });
+    }
+
+    @Test
+    public void testBind_tooManyMetrics_dropsLeastRecentlyBound() throws Exception {
+        final String text = longText("Asthma");
+        final int count = PrecomputedSummaryCache.MAX_PARAMS_PER_KEY + 1;
+        final TextView[] views = new TextView[count];
+        // The first layout is dropped before it's ready, so only the others report back.
+        final CountDownLatch ready = new CountDownLatch(count - 1);
+        mInstrumentation.runOnMainSync(() -> {
+            for (int i = 0; i < count; i++) {
+                views[i] = createTextView(12 + 8 * i);
+                PrecomputedSummaryCache.bind(KEY, views[i], text, ready::countDown);
+            }
+        });
+        assertThat(ready.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+        mInstrumentation.runOnMainSync(() -> {
+            assertThat(PrecomputedSummaryCache.get(KEY, text, views[0].getTextMetricsParams()))
+                    .isNull();
+            for (int i = 1; i < count; i++) {
+                assertThat(PrecomputedSummaryCache.get(
+                        KEY, text, views[i].getTextMetricsParams())).isNotNull();
+            }
+        });
+    }
+
+    private TextView createTextView(float textSizeSp) {
+        final TextView view = new TextView(mTargetContext);
+        view.setTextSize(TypedValue.COMPLEX_UNIT_SP, textSizeSp);
+        return view;
+    }
+
+    private static String longText(String line) {
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < PrecomputedSummaryCache.MIN_PRECOMPUTED_LENGTH * 4) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+}